@@ -0,0 +1,289 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.appconsolidator;
+
+import org.citygml4j.model.citygml.appearance.AbstractSurfaceData;
+import org.citygml4j.model.citygml.appearance.Appearance;
+import org.citygml4j.model.citygml.appearance.Color;
+import org.citygml4j.model.citygml.appearance.ParameterizedTexture;
+import org.citygml4j.model.citygml.appearance.SurfaceDataProperty;
+import org.citygml4j.model.citygml.appearance.TextureAssociation;
+import org.citygml4j.model.citygml.appearance.X3DMaterial;
+import org.citygml4j.model.citygml.core.AbstractCityObject;
+import org.citygml4j.model.module.Modules;
+import org.citygml4j.model.module.gml.XLinkModule;
+import org.citygml4j.tools.common.util.Compression;
+import org.citygml4j.tools.common.util.IdDictionary;
+import org.citygml4j.util.gmlid.DefaultGMLIdManager;
+import org.citygml4j.util.walker.FeatureWalker;
+import org.citygml4j.xml.io.reader.CityGMLReadException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+public class AppConsolidator {
+    private final Map<String, GlobalSurfaceData> contentTable;
+    private final int maxTargets;
+    private final List<Appearance> evictedApps = new ArrayList<>();
+    private final IdDictionary linkedSurfaceData = new IdDictionary();
+    private final IdDictionary linkedAppearances = new IdDictionary();
+    private final ResultStatistic resultStatistic = new ResultStatistic();
+    private long targets;
+
+    public AppConsolidator(int maxSurfaceData) {
+        this(maxSurfaceData, Integer.MAX_VALUE);
+    }
+
+    public AppConsolidator(int maxSurfaceData, int maxTargets) {
+        this.maxTargets = maxTargets;
+
+        // the content table is bounded by the number of entries and of their targets. evicted surface
+        // data is handed out as global appearance and no longer receives targets from duplicates
+        contentTable = new LinkedHashMap<String, GlobalSurfaceData>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, GlobalSurfaceData> eldest) {
+                if (size() > maxSurfaceData) {
+                    evict(eldest.getValue());
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    public void readSurfaceDataLinks(Path file) throws CityGMLReadException {
+        try (InputStream stream = Compression.newInputStream(file)) {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(stream);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT
+                            && Modules.isCityGMLModuleNamespace(reader.getNamespaceURI())) {
+                        String localName = reader.getLocalName();
+                        IdDictionary links = localName.equals("surfaceDataMember") ? linkedSurfaceData :
+                                localName.equals("appearance") || localName.equals("appearanceMember") ? linkedAppearances :
+                                        null;
+
+                        if (links != null) {
+                            String href = reader.getAttributeValue(XLinkModule.v3_1_1.getNamespaceURI(), "href");
+                            if (href != null)
+                                links.add(clipGMLId(href));
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XMLStreamException e) {
+            throw new CityGMLReadException("Failed to read surface data links.", e);
+        }
+    }
+
+    public List<Appearance> consolidate(AbstractCityObject cityObject) {
+        cityObject.accept(new FeatureWalker() {
+            @Override
+            public void visit(AbstractCityObject nested) {
+                if (nested.isSetAppearance())
+                    nested.getAppearance().removeIf(property -> property.isSetAppearance() && consolidate(property.getAppearance()));
+
+                super.visit(nested);
+            }
+        });
+
+        resultStatistic.increment(AbstractCityObject.class);
+
+        List<Appearance> appearances = new ArrayList<>(evictedApps);
+        evictedApps.clear();
+        return appearances;
+    }
+
+    public List<Appearance> getGlobalApps() {
+        Map<String, Appearance> appearances = new LinkedHashMap<>();
+        for (GlobalSurfaceData globalSurfaceData : contentTable.values()) {
+            appearances.computeIfAbsent(globalSurfaceData.theme, this::createAppearance)
+                    .addSurfaceDataMember(new SurfaceDataProperty(globalSurfaceData.surfaceData));
+        }
+
+        contentTable.clear();
+        targets = 0;
+        return new ArrayList<>(appearances.values());
+    }
+
+    public ResultStatistic getResultStatistic() {
+        return resultStatistic;
+    }
+
+    private boolean consolidate(Appearance appearance) {
+        if (!appearance.isSetSurfaceDataMember())
+            return false;
+
+        String theme = appearance.getTheme();
+        appearance.getSurfaceDataMember().removeIf(property -> property.isSetSurfaceData() && consolidate(theme, property.getSurfaceData()));
+
+        // the appearance is only removed if nothing but its theme remains
+        return !appearance.isSetSurfaceDataMember()
+                && !(appearance.isSetId() && linkedAppearances.contains(appearance.getId()))
+                && !appearance.isSetName()
+                && !appearance.isSetDescription()
+                && !appearance.isSetMetaDataProperty()
+                && !appearance.isSetBoundedBy()
+                && !appearance.isSetGenericApplicationPropertyOfAppearance();
+    }
+
+    private boolean consolidate(String theme, AbstractSurfaceData surfaceData) {
+        String key = getContentKey(theme, surfaceData);
+        if (key == null)
+            return false;
+
+        GlobalSurfaceData globalSurfaceData = contentTable.get(key);
+        if (globalSurfaceData == null) {
+            // the first occurrence becomes the global surface data and must not keep its city object alive
+            surfaceData.unsetParent();
+            globalSurfaceData = new GlobalSurfaceData(theme, surfaceData);
+            globalSurfaceData.targets = getTargets(surfaceData);
+            targets += globalSurfaceData.targets;
+            contentTable.put(key, globalSurfaceData);
+            resultStatistic.increment(surfaceData.getClass());
+        } else {
+            // only duplicates that are replaced by the global surface data are counted
+            if (surfaceData instanceof ParameterizedTexture) {
+                ParameterizedTexture texture = (ParameterizedTexture) globalSurfaceData.surfaceData;
+                if (((ParameterizedTexture) surfaceData).isSetTarget()) {
+                    for (TextureAssociation target : ((ParameterizedTexture) surfaceData).getTarget())
+                        texture.addTarget(target);
+                }
+            } else if (surfaceData instanceof X3DMaterial) {
+                X3DMaterial material = (X3DMaterial) globalSurfaceData.surfaceData;
+                if (((X3DMaterial) surfaceData).isSetTarget())
+                    ((X3DMaterial) surfaceData).getTarget().forEach(material::addTarget);
+            }
+
+            int added = getTargets(surfaceData);
+            globalSurfaceData.targets += added;
+            targets += added;
+            resultStatistic.increment(AbstractSurfaceData.class);
+        }
+
+        // the least recently used surface data is evicted once the targets exceed the limit
+        Iterator<GlobalSurfaceData> iterator = contentTable.values().iterator();
+        while (targets > maxTargets && iterator.hasNext()) {
+            evict(iterator.next());
+            iterator.remove();
+        }
+
+        return true;
+    }
+
+    private int getTargets(AbstractSurfaceData surfaceData) {
+        if (surfaceData instanceof ParameterizedTexture)
+            return ((ParameterizedTexture) surfaceData).isSetTarget() ? ((ParameterizedTexture) surfaceData).getTarget().size() : 0;
+        else if (surfaceData instanceof X3DMaterial)
+            return ((X3DMaterial) surfaceData).isSetTarget() ? ((X3DMaterial) surfaceData).getTarget().size() : 0;
+        else
+            return 0;
+    }
+
+    private void evict(GlobalSurfaceData globalSurfaceData) {
+        Appearance appearance = createAppearance(globalSurfaceData.theme);
+        appearance.addSurfaceDataMember(new SurfaceDataProperty(globalSurfaceData.surfaceData));
+        evictedApps.add(appearance);
+        targets -= globalSurfaceData.targets;
+    }
+
+    private String getContentKey(String theme, AbstractSurfaceData surfaceData) {
+        if ((surfaceData.isSetId() && linkedSurfaceData.contains(surfaceData.getId()))
+                || surfaceData.isSetName()
+                || surfaceData.isSetDescription()
+                || surfaceData.isSetMetaDataProperty()
+                || surfaceData.isSetGenericApplicationPropertyOfSurfaceData())
+            return null;
+
+        StringBuilder key = new StringBuilder(theme != null ? "T" + theme : "N");
+        if (surfaceData instanceof X3DMaterial) {
+            X3DMaterial material = (X3DMaterial) surfaceData;
+            if (material.isSetGenericApplicationPropertyOfX3DMaterial())
+                return null;
+
+            append(key, "X3DMaterial", material.getIsFront(), material.getAmbientIntensity(),
+                    getColor(material.getDiffuseColor()), getColor(material.getEmissiveColor()),
+                    getColor(material.getSpecularColor()), material.getShininess(),
+                    material.getTransparency(), material.getIsSmooth());
+        } else if (surfaceData instanceof ParameterizedTexture) {
+            ParameterizedTexture texture = (ParameterizedTexture) surfaceData;
+            if (texture.isSetGenericApplicationPropertyOfTexture()
+                    || texture.isSetGenericApplicationPropertyOfParameterizedTexture())
+                return null;
+
+            append(key, "ParameterizedTexture", texture.getIsFront(), texture.getImageURI(),
+                    texture.isSetMimeType() ? texture.getMimeType().getValue() + "@" + texture.getMimeType().getCodeSpace() : null,
+                    texture.getTextureType(), texture.getWrapMode(),
+                    texture.isSetBorderColor() ? texture.getBorderColor().toList() : null);
+        } else
+            return null;
+
+        return key.toString();
+    }
+
+    private void append(StringBuilder key, Object... values) {
+        for (Object value : values)
+            key.append('|').append(Objects.toString(value));
+    }
+
+    private List<Double> getColor(Color color) {
+        return color != null ? color.toList() : null;
+    }
+
+    private Appearance createAppearance(String theme) {
+        Appearance appearance = new Appearance();
+        appearance.setId(DefaultGMLIdManager.getInstance().generateUUID());
+        appearance.setTheme(theme);
+
+        resultStatistic.increment(Appearance.class);
+        return appearance;
+    }
+
+    private String clipGMLId(String target) {
+        return target.replaceAll("^.*?#+?", "");
+    }
+
+    private static final class GlobalSurfaceData {
+        private final String theme;
+        private final AbstractSurfaceData surfaceData;
+        private int targets;
+
+        GlobalSurfaceData(String theme, AbstractSurfaceData surfaceData) {
+            this.theme = theme;
+            this.surfaceData = surfaceData;
+        }
+    }
+}
@@ -25,11 +25,13 @@ import org.citygml4j.builder.jaxb.CityGMLBuilder;
 import org.citygml4j.builder.jaxb.CityGMLBuilderException;
 import org.citygml4j.model.citygml.appearance.Appearance;
 import org.citygml4j.model.module.Modules;
+import org.citygml4j.tools.common.util.Compression;
 import org.citygml4j.xml.io.CityGMLInputFactory;
 import org.citygml4j.xml.io.reader.CityGMLReadException;
 import org.citygml4j.xml.io.reader.CityGMLReader;
 import org.citygml4j.xml.io.reader.FeatureReadMode;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
@@ -45,8 +47,15 @@ public class GlobalAppReader {
         CityGMLInputFactory in = cityGMLBuilder.createCityGMLInputFactory();
         in.setProperty(CityGMLInputFactory.FEATURE_READ_MODE, FeatureReadMode.SPLIT_PER_COLLECTION_MEMBER);
 
+        CityGMLReader fileReader;
+        try {
+            fileReader = in.createCityGMLReader(file.toAbsolutePath().toUri().toString(), Compression.newInputStream(file));
+        } catch (IOException e) {
+            throw new CityGMLReadException("Caused by: ", e);
+        }
+
         List<Appearance> appearances = new ArrayList<>();
-        try (CityGMLReader reader = in.createFilteredCityGMLReader(in.createCityGMLReader(file.toFile()),
+        try (CityGMLReader reader = in.createFilteredCityGMLReader(fileReader,
                 name -> name.getLocalPart().equals("Appearance")
                         && Modules.isCityGMLModuleNamespace(name.getNamespaceURI()))) {
             while (reader.hasNext())
@@ -27,6 +27,7 @@ import org.citygml4j.builder.jaxb.unmarshal.JAXBUnmarshaller;
 import org.citygml4j.model.citygml.core.ImplicitGeometry;
 import org.citygml4j.model.common.base.ModelObject;
 import org.citygml4j.model.module.Modules;
+import org.citygml4j.tools.common.util.Compression;
 import org.citygml4j.xml.io.reader.CityGMLReadException;
 import org.citygml4j.xml.io.reader.MissingADESchemaException;
 
@@ -36,8 +37,9 @@ import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
@@ -54,7 +56,7 @@ public class ImplicitGeometryReader {
     }
 
     public List<ImplicitGeometry> readImplicitGeometries(Path file) throws CityGMLReadException {
-        try (FileReader reader = new FileReader(file.toFile())) {
+        try (Reader reader = new InputStreamReader(Compression.newInputStream(file))) {
             Unmarshaller unmarshaller = cityGMLBuilder.getJAXBContext().createUnmarshaller();
             JAXBUnmarshaller jaxbUnmarshaller = cityGMLBuilder.createJAXBUnmarshaller();
             XMLStreamReader streamReader = in.createXMLStreamReader(reader);
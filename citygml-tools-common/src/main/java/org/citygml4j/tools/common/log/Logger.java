@@ -25,20 +25,46 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
+// log messages are passed through a bounded buffer to a single thread that writes them
+// to the console and the log file in batches. the buffer is flushed when closing the logger
+// and at the latest when the JVM shuts down.
 public class Logger {
+	private static final int BUFFER_SIZE = 8192;
+	private static final int CONSOLE = 1;
+	private static final int FILE = 2;
+
 	private static Logger instance = new Logger();
 
-	private LogLevel level = LogLevel.INFO;
+	private final BlockingQueue<Entry> buffer = new ArrayBlockingQueue<>(BUFFER_SIZE);
+	private final Thread drainer;
+	private volatile LogLevel level = LogLevel.INFO;
 	private AtomicInteger warnings = new AtomicInteger(0);
 	private AtomicInteger errors = new AtomicInteger(0);
-	private BufferedWriter writer;
+	private volatile BufferedWriter writer;
+	private volatile boolean closed;
+
+	// messages are only written while holding the lock of the logger
+	private final String[] prefixes = new String[LogLevel.values().length];
+	private long second = -1;
+	private boolean drained;
 
 	private Logger() {
-		// just to thwart instantiation
+		drainer = new Thread(this::drain, "logger");
+		drainer.setDaemon(true);
+		drainer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close));
 	}
 
 	public static Logger getInstance() {
@@ -53,37 +79,28 @@ public class Logger {
 		return level;
 	}
 
-	private String getPrefix(LogLevel level) {
-		return "[" +
-				LocalDateTime.now().withNano(0).format(DateTimeFormatter.ISO_LOCAL_TIME) +
-				" " +
-				level.name() +
-				"] ";
+	public boolean isLogLevelEnabled(LogLevel level) {
+		return this.level.ordinal() >= level.ordinal();
+	}
+
+	public boolean isDebugEnabled() {
+		return isLogLevelEnabled(LogLevel.DEBUG);
 	}
 
 	public void log(LogLevel level, String msg) {
 		count(level);
-		if (this.level.ordinal() >= level.ordinal()) {
-			msg = getPrefix(level) + msg;
-			System.out.println(msg);
-			logToFile(msg);
-		}
+		if (isLogLevelEnabled(level))
+			enqueue(new Entry(level, msg, CONSOLE | FILE));
 	}
 
 	public void logToFile(String msg) {
-		if (writer != null) {
-			try {
-				writer.write(msg);
-				writer.newLine();
-			} catch (IOException e) {
-				//
-			}
-		}
+		if (writer != null)
+			enqueue(new Entry(null, msg, FILE));
 	}
 
 	private void log(LogLevel level, String msg, Throwable e) {
 		log(level, msg);
-		if (e != null && this.level.ordinal() >= level.ordinal()) {
+		if (e != null && isLogLevelEnabled(level)) {
 			do {
 				if (e.getMessage() != null)
 					log(level, "Cause: " + e.getClass().getName() + ": " + e.getMessage());
@@ -91,10 +108,15 @@ public class Logger {
 		}
 	}
 
-	public void debug(String msg) {		
+	public void debug(String msg) {
 		log(LogLevel.DEBUG, msg);
 	}
 
+	public void debug(Supplier<String> msg) {
+		if (isDebugEnabled())
+			log(LogLevel.DEBUG, msg.get());
+	}
+
 	public void info(String msg) {
 		log(LogLevel.INFO, msg);
 	}
@@ -116,12 +138,13 @@ public class Logger {
 	}
 
 	public void logStackTrace(Throwable e) {
+		flush();
 		e.printStackTrace(System.err);
 	}
 
 	public void print(LogLevel level, String msg) {
-		if (this.level.ordinal() >= level.ordinal())
-			System.out.println(msg);
+		if (isLogLevelEnabled(level))
+			enqueue(new Entry(null, msg, CONSOLE));
 	}
 
 	public int getNumberOfErrors() {
@@ -136,14 +159,181 @@ public class Logger {
 		writer = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8);
 	}
 
+	// blocks until all messages logged so far have been written
+	public void flush() {
+		if (closed || Thread.currentThread() == drainer)
+			return;
+
+		CountDownLatch latch = new CountDownLatch(1);
+		put(new Entry(latch));
+
+		boolean interrupted = false;
+		while (latch.getCount() > 0 && !closed) {
+			try {
+				latch.await();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
 	public void close() {
-		if (writer != null) {
+		synchronized (this) {
+			if (closed)
+				return;
+
+			closed = true;
+		}
+
+		put(new Entry(null));
+
+		boolean interrupted = false;
+		while (drainer.isAlive()) {
+			try {
+				drainer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		synchronized (this) {
+			List<Entry> entries = new ArrayList<>();
+			buffer.drainTo(entries);
+			write(entries);
+			drained = true;
+
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+					//
+				}
+
+				writer = null;
+			}
+		}
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private void enqueue(Entry entry) {
+		if (!closed) {
+			put(entry);
+
+			// the logger may have been closed meanwhile. if the buffer has already been drained
+			// for the last time, the message is written directly so that it is not lost
+			if (closed) {
+				synchronized (this) {
+					if (drained) {
+						List<Entry> entries = new ArrayList<>();
+						buffer.drainTo(entries);
+						write(entries);
+					}
+				}
+			}
+		} else {
+			// messages logged after closing the logger are written directly
+			synchronized (this) {
+				List<Entry> entries = new ArrayList<>(1);
+				entries.add(entry);
+				write(entries);
+			}
+		}
+	}
+
+	private void put(Entry entry) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				buffer.put(entry);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private void drain() {
+		List<Entry> entries = new ArrayList<>();
+		boolean stop = false;
+
+		while (!stop) {
 			try {
-				writer.close();
+				entries.add(buffer.take());
+			} catch (InterruptedException e) {
+				continue;
+			}
+
+			buffer.drainTo(entries, BUFFER_SIZE);
+			synchronized (this) {
+				stop = write(entries);
+			}
+
+			entries.clear();
+		}
+	}
+
+	private boolean write(List<Entry> entries) {
+		StringBuilder console = new StringBuilder();
+		StringBuilder file = writer != null ? new StringBuilder() : null;
+		String lineSeparator = System.lineSeparator();
+		boolean stop = false;
+
+		for (Entry entry : entries) {
+			if (entry.msg == null) {
+				stop |= entry.latch == null;
+				continue;
+			}
+
+			String prefix = entry.level != null ? getPrefix(entry) : "";
+			if ((entry.target & CONSOLE) != 0)
+				console.append(prefix).append(entry.msg).append(lineSeparator);
+
+			if (file != null && (entry.target & FILE) != 0)
+				file.append(prefix).append(entry.msg).append(lineSeparator);
+		}
+
+		if (console.length() > 0) {
+			System.out.print(console);
+			System.out.flush();
+		}
+
+		if (file != null && file.length() > 0) {
+			try {
+				writer.append(file);
+				writer.flush();
 			} catch (IOException e) {
 				//
 			}
 		}
+
+		for (Entry entry : entries) {
+			if (entry.latch != null)
+				entry.latch.countDown();
+		}
+
+		return stop;
+	}
+
+	private String getPrefix(Entry entry) {
+		// the timestamp only changes once per second so that the prefixes are reused
+		long second = entry.time / 1000;
+		if (second != this.second) {
+			this.second = second;
+			String time = LocalDateTime.ofInstant(Instant.ofEpochSecond(second), ZoneId.systemDefault())
+					.format(DateTimeFormatter.ISO_LOCAL_TIME);
+			for (LogLevel level : LogLevel.values())
+				prefixes[level.ordinal()] = "[" + time + " " + level.name() + "] ";
+		}
+
+		return prefixes[entry.level.ordinal()];
 	}
 
 	private void count(LogLevel level) {
@@ -156,4 +346,29 @@ public class Logger {
 				break;
 		}
 	}
+
+	private static final class Entry {
+		private final LogLevel level;
+		private final String msg;
+		private final int target;
+		private final long time;
+		private final CountDownLatch latch;
+
+		Entry(LogLevel level, String msg, int target) {
+			this.level = level;
+			this.msg = msg;
+			this.target = target;
+			time = System.currentTimeMillis();
+			latch = null;
+		}
+
+		// entries without a message either flush or stop the buffer
+		Entry(CountDownLatch latch) {
+			level = null;
+			msg = null;
+			target = 0;
+			time = 0;
+			this.latch = latch;
+		}
+	}
 }
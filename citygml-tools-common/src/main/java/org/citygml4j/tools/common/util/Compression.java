@@ -0,0 +1,142 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.common.util;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// compressed input files are detected by their magic bytes and decompressed on a separate thread
+public enum Compression {
+    GZIP(".gz", 0x1f, 0x8b),
+    ZIP(".zip", 0x50, 0x4b, 0x03, 0x04),
+    BZIP2(".bz2", 0x42, 0x5a, 0x68),
+    XZ(".xz", 0xfd, 0x37, 0x7a, 0x58, 0x5a, 0x00);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String extension;
+    private final int[] magic;
+
+    Compression(String extension, int... magic) {
+        this.extension = extension;
+        this.magic = magic;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public static InputStream newInputStream(Path file) throws IOException {
+        return decompress(Files.newInputStream(file));
+    }
+
+    public static InputStream newInputStream(Path file, IOMode ioMode) throws IOException {
+        return decompress(ioMode.newInputStream(file));
+    }
+
+    // streams supporting mark and reset such as memory-mapped files need no additional buffer
+    public static InputStream decompress(InputStream stream) throws IOException {
+        InputStream buffered = stream.markSupported() ? stream : new BufferedInputStream(stream, BUFFER_SIZE);
+        try {
+            Compression compression = detect(buffered);
+            return compression != null ?
+                    new ReadAheadInputStream(compression.createInputStream(buffered)) :
+                    buffered;
+        } catch (IOException e) {
+            buffered.close();
+            throw e;
+        }
+    }
+
+    public static Compression detect(InputStream stream) throws IOException {
+        byte[] header = new byte[6];
+        stream.mark(header.length);
+        int length = 0;
+        for (int n; length < header.length && (n = stream.read(header, length, header.length - length)) != -1; )
+            length += n;
+
+        stream.reset();
+
+        for (Compression compression : values()) {
+            if (compression.matches(Arrays.copyOf(header, length)))
+                return compression;
+        }
+
+        return null;
+    }
+
+    // strips the extension of a compression format from the file name
+    public static String removeExtension(String fileName) {
+        for (Compression compression : values()) {
+            if (compression != ZIP && fileName.endsWith(compression.extension) && fileName.length() > compression.extension.length())
+                return fileName.substring(0, fileName.length() - compression.extension.length());
+        }
+
+        return fileName;
+    }
+
+    private boolean matches(byte[] header) {
+        if (header.length < magic.length)
+            return false;
+
+        for (int i = 0; i < magic.length; i++) {
+            if ((header[i] & 0xff) != magic[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    private InputStream createInputStream(InputStream stream) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPInputStream(stream, BUFFER_SIZE);
+            case ZIP:
+                // only the first file entry of a ZIP file is read
+                ZipInputStream zip = new ZipInputStream(stream);
+                ZipEntry entry;
+                while ((entry = zip.getNextEntry()) != null && entry.isDirectory())
+                    zip.closeEntry();
+
+                if (entry == null)
+                    throw new IOException("The ZIP file does not contain any file entry.");
+
+                return zip;
+            case BZIP2:
+                return new BZip2CompressorInputStream(stream, true);
+            case XZ:
+                return new XZCompressorInputStream(stream, true);
+            default:
+                return stream;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.common.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+public enum IOMode {
+    DEFAULT,
+    BUFFERED,
+    MMAP;
+
+    public InputStream newInputStream(Path file) throws IOException {
+        switch (this) {
+            case BUFFERED:
+                return new ReadAheadInputStream(Files.newInputStream(file));
+            case MMAP:
+                // files that are not on the default file system such as ZIP entries cannot be mapped
+                if (file.getFileSystem() == FileSystems.getDefault()) {
+                    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                    try {
+                        return new MappedInputStream(channel);
+                    } catch (IOException | RuntimeException e) {
+                        channel.close();
+                        throw e;
+                    }
+                }
+
+                return Files.newInputStream(file);
+            default:
+                return Files.newInputStream(file);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.common.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// maps strings to dense int ids and keeps the UTF-8 bytes in paged arrays
+// instead of one String object per entry. lookups hash and compare the UTF-8
+// encoding of the chars on the fly, so only new entries are encoded into arrays
+public class IdDictionary {
+    private static final int PAGE_SIZE = 1 << 20;
+
+    private final List<byte[]> pages = new ArrayList<>();
+    private byte[] page;
+    private int pagePos;
+
+    private long[] offsets;
+    private int[] lengths;
+    private int[] hashes;
+    private int size;
+
+    private int[] slots;
+    private int mask;
+
+    public IdDictionary() {
+        this(1024);
+    }
+
+    public IdDictionary(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        slots = new int[capacity];
+        mask = capacity - 1;
+        offsets = new long[Math.max(16, expectedSize)];
+        lengths = new int[offsets.length];
+        hashes = new int[offsets.length];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(String value) {
+        return get(value) != -1;
+    }
+
+    public boolean add(String value) {
+        int size = this.size;
+        return getOrAdd(value) == size;
+    }
+
+    public int get(String value) {
+        int hash = hash(value);
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id == -1)
+                return -1;
+            else if (hashes[id] == hash && matches(id, value))
+                return id;
+        }
+    }
+
+    public int getOrAdd(String value) {
+        int hash = hash(value);
+        int slot = hash & mask;
+        for (; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id == -1)
+                break;
+            else if (hashes[id] == hash && matches(id, value))
+                return id;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int id = size++;
+        if (id == offsets.length) {
+            int length = offsets.length + (offsets.length >> 1);
+            offsets = Arrays.copyOf(offsets, length);
+            lengths = Arrays.copyOf(lengths, length);
+            hashes = Arrays.copyOf(hashes, length);
+        }
+
+        offsets[id] = store(bytes);
+        lengths[id] = bytes.length;
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+
+        if (size * 2 > slots.length)
+            rehash();
+
+        return id;
+    }
+
+    public String get(int id) {
+        if (id < 0 || id >= size)
+            throw new IndexOutOfBoundsException("Invalid id: " + id);
+
+        long offset = offsets[id];
+        return new String(pages.get((int) (offset >>> 32)), (int) offset, lengths[id], StandardCharsets.UTF_8);
+    }
+
+    public void clear() {
+        pages.clear();
+        page = null;
+        pagePos = 0;
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+
+    private boolean matches(int id, String value) {
+        // every char takes one to three bytes, and surrogate pairs take four
+        int length = lengths[id];
+        if (length < value.length() || length > value.length() * 3)
+            return false;
+
+        long offset = offsets[id];
+        byte[] page = pages.get((int) (offset >>> 32));
+        int pos = (int) offset;
+        int end = pos + length;
+        for (int i = 0, codePoint; i < value.length(); i += Character.charCount(codePoint)) {
+            codePoint = getCodePoint(value, i);
+            for (int bytes = encode(codePoint), n = getLength(codePoint); n > 0; n--, bytes >>>= 8) {
+                if (pos == end || page[pos++] != (byte) bytes)
+                    return false;
+            }
+        }
+
+        return pos == end;
+    }
+
+    private long store(byte[] bytes) {
+        if (page == null || pagePos + bytes.length > page.length) {
+            int length = page == null ? 4096 : Math.min(page.length << 1, PAGE_SIZE);
+            page = new byte[Math.max(length, bytes.length)];
+            pagePos = 0;
+            pages.add(page);
+        }
+
+        long offset = ((long) (pages.size() - 1) << 32) | pagePos;
+        System.arraycopy(bytes, 0, page, pagePos, bytes.length);
+        pagePos += bytes.length;
+        return offset;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length << 1];
+        mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != 0)
+                slot = (slot + 1) & mask;
+
+            slots[slot] = id + 1;
+        }
+    }
+
+    private int hash(String value) {
+        int hash = 0x811c9dc5;
+        for (int i = 0, codePoint; i < value.length(); i += Character.charCount(codePoint)) {
+            codePoint = getCodePoint(value, i);
+            for (int bytes = encode(codePoint), n = getLength(codePoint); n > 0; n--, bytes >>>= 8)
+                hash = (hash ^ (byte) bytes) * 0x01000193;
+        }
+
+        return hash ^ (hash >>> 16);
+    }
+
+    // unpaired surrogates are replaced by '?' like in String.getBytes
+    private int getCodePoint(String value, int index) {
+        char c = value.charAt(index);
+        if (Character.isHighSurrogate(c) && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1)))
+            return Character.toCodePoint(c, value.charAt(index + 1));
+
+        return Character.isSurrogate(c) ? '?' : c;
+    }
+
+    // returns the UTF-8 bytes of a code point packed into an int, starting with the lowest byte
+    private int encode(int codePoint) {
+        if (codePoint < 0x80)
+            return codePoint;
+        else if (codePoint < 0x800)
+            return (0xc0 | codePoint >> 6) | (0x80 | codePoint & 0x3f) << 8;
+        else if (codePoint < 0x10000)
+            return (0xe0 | codePoint >> 12) | (0x80 | codePoint >> 6 & 0x3f) << 8 | (0x80 | codePoint & 0x3f) << 16;
+        else
+            return (0xf0 | codePoint >> 18) | (0x80 | codePoint >> 12 & 0x3f) << 8 | (0x80 | codePoint >> 6 & 0x3f) << 16 | (0x80 | codePoint & 0x3f) << 24;
+    }
+
+    private int getLength(int codePoint) {
+        return codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+    }
+}
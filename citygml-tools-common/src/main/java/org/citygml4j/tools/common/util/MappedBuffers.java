@@ -0,0 +1,77 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.common.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+// releases memory-mapped buffers explicitly since a mapped file cannot be deleted
+// on Windows until the garbage collector has freed its mapping
+public class MappedBuffers {
+    private static final Cleaner CLEANER = createCleaner();
+
+    private MappedBuffers() {
+    }
+
+    // the buffer must not be accessed anymore once it has been unmapped
+    public static void unmap(ByteBuffer buffer) {
+        if (buffer != null && buffer.isDirect() && CLEANER != null) {
+            try {
+                CLEANER.clean(buffer);
+            } catch (Exception e) {
+                // the mapping is released by the garbage collector instead
+            }
+        }
+    }
+
+    private static Cleaner createCleaner() {
+        try {
+            // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            return buffer -> invokeCleaner.invoke(unsafe, buffer);
+        } catch (Exception e) {
+            //
+        }
+
+        try {
+            // Java 8
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> {
+                Object instance = cleaner.invoke(buffer);
+                if (instance != null)
+                    clean.invoke(instance);
+            };
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private interface Cleaner {
+        void clean(ByteBuffer buffer) throws Exception;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.common.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// reads a file through a sequence of memory-mapped windows, so that the data is copied from
+// the page cache only once. a window is unmapped as soon as the next one is mapped or the stream
+// is closed, since a mapped file cannot be deleted on Windows.
+class MappedInputStream extends InputStream {
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer buffer;
+    private long position;
+    private long mark = -1;
+    private boolean closed;
+
+    MappedInputStream(FileChannel channel) throws IOException {
+        this.channel = channel;
+        size = channel.size();
+        map(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextWindow())
+            return -1;
+
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+
+        if (!nextWindow())
+            return -1;
+
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (closed)
+            throw new IOException("Stream closed.");
+
+        long current = position + buffer.position();
+        long skipped = Math.max(0, Math.min(n, size - current));
+        seek(current + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return closed ? 0 : (int) Math.min(Integer.MAX_VALUE, size - position - buffer.position());
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readLimit) {
+        if (!closed)
+            mark = position + buffer.position();
+    }
+
+    @Override
+    public void reset() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed.");
+
+        if (mark < 0)
+            throw new IOException("Resetting to invalid mark.");
+
+        seek(mark);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            MappedBuffers.unmap(buffer);
+            buffer = null;
+            channel.close();
+        }
+    }
+
+    private boolean nextWindow() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed.");
+
+        if (!buffer.hasRemaining()) {
+            long next = position + buffer.limit();
+            if (next >= size)
+                return false;
+
+            map(next);
+        }
+
+        return true;
+    }
+
+    private void seek(long target) throws IOException {
+        if (target >= position && target <= position + buffer.limit())
+            buffer.position((int) (target - position));
+        else
+            map(target);
+    }
+
+    private void map(long position) throws IOException {
+        MappedByteBuffer next = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+        MappedBuffers.unmap(buffer);
+        this.position = position;
+        buffer = next;
+    }
+}
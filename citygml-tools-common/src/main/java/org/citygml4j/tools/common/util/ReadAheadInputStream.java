@@ -0,0 +1,140 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.common.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// reads a stream ahead of its consumer on a separate thread and passes the data in blocks through a bounded queue
+class ReadAheadInputStream extends InputStream {
+    private static final byte[] EOF = new byte[0];
+    private static final int BLOCK_SIZE = 256 * 1024;
+    private static final int QUEUE_SIZE = 16;
+
+    private final InputStream stream;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final Thread reader;
+    private volatile IOException exception;
+    private volatile boolean closed;
+    private byte[] block;
+    private int pos;
+
+    ReadAheadInputStream(InputStream stream) {
+        this.stream = stream;
+        reader = new Thread(this::readAhead, "read-ahead");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock())
+            return -1;
+
+        return block[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+
+        if (!nextBlock())
+            return -1;
+
+        int n = Math.min(len, block.length - pos);
+        System.arraycopy(block, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return block != null && block != EOF ? block.length - pos : 0;
+    }
+
+    // the stream is closed by the reading thread since it must not be closed while being read
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            reader.interrupt();
+        }
+    }
+
+    private boolean nextBlock() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed.");
+
+        while (block == null || (block != EOF && pos == block.length)) {
+            try {
+                block = queue.take();
+                pos = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        if (block == EOF && exception != null)
+            throw exception;
+
+        return block != EOF;
+    }
+
+    private void readAhead() {
+        try (InputStream stream = this.stream) {
+            while (!closed) {
+                byte[] buffer = new byte[BLOCK_SIZE];
+                int length = 0;
+                for (int n; length < buffer.length && (n = stream.read(buffer, length, buffer.length - length)) != -1; )
+                    length += n;
+
+                if (length > 0)
+                    queue.put(length < buffer.length ? Arrays.copyOf(buffer, length) : buffer);
+
+                if (length < buffer.length)
+                    break;
+            }
+        } catch (IOException e) {
+            exception = e;
+        } catch (InterruptedException e) {
+            //
+        } catch (Throwable e) {
+            exception = new IOException("Failed to read ahead of the input stream.", e);
+        } finally {
+            // the consumer waits for the end marker unless it has closed the stream
+            while (!closed) {
+                try {
+                    queue.put(EOF);
+                    break;
+                } catch (InterruptedException e) {
+                    //
+                }
+            }
+        }
+    }
+}
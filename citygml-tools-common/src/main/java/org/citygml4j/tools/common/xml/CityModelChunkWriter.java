@@ -0,0 +1,107 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.common.xml;
+
+import org.citygml4j.builder.jaxb.xml.io.writer.JAXBModelWriter;
+import org.citygml4j.builder.jaxb.xml.io.writer.JAXBOutputFactory;
+import org.citygml4j.model.citygml.CityGML;
+import org.citygml4j.model.citygml.appearance.Appearance;
+import org.citygml4j.model.citygml.core.AbstractCityObject;
+import org.citygml4j.model.gml.feature.AbstractFeature;
+import org.citygml4j.model.module.Module;
+import org.citygml4j.model.module.ModuleContext;
+import org.citygml4j.model.module.Modules;
+import org.citygml4j.model.module.citygml.CityGMLModuleType;
+import org.citygml4j.model.module.gml.GMLCoreModule;
+import org.citygml4j.util.xml.SAXWriter;
+import org.citygml4j.xml.io.reader.MissingADESchemaException;
+import org.citygml4j.xml.io.reader.UnmarshalException;
+import org.citygml4j.xml.io.reader.XMLChunk;
+import org.citygml4j.xml.io.writer.CityGMLWriteException;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import javax.xml.namespace.QName;
+
+public class CityModelChunkWriter extends JAXBModelWriter {
+    private final SAXWriter writer;
+
+    public CityModelChunkWriter(SAXWriter writer, JAXBOutputFactory factory, ModuleContext moduleContext) throws CityGMLWriteException {
+        super(writer, factory, moduleContext);
+        this.writer = writer;
+    }
+
+    // only chunks of the output CityGML version can be copied without unmarshalling
+    public boolean isCopyable(XMLChunk chunk) {
+        QName typeName = chunk.getTypeName();
+        Module module = typeName != null ? Modules.getCityGMLModule(typeName.getNamespaceURI()) : null;
+        return module != null && getModuleContext().contains(module);
+    }
+
+    public void writeChunk(XMLChunk chunk) throws CityGMLWriteException {
+        if (isCopyable(chunk))
+            writeChunk(chunk, null);
+        else
+            writeObject(chunk);
+    }
+
+    // the filter receives the events of the chunk and must forward them to its content handler
+    public void writeChunk(XMLChunk chunk, XMLFilterImpl filter) throws CityGMLWriteException {
+        if (!isCopyable(chunk))
+            throw new CityGMLWriteException("The chunk " + chunk.getTypeName() + " cannot be copied to the output.");
+
+        Class<?> modelClass = chunk.getCityGMLClass().getModelClass();
+        QName member;
+        if (modelClass != null && AbstractCityObject.class.isAssignableFrom(modelClass))
+            member = new QName(getModuleContext().getModule(CityGMLModuleType.CORE).getNamespaceURI(), "cityObjectMember");
+        else if (modelClass != null && Appearance.class.isAssignableFrom(modelClass))
+            member = new QName(getModuleContext().getModule(CityGMLModuleType.APPEARANCE).getNamespaceURI(), "appearanceMember");
+        else
+            member = new QName(GMLCoreModule.v3_1_1.getNamespaceURI(), "featureMember");
+
+        try {
+            String prefix = writer.getNamespaceContext().getPrefix(member.getNamespaceURI());
+            String qName = prefix != null && !prefix.isEmpty() ? prefix + ":" + member.getLocalPart() : member.getLocalPart();
+
+            writer.startElement(member.getNamespaceURI(), member.getLocalPart(), qName, new AttributesImpl());
+            if (filter != null) {
+                filter.setContentHandler(writer);
+                chunk.send(filter, true);
+            } else
+                chunk.send(writer, true);
+            writer.endElement(member.getNamespaceURI(), member.getLocalPart(), qName);
+        } catch (SAXException e) {
+            throw new CityGMLWriteException("Caused by: ", e);
+        }
+    }
+
+    private void writeObject(XMLChunk chunk) throws CityGMLWriteException {
+        try {
+            CityGML cityGML = chunk.unmarshal();
+            if (cityGML instanceof AbstractFeature)
+                writeFeatureMember((AbstractFeature) cityGML);
+        } catch (UnmarshalException | MissingADESchemaException e) {
+            throw new CityGMLWriteException("Caused by: ", e);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.common.xml;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+public abstract class ElementSkippingReader extends StreamReaderDelegate {
+    private int depth;
+
+    protected ElementSkippingReader(XMLStreamReader reader) {
+        super(reader);
+    }
+
+    protected abstract boolean skip(int depth) throws XMLStreamException;
+
+    // receives all events of a skipped subtree including its start and end element
+    protected void skipped(int event, int depth) throws XMLStreamException {
+    }
+
+    protected int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        int event = super.next();
+        while (true) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if (skip(depth)) {
+                    skipElement();
+                    depth--;
+                    event = super.next();
+                    continue;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT)
+                depth--;
+
+            return event;
+        }
+    }
+
+    @Override
+    public int nextTag() throws XMLStreamException {
+        int event = next();
+        while ((event == XMLStreamConstants.CHARACTERS && isWhiteSpace())
+                || (event == XMLStreamConstants.CDATA && isWhiteSpace())
+                || event == XMLStreamConstants.SPACE
+                || event == XMLStreamConstants.PROCESSING_INSTRUCTION
+                || event == XMLStreamConstants.COMMENT)
+            event = next();
+
+        if (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT)
+            throw new XMLStreamException("Expected start or end tag.", getLocation());
+
+        return event;
+    }
+
+    // the text is read through next() so that the end element passes the depth counter
+    @Override
+    public String getElementText() throws XMLStreamException {
+        if (getEventType() != XMLStreamConstants.START_ELEMENT)
+            throw new XMLStreamException("Parser must be on START_ELEMENT to read next text.", getLocation());
+
+        StringBuilder text = new StringBuilder();
+        int event = next();
+        while (event != XMLStreamConstants.END_ELEMENT) {
+            if (event == XMLStreamConstants.CHARACTERS
+                    || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE
+                    || event == XMLStreamConstants.ENTITY_REFERENCE)
+                text.append(getText());
+            else if (event == XMLStreamConstants.START_ELEMENT)
+                throw new XMLStreamException("Element text content may not contain START_ELEMENT.", getLocation());
+            else if (event == XMLStreamConstants.END_DOCUMENT)
+                throw new XMLStreamException("Unexpected end of document when reading element text content.", getLocation());
+            else if (event != XMLStreamConstants.PROCESSING_INSTRUCTION && event != XMLStreamConstants.COMMENT)
+                throw new XMLStreamException("Unexpected event type " + event + ".", getLocation());
+
+            event = next();
+        }
+
+        return text.toString();
+    }
+
+    private void skipElement() throws XMLStreamException {
+        int level = depth;
+        skipped(XMLStreamConstants.START_ELEMENT, level);
+
+        while (super.hasNext()) {
+            int event = super.next();
+            if (event == XMLStreamConstants.START_ELEMENT)
+                level++;
+
+            skipped(event, level);
+
+            if (event == XMLStreamConstants.END_ELEMENT && level-- == depth)
+                return;
+        }
+    }
+}
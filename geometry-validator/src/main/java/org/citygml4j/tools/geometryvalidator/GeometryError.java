@@ -0,0 +1,52 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.geometryvalidator;
+
+public class GeometryError {
+    private final GeometryErrorType type;
+    private final String cityObjectId;
+    private final String geometryId;
+    private final String message;
+
+    GeometryError(GeometryErrorType type, String cityObjectId, String geometryId, String message) {
+        this.type = type;
+        this.cityObjectId = cityObjectId;
+        this.geometryId = geometryId;
+        this.message = message;
+    }
+
+    public GeometryErrorType getType() {
+        return type;
+    }
+
+    public String getCityObjectId() {
+        return cityObjectId;
+    }
+
+    public String getGeometryId() {
+        return geometryId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,484 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.geometryvalidator;
+
+import org.citygml4j.model.citygml.core.AbstractCityObject;
+import org.citygml4j.model.gml.geometry.complexes.CompositeSurface;
+import org.citygml4j.model.gml.geometry.primitives.AbstractRing;
+import org.citygml4j.model.gml.geometry.primitives.AbstractRingProperty;
+import org.citygml4j.model.gml.geometry.primitives.AbstractSurface;
+import org.citygml4j.model.gml.geometry.primitives.DirectPositionList;
+import org.citygml4j.model.gml.geometry.primitives.LinearRing;
+import org.citygml4j.model.gml.geometry.primitives.OrientableSurface;
+import org.citygml4j.model.gml.geometry.primitives.Polygon;
+import org.citygml4j.model.gml.geometry.primitives.Sign;
+import org.citygml4j.model.gml.geometry.primitives.Solid;
+import org.citygml4j.model.gml.geometry.primitives.SurfaceProperty;
+import org.citygml4j.util.walker.GMLWalker;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+public class GeometryValidator {
+    private static final int BRUTE_FORCE_SEGMENTS = 32;
+
+    private final ThreadLocal<ScratchBuffer> buffers = ThreadLocal.withInitial(ScratchBuffer::new);
+    private double tolerance = 0.001;
+    private double planarityTolerance = 0.01;
+
+    public GeometryValidator withTolerance(double tolerance) {
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    public GeometryValidator withPlanarityTolerance(double planarityTolerance) {
+        this.planarityTolerance = planarityTolerance;
+        return this;
+    }
+
+    public ValidationResult validate(AbstractCityObject cityObject) {
+        ValidationResult result = new ValidationResult();
+        cityObject.accept(new Validation(cityObject.getId(), buffers.get(), result));
+        return result;
+    }
+
+    private final class Validation extends GMLWalker {
+        private final String cityObjectId;
+        private final ScratchBuffer buffer;
+        private final ValidationResult result;
+        private double originX;
+        private double originY;
+        private double originZ;
+        private double volume;
+
+        Validation(String cityObjectId, ScratchBuffer buffer, ValidationResult result) {
+            this.cityObjectId = cityObjectId;
+            this.buffer = buffer;
+            this.result = result;
+        }
+
+        @Override
+        public void visit(Polygon polygon) {
+            result.polygons++;
+            checkPolygon(polygon);
+            super.visit(polygon);
+        }
+
+        @Override
+        public void visit(Solid solid) {
+            result.solids++;
+            checkSolid(solid);
+            super.visit(solid);
+        }
+
+        private void checkPolygon(Polygon polygon) {
+            String id = polygon.getId();
+            if (!loadPolygon(polygon, id, true))
+                return;
+
+            double[] normal = buffer.normal;
+            calcNormal(0, normal);
+            double length = Math.sqrt(normal[0] * normal[0] + normal[1] * normal[1] + normal[2] * normal[2]);
+            if (length / 2 <= tolerance * tolerance) {
+                result.addError(GeometryErrorType.POLYGON_DEGENERATE, cityObjectId, id, "The exterior ring does not enclose an area.");
+                return;
+            }
+
+            double nx = normal[0] / length, ny = normal[1] / length, nz = normal[2] / length;
+            double[] coordinates = buffer.coordinates;
+
+            // the plane passes through the centroid of the exterior ring
+            double cx = 0, cy = 0, cz = 0;
+            int start = buffer.getStart(0), end = buffer.getEnd(0);
+            for (int i = start; i < end; i++) {
+                cx += coordinates[3 * i] - coordinates[0];
+                cy += coordinates[3 * i + 1] - coordinates[1];
+                cz += coordinates[3 * i + 2] - coordinates[2];
+            }
+
+            cx /= end - start;
+            cy /= end - start;
+            cz /= end - start;
+
+            double maxDistance = 0;
+            for (int i = 0; i < buffer.vertexCount; i++) {
+                double distance = Math.abs(nx * (coordinates[3 * i] - coordinates[0] - cx)
+                        + ny * (coordinates[3 * i + 1] - coordinates[1] - cy)
+                        + nz * (coordinates[3 * i + 2] - coordinates[2] - cz));
+                if (distance > maxDistance)
+                    maxDistance = distance;
+            }
+
+            if (maxDistance > planarityTolerance) {
+                result.addError(GeometryErrorType.POLYGON_NON_PLANAR, cityObjectId, id,
+                        String.format(Locale.ROOT, "The maximum distance of a point to the plane is %.6f.", maxDistance));
+            }
+
+            // interior rings must be oriented opposite to the exterior ring
+            for (int ring = 1; ring < buffer.ringCount; ring++) {
+                calcNormal(ring, normal);
+                if (normal[0] * nx + normal[1] * ny + normal[2] * nz > 0) {
+                    result.addError(GeometryErrorType.POLYGON_INTERIOR_RING_ORIENTATION, cityObjectId, id,
+                            "The " + getRingName(ring) + " has the same orientation as the exterior ring.");
+                }
+            }
+
+            // rings are tested for self-intersections in the coordinate plane that is closest to the polygon plane
+            int axis = Math.abs(nx) > Math.abs(ny) ?
+                    (Math.abs(nx) > Math.abs(nz) ? 0 : 2) :
+                    (Math.abs(ny) > Math.abs(nz) ? 1 : 2);
+
+            for (int ring = 0; ring < buffer.ringCount; ring++) {
+                if (isSelfIntersecting(ring, axis)) {
+                    result.addError(GeometryErrorType.RING_SELF_INTERSECTION, cityObjectId, id,
+                            "The " + getRingName(ring) + " intersects itself.");
+                }
+            }
+        }
+
+        private void checkSolid(Solid solid) {
+            buffer.vertices.reset(tolerance);
+            buffer.edges.reset();
+            originX = Double.NaN;
+            volume = 0;
+
+            // solids with unsupported or referenced surfaces cannot be checked
+            if (!solid.isSetExterior() || !addSurface(solid.getExterior(), false))
+                return;
+
+            ScratchBuffer.EdgeIndex edges = buffer.edges;
+            edges.evaluate();
+            String id = solid.getId();
+
+            if (edges.freeEdges > 0) {
+                result.addError(GeometryErrorType.SOLID_NOT_CLOSED, cityObjectId, id,
+                        "The exterior shell has " + edges.freeEdges + " free edge(s).");
+            }
+
+            if (edges.nonManifoldEdges > 0) {
+                result.addError(GeometryErrorType.SOLID_NON_MANIFOLD_EDGE, cityObjectId, id,
+                        "The exterior shell has " + edges.nonManifoldEdges + " edge(s) shared by more than two surfaces.");
+            }
+
+            if (edges.inconsistentEdges > 0) {
+                result.addError(GeometryErrorType.SOLID_INCONSISTENT_ORIENTATION, cityObjectId, id,
+                        "The exterior shell has " + edges.inconsistentEdges + " edge(s) between inconsistently oriented surfaces.");
+            } else if (edges.freeEdges == 0 && edges.nonManifoldEdges == 0 && volume < 0) {
+                result.addError(GeometryErrorType.SOLID_INWARD_ORIENTATION, cityObjectId, id,
+                        "The surface normals of the exterior shell point inwards.");
+            }
+        }
+
+        private boolean addSurface(SurfaceProperty property, boolean reverse) {
+            if (!property.isSetSurface())
+                return false;
+
+            AbstractSurface surface = property.getSurface();
+            if (surface instanceof Polygon) {
+                if (!loadPolygon((Polygon) surface, null, false))
+                    return false;
+
+                addEdges(reverse);
+                return true;
+            } else if (surface instanceof CompositeSurface) {
+                for (SurfaceProperty member : ((CompositeSurface) surface).getSurfaceMember()) {
+                    if (!addSurface(member, reverse))
+                        return false;
+                }
+
+                return true;
+            } else if (surface instanceof OrientableSurface) {
+                OrientableSurface orientableSurface = (OrientableSurface) surface;
+                return orientableSurface.isSetBaseSurface()
+                        && addSurface(orientableSurface.getBaseSurface(), reverse ^ orientableSurface.getOrientation() == Sign.MINUS);
+            } else
+                return false;
+        }
+
+        private void addEdges(boolean reverse) {
+            double[] coordinates = buffer.coordinates;
+            if (Double.isNaN(originX)) {
+                originX = coordinates[0];
+                originY = coordinates[1];
+                originZ = coordinates[2];
+            }
+
+            for (int ring = 0; ring < buffer.ringCount; ring++) {
+                int start = buffer.getStart(ring), end = buffer.getEnd(ring);
+                int first = buffer.vertices.getId(coordinates[3 * start], coordinates[3 * start + 1], coordinates[3 * start + 2]);
+                int previous = first;
+
+                for (int i = start + 1; i <= end; i++) {
+                    int current = i < end ?
+                            buffer.vertices.getId(coordinates[3 * i], coordinates[3 * i + 1], coordinates[3 * i + 2]) :
+                            first;
+
+                    if (reverse)
+                        buffer.edges.add(current, previous);
+                    else
+                        buffer.edges.add(previous, current);
+
+                    previous = current;
+                }
+
+                // signed volume of the shell from the triangle fans of its rings
+                double ox = coordinates[3 * start], oy = coordinates[3 * start + 1], oz = coordinates[3 * start + 2];
+                double ax = ox - originX, ay = oy - originY, az = oz - originZ;
+                double ringVolume = 0;
+                for (int i = start + 1; i < end - 1; i++) {
+                    double bx = coordinates[3 * i] - ox, by = coordinates[3 * i + 1] - oy, bz = coordinates[3 * i + 2] - oz;
+                    double cx = coordinates[3 * i + 3] - ox, cy = coordinates[3 * i + 4] - oy, cz = coordinates[3 * i + 5] - oz;
+                    ringVolume += ax * (by * cz - bz * cy) + ay * (bz * cx - bx * cz) + az * (bx * cy - by * cx);
+                }
+
+                volume += reverse ? -ringVolume : ringVolume;
+            }
+        }
+
+        private boolean loadPolygon(Polygon polygon, String id, boolean report) {
+            buffer.clear();
+            if (!polygon.isSetExterior() || !loadRing(polygon.getExterior(), 0, id, report))
+                return false;
+
+            if (polygon.isSetInterior()) {
+                List<AbstractRingProperty> interiors = polygon.getInterior();
+                for (int i = 0; i < interiors.size(); i++) {
+                    if (!loadRing(interiors.get(i), i + 1, id, report))
+                        return false;
+                }
+            }
+
+            return true;
+        }
+
+        private boolean loadRing(AbstractRingProperty property, int index, String id, boolean report) {
+            AbstractRing ring = property.getRing();
+            if (!(ring instanceof LinearRing))
+                return false;
+
+            LinearRing linearRing = (LinearRing) ring;
+            DirectPositionList posList = linearRing.getPosList();
+            List<Double> values = posList != null && (posList.getSrsDimension() == null || posList.getSrsDimension() == 3) ?
+                    posList.getValue() :
+                    linearRing.toList3d();
+
+            int start = buffer.vertexCount;
+            for (int i = 0; i + 2 < values.size(); i += 3)
+                buffer.addVertex(values.get(i), values.get(i + 1), values.get(i + 2));
+
+            double toleranceSquared = tolerance * tolerance;
+            int size = buffer.vertexCount - start;
+
+            if (size > 1 && buffer.distanceSquared(start, buffer.vertexCount - 1) <= toleranceSquared)
+                buffer.vertexCount--;
+            else if (size > 0 && report)
+                result.addError(GeometryErrorType.RING_NOT_CLOSED, cityObjectId, id, "The " + getRingName(index) + " is not closed.");
+
+            int duplicates = buffer.removeDuplicates(start, toleranceSquared);
+            if (duplicates > 0 && report) {
+                result.addError(GeometryErrorType.RING_DUPLICATE_POINT, cityObjectId, id,
+                        "The " + getRingName(index) + " contains " + duplicates + " duplicate point(s).");
+            }
+
+            if (buffer.vertexCount - start < 3) {
+                if (report) {
+                    result.addError(GeometryErrorType.RING_TOO_FEW_POINTS, cityObjectId, id,
+                            "The " + getRingName(index) + " has less than three distinct points.");
+                }
+
+                return false;
+            }
+
+            buffer.endRing();
+            return true;
+        }
+
+        private void calcNormal(int ring, double[] normal) {
+            double[] coordinates = buffer.coordinates;
+            int start = buffer.getStart(ring), end = buffer.getEnd(ring);
+            double nx = 0, ny = 0, nz = 0;
+
+            // newell's method on coordinates relative to the first point of the polygon
+            for (int i = start; i < end; i++) {
+                int j = i + 1 < end ? i + 1 : start;
+                double xi = coordinates[3 * i] - coordinates[0], yi = coordinates[3 * i + 1] - coordinates[1], zi = coordinates[3 * i + 2] - coordinates[2];
+                double xj = coordinates[3 * j] - coordinates[0], yj = coordinates[3 * j + 1] - coordinates[1], zj = coordinates[3 * j + 2] - coordinates[2];
+                nx += (yi - yj) * (zi + zj);
+                ny += (zi - zj) * (xi + xj);
+                nz += (xi - xj) * (yi + yj);
+            }
+
+            normal[0] = nx;
+            normal[1] = ny;
+            normal[2] = nz;
+        }
+
+        private boolean isSelfIntersecting(int ring, int axis) {
+            int start = buffer.getStart(ring);
+            int size = buffer.getEnd(ring) - start;
+            if (size < 4)
+                return false;
+
+            double[] coordinates = buffer.coordinates;
+            double[] points = buffer.getProjected(size);
+            int u = axis == 0 ? 1 : 0;
+            int v = axis == 2 ? 1 : 2;
+
+            for (int i = 0; i < size; i++) {
+                points[2 * i] = coordinates[3 * (start + i) + u] - coordinates[u];
+                points[2 * i + 1] = coordinates[3 * (start + i) + v] - coordinates[v];
+            }
+
+            return size <= BRUTE_FORCE_SEGMENTS ?
+                    intersectsBruteForce(points, size) :
+                    intersectsHashed(points, size);
+        }
+
+        private boolean intersectsBruteForce(double[] points, int size) {
+            for (int i = 0; i < size; i++) {
+                for (int j = i + 2; j < size; j++) {
+                    if (!isAdjacent(i, j, size) && intersects(points, i, j, size))
+                        return true;
+                }
+            }
+
+            return false;
+        }
+
+        // segments are hashed into a uniform grid over the ring and only segments sharing a cell are compared
+        private boolean intersectsHashed(double[] points, int size) {
+            double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                minX = Math.min(minX, points[2 * i]);
+                minY = Math.min(minY, points[2 * i + 1]);
+                maxX = Math.max(maxX, points[2 * i]);
+                maxY = Math.max(maxY, points[2 * i + 1]);
+            }
+
+            int grid = (int) Math.ceil(Math.sqrt(size));
+            double width = maxX > minX ? (maxX - minX) / grid : 1;
+            double height = maxY > minY ? (maxY - minY) / grid : 1;
+            int cells = grid * grid;
+
+            buffer.ensureCells(cells, 0);
+            int[] starts = buffer.cellStarts;
+            Arrays.fill(starts, 0, cells + 1, 0);
+
+            int items = 0;
+            for (int i = 0; i < size; i++) {
+                int j = i + 1 < size ? i + 1 : 0;
+                int x0 = getCell(Math.min(points[2 * i], points[2 * j]), minX, width, grid);
+                int x1 = getCell(Math.max(points[2 * i], points[2 * j]), minX, width, grid);
+                int y0 = getCell(Math.min(points[2 * i + 1], points[2 * j + 1]), minY, height, grid);
+                int y1 = getCell(Math.max(points[2 * i + 1], points[2 * j + 1]), minY, height, grid);
+
+                for (int x = x0; x <= x1; x++) {
+                    for (int y = y0; y <= y1; y++)
+                        starts[y * grid + x + 1]++;
+                }
+
+                items += (x1 - x0 + 1) * (y1 - y0 + 1);
+                if (items > 16 * size)
+                    return intersectsBruteForce(points, size);
+            }
+
+            for (int cell = 0; cell < cells; cell++)
+                starts[cell + 1] += starts[cell];
+
+            buffer.ensureCells(cells, items);
+            int[] cursors = buffer.cellCursors;
+            int[] cellItems = buffer.cellItems;
+            System.arraycopy(starts, 0, cursors, 0, cells);
+
+            for (int i = 0; i < size; i++) {
+                int j = i + 1 < size ? i + 1 : 0;
+                int x0 = getCell(Math.min(points[2 * i], points[2 * j]), minX, width, grid);
+                int x1 = getCell(Math.max(points[2 * i], points[2 * j]), minX, width, grid);
+                int y0 = getCell(Math.min(points[2 * i + 1], points[2 * j + 1]), minY, height, grid);
+                int y1 = getCell(Math.max(points[2 * i + 1], points[2 * j + 1]), minY, height, grid);
+
+                for (int x = x0; x <= x1; x++) {
+                    for (int y = y0; y <= y1; y++)
+                        cellItems[cursors[y * grid + x]++] = i;
+                }
+            }
+
+            for (int cell = 0; cell < cells; cell++) {
+                for (int a = starts[cell]; a < starts[cell + 1]; a++) {
+                    for (int b = a + 1; b < starts[cell + 1]; b++) {
+                        int i = cellItems[a], j = cellItems[b];
+                        if (!isAdjacent(i, j, size) && intersects(points, i, j, size))
+                            return true;
+                    }
+                }
+            }
+
+            return false;
+        }
+
+        private int getCell(double value, double min, double extent, int grid) {
+            int cell = (int) ((value - min) / extent);
+            return cell < 0 ? 0 : Math.min(cell, grid - 1);
+        }
+
+        private boolean isAdjacent(int i, int j, int size) {
+            int distance = Math.abs(i - j);
+            return distance <= 1 || distance == size - 1;
+        }
+
+        private boolean intersects(double[] points, int i, int j, int size) {
+            int a = i, b = i + 1 < size ? i + 1 : 0;
+            int c = j, d = j + 1 < size ? j + 1 : 0;
+
+            double d1 = orientation(points, c, d, a);
+            double d2 = orientation(points, c, d, b);
+            double d3 = orientation(points, a, b, c);
+            double d4 = orientation(points, a, b, d);
+
+            if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0)))
+                return true;
+
+            return (d1 == 0 && isOnSegment(points, c, d, a))
+                    || (d2 == 0 && isOnSegment(points, c, d, b))
+                    || (d3 == 0 && isOnSegment(points, a, b, c))
+                    || (d4 == 0 && isOnSegment(points, a, b, d));
+        }
+
+        private double orientation(double[] points, int a, int b, int c) {
+            return (points[2 * b] - points[2 * a]) * (points[2 * c + 1] - points[2 * a + 1])
+                    - (points[2 * b + 1] - points[2 * a + 1]) * (points[2 * c] - points[2 * a]);
+        }
+
+        private boolean isOnSegment(double[] points, int a, int b, int c) {
+            return Math.min(points[2 * a], points[2 * b]) <= points[2 * c]
+                    && points[2 * c] <= Math.max(points[2 * a], points[2 * b])
+                    && Math.min(points[2 * a + 1], points[2 * b + 1]) <= points[2 * c + 1]
+                    && points[2 * c + 1] <= Math.max(points[2 * a + 1], points[2 * b + 1]);
+        }
+
+        private String getRingName(int index) {
+            return index == 0 ? "exterior ring" : "interior ring " + index;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.geometryvalidator;
+
+import java.util.Arrays;
+
+// per-thread working memory that is reused for every polygon and solid to avoid allocations
+class ScratchBuffer {
+    final VertexIndex vertices = new VertexIndex();
+    final EdgeIndex edges = new EdgeIndex();
+    final double[] normal = new double[3];
+    double[] coordinates = new double[3 * 256];
+    double[] projected = new double[2 * 256];
+    int[] rings = new int[16];
+    int[] cellStarts = new int[64];
+    int[] cellCursors = new int[64];
+    int[] cellItems = new int[256];
+    int vertexCount;
+    int ringCount;
+
+    void clear() {
+        vertexCount = 0;
+        ringCount = 0;
+    }
+
+    void addVertex(double x, double y, double z) {
+        if (coordinates.length < 3 * (vertexCount + 1))
+            coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+
+        int index = 3 * vertexCount++;
+        coordinates[index] = x;
+        coordinates[index + 1] = y;
+        coordinates[index + 2] = z;
+    }
+
+    void endRing() {
+        if (rings.length < ringCount + 2)
+            rings = Arrays.copyOf(rings, rings.length * 2);
+
+        rings[++ringCount] = vertexCount;
+    }
+
+    int getStart(int ring) {
+        return rings[ring];
+    }
+
+    int getEnd(int ring) {
+        return rings[ring + 1];
+    }
+
+    double distanceSquared(int i, int j) {
+        double dx = coordinates[3 * i] - coordinates[3 * j];
+        double dy = coordinates[3 * i + 1] - coordinates[3 * j + 1];
+        double dz = coordinates[3 * i + 2] - coordinates[3 * j + 2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    // removes consecutive points of the current ring that are closer than the tolerance
+    int removeDuplicates(int start, double toleranceSquared) {
+        if (vertexCount - start < 2)
+            return 0;
+
+        int next = start + 1;
+        for (int i = start + 1; i < vertexCount; i++) {
+            if (distanceSquared(i, next - 1) > toleranceSquared) {
+                if (i != next)
+                    System.arraycopy(coordinates, 3 * i, coordinates, 3 * next, 3);
+
+                next++;
+            }
+        }
+
+        while (next - start > 1 && distanceSquared(next - 1, start) <= toleranceSquared)
+            next--;
+
+        int removed = vertexCount - next;
+        vertexCount = next;
+        return removed;
+    }
+
+    double[] getProjected(int size) {
+        if (projected.length < 2 * size)
+            projected = new double[Math.max(2 * size, projected.length * 2)];
+
+        return projected;
+    }
+
+    void ensureCells(int cells, int items) {
+        if (cellStarts.length < cells + 1) {
+            cellStarts = new int[Math.max(cells + 1, cellStarts.length * 2)];
+            cellCursors = new int[cellStarts.length];
+        }
+
+        if (cellItems.length < items)
+            cellItems = new int[Math.max(items, cellItems.length * 2)];
+    }
+
+    // assigns the same id to vertices within the tolerance of a previously added vertex. vertices are hashed
+    // into grid cells of twice the tolerance, so a match lies in the own cell or in one of the seven cells
+    // towards the nearer cell borders. entries are invalidated by increasing the stamp instead of clearing the arrays.
+    static class VertexIndex {
+        private long[] keys = new long[3 * 1024];
+        private double[] points = new double[3 * 1024];
+        private int[] ids = new int[1024];
+        private int[] stamps = new int[1024];
+        private int stamp;
+        private int size;
+        private double scale;
+        private double toleranceSquared;
+
+        void reset(double tolerance) {
+            stamp++;
+            size = 0;
+            scale = 1 / (2 * tolerance);
+            toleranceSquared = tolerance * tolerance;
+        }
+
+        int getId(double x, double y, double z) {
+            double cx = x * scale, cy = y * scale, cz = z * scale;
+            long qx = (long) Math.floor(cx);
+            long qy = (long) Math.floor(cy);
+            long qz = (long) Math.floor(cz);
+            long nx = cx - qx < 0.5 ? qx - 1 : qx + 1;
+            long ny = cy - qy < 0.5 ? qy - 1 : qy + 1;
+            long nz = cz - qz < 0.5 ? qz - 1 : qz + 1;
+
+            for (int i = 0; i < 8; i++) {
+                int id = find((i & 1) == 0 ? qx : nx, (i & 2) == 0 ? qy : ny, (i & 4) == 0 ? qz : nz, x, y, z);
+                if (id >= 0)
+                    return id;
+            }
+
+            int id = size++;
+            int mask = ids.length - 1;
+            int slot = hash(qx, qy, qz) & mask;
+            while (stamps[slot] == stamp)
+                slot = (slot + 1) & mask;
+
+            put(slot, qx, qy, qz, x, y, z, id);
+            if (2 * size > ids.length)
+                grow();
+
+            return id;
+        }
+
+        private int find(long qx, long qy, long qz, double x, double y, double z) {
+            int mask = ids.length - 1;
+            int slot = hash(qx, qy, qz) & mask;
+            while (stamps[slot] == stamp) {
+                if (keys[3 * slot] == qx && keys[3 * slot + 1] == qy && keys[3 * slot + 2] == qz) {
+                    double dx = x - points[3 * slot];
+                    double dy = y - points[3 * slot + 1];
+                    double dz = z - points[3 * slot + 2];
+                    if (dx * dx + dy * dy + dz * dz <= toleranceSquared)
+                        return ids[slot];
+                }
+
+                slot = (slot + 1) & mask;
+            }
+
+            return -1;
+        }
+
+        private void put(int slot, long qx, long qy, long qz, double x, double y, double z, int id) {
+            keys[3 * slot] = qx;
+            keys[3 * slot + 1] = qy;
+            keys[3 * slot + 2] = qz;
+            points[3 * slot] = x;
+            points[3 * slot + 1] = y;
+            points[3 * slot + 2] = z;
+            ids[slot] = id;
+            stamps[slot] = stamp;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            double[] oldPoints = points;
+            int[] oldIds = ids;
+            int[] oldStamps = stamps;
+
+            keys = new long[oldKeys.length * 2];
+            points = new double[oldPoints.length * 2];
+            ids = new int[oldIds.length * 2];
+            stamps = new int[oldStamps.length * 2];
+
+            int mask = ids.length - 1;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldStamps[i] == stamp) {
+                    long qx = oldKeys[3 * i], qy = oldKeys[3 * i + 1], qz = oldKeys[3 * i + 2];
+                    int slot = hash(qx, qy, qz) & mask;
+                    while (stamps[slot] == stamp)
+                        slot = (slot + 1) & mask;
+
+                    put(slot, qx, qy, qz, oldPoints[3 * i], oldPoints[3 * i + 1], oldPoints[3 * i + 2], oldIds[i]);
+                }
+            }
+        }
+
+        private int hash(long qx, long qy, long qz) {
+            long hash = qx * 0x9E3779B97F4A7C15L + qy * 0xC2B2AE3D27D4EB4FL + qz * 0x165667B19E3779F9L;
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+
+    // counts how often an undirected edge is used in either direction
+    static class EdgeIndex {
+        private long[] keys = new long[1024];
+        private int[] forward = new int[1024];
+        private int[] backward = new int[1024];
+        private int[] stamps = new int[1024];
+        private int stamp;
+        private int size;
+        int freeEdges;
+        int nonManifoldEdges;
+        int inconsistentEdges;
+
+        void reset() {
+            stamp++;
+            size = 0;
+        }
+
+        void add(int from, int to) {
+            if (from == to)
+                return;
+
+            long key = from < to ? (long) from << 32 | to : (long) to << 32 | from;
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (stamps[slot] == stamp && keys[slot] != key)
+                slot = (slot + 1) & mask;
+
+            if (stamps[slot] != stamp) {
+                keys[slot] = key;
+                forward[slot] = 0;
+                backward[slot] = 0;
+                stamps[slot] = stamp;
+                size++;
+            }
+
+            if (from < to)
+                forward[slot]++;
+            else
+                backward[slot]++;
+
+            if (2 * size > keys.length)
+                grow();
+        }
+
+        void evaluate() {
+            freeEdges = 0;
+            nonManifoldEdges = 0;
+            inconsistentEdges = 0;
+
+            for (int i = 0; i < keys.length; i++) {
+                if (stamps[i] == stamp) {
+                    int count = forward[i] + backward[i];
+                    if (count == 1)
+                        freeEdges++;
+                    else if (count > 2)
+                        nonManifoldEdges++;
+                    else if (forward[i] != 1)
+                        inconsistentEdges++;
+                }
+            }
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldForward = forward;
+            int[] oldBackward = backward;
+            int[] oldStamps = stamps;
+
+            keys = new long[oldKeys.length * 2];
+            forward = new int[keys.length];
+            backward = new int[keys.length];
+            stamps = new int[keys.length];
+
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldStamps[i] == stamp) {
+                    int slot = hash(oldKeys[i]) & mask;
+                    while (stamps[slot] == stamp)
+                        slot = (slot + 1) & mask;
+
+                    keys[slot] = oldKeys[i];
+                    forward[slot] = oldForward[i];
+                    backward[slot] = oldBackward[i];
+                    stamps[slot] = stamp;
+                }
+            }
+        }
+
+        private int hash(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+}
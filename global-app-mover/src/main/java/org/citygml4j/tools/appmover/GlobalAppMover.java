@@ -30,7 +30,6 @@ import org.citygml4j.model.citygml.appearance.AppearanceProperty;
 import org.citygml4j.model.citygml.appearance.GeoreferencedTexture;
 import org.citygml4j.model.citygml.appearance.ParameterizedTexture;
 import org.citygml4j.model.citygml.appearance.SurfaceDataProperty;
-import org.citygml4j.model.citygml.appearance.TextureAssociation;
 import org.citygml4j.model.citygml.appearance.X3DMaterial;
 import org.citygml4j.model.citygml.core.AbstractCityObject;
 import org.citygml4j.model.citygml.core.CityModel;
@@ -42,48 +41,67 @@ import org.citygml4j.util.child.ChildInfo;
 import org.citygml4j.util.gmlid.DefaultGMLIdManager;
 import org.citygml4j.util.walker.FeatureWalker;
 import org.citygml4j.util.walker.GMLWalker;
-import org.citygml4j.util.xlink.XLinkResolver;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 
 public class GlobalAppMover {
-    private final ReentrantLock lock = new ReentrantLock();
-    private final Map<String, List<AbstractSurfaceData>> targets;
-    private final CopyBuilder copyBuilder;
-    private final String ID = "id";
-    private final CityModel cityModel;
-    private final ResultStatistic resultStatistic;
+    private final ReentrantLock[] locks = new ReentrantLock[64];
+    private final TargetIndex targets;
+    private final IntFunction<Appearance> sourceAppearances;
+    private final IntFunction<AbstractSurfaceData> sourceSurfaceData;
+    private final CopyBuilder copyBuilder = new ShallowCopyBuilder();
+    private final CityModel cityModel = new CityModel();
+    private final Map<Appearance, LocalAppearance> cityModelApps = new ConcurrentHashMap<>();
+    private final ResultStatistic resultStatistic = new ResultStatistic();
+    private final String idPrefix = DefaultGMLIdManager.getInstance().getPrefix();
 
     private LocalAppTarget localAppTarget = LocalAppTarget.TOP_LEVEL_FEATURE;
 
     public GlobalAppMover(List<Appearance> appearances) {
-        targets = new HashMap<>();
-        copyBuilder = new ShallowCopyBuilder();
-        cityModel = new CityModel();
-        resultStatistic = new ResultStatistic();
+        List<SurfaceDataTarget> surfaceDataTargets = new ArrayList<>();
+        targets = new TargetIndex();
+        sourceAppearances = value -> surfaceDataTargets.get(value).appearance;
+        sourceSurfaceData = value -> surfaceDataTargets.get(value).surfaceData;
 
-        initialize(appearances);
+        initializeLocks();
+        initialize(appearances, surfaceDataTargets);
     }
 
     public GlobalAppMover(Appearance... appearances) {
         this(Arrays.asList(appearances));
     }
 
+    public GlobalAppMover(GlobalAppStore store) {
+        targets = store.getTargets();
+        sourceAppearances = store::getAppearance;
+        sourceSurfaceData = store::getSurfaceData;
+
+        initializeLocks();
+    }
+
     public AbstractCityObject moveGlobalApps(AbstractCityObject cityObject) {
         ChildInfo childInfo = new ChildInfo();
+        Map<AbstractFeature, Map<Appearance, LocalAppearance>> localApps = new IdentityHashMap<>();
 
         cityObject.accept(new GMLWalker() {
             @Override
             public void visit(AbstractGeometry geometry) {
                 if (geometry.isSetId()) {
-                    List<AbstractSurfaceData> surfaceDatas = targets.get(geometry.getId());
-                    if (surfaceDatas == null)
+                    int id = targets.getTarget(geometry.getId());
+                    if (id == -1)
                         return;
 
                     AbstractFeature target;
@@ -93,33 +111,34 @@ public class GlobalAppMover {
                         target = localAppTarget == LocalAppTarget.NESTED_FEATURE ?
                                 childInfo.getParentCityObject(geometry) : cityObject;
 
-                    for (AbstractSurfaceData surfaceData : surfaceDatas) {
-                        Appearance globalApp = childInfo.getParentFeature(surfaceData, Appearance.class);
-                        AbstractSurfaceData copy;
+                    Map<Appearance, LocalAppearance> appearances = target == cityModel ?
+                            cityModelApps :
+                            localApps.computeIfAbsent(target, v -> new IdentityHashMap<>());
 
-                        // changes to the city model have to be synchronized
-                        if (target == cityModel)
+                    for (int slot = targets.getStart(id); slot < targets.getEnd(id); slot++) {
+                        int value = targets.getValue(slot);
+                        Appearance appearance = sourceAppearances.apply(value);
+                        AbstractSurfaceData surfaceData = sourceSurfaceData.apply(value);
+
+                        // changes to the city model have to be synchronized per global appearance
+                        ReentrantLock lock = target == cityModel ? getLock(appearance) : null;
+                        if (lock != null)
                             lock.lock();
 
                         try {
-                            Appearance localApp = getOrCreateAppearance(target, globalApp);
-                            copy = getOrCreateSurfaceData(localApp, surfaceData);
+                            LocalAppearance localApp = getOrCreateAppearance(target, appearances, appearance);
+                            AbstractSurfaceData copy = getOrCreateSurfaceData(localApp, value, surfaceData);
 
                             if (copy instanceof ParameterizedTexture) {
                                 ParameterizedTexture texture = (ParameterizedTexture) surfaceData;
-                                for (TextureAssociation association : texture.getTarget()) {
-                                    if (association.isSetUri() &&
-                                            clipGMLId(association.getUri()).equals(geometry.getId())) {
-                                        ((ParameterizedTexture) copy).addTarget(association);
-                                        break;
-                                    }
-                                }
-                            } else if (copy instanceof GeoreferencedTexture)
+                                ((ParameterizedTexture) copy).addTarget(texture.getTarget().get(targets.getOrdinal(slot)));
+                            }
+                            else if (copy instanceof GeoreferencedTexture)
                                 ((GeoreferencedTexture) copy).addTarget("#" + geometry.getId());
                             else if (copy instanceof X3DMaterial)
                                 ((X3DMaterial) copy).addTarget("#" + geometry.getId());
                         } finally {
-                            if (lock.isHeldByCurrentThread())
+                            if (lock != null)
                                 lock.unlock();
                         }
                     }
@@ -142,57 +161,62 @@ public class GlobalAppMover {
     }
 
     public boolean hasRemainingGlobalApps() {
-        return cityModel.isSetAppearanceMember();
+        synchronized (cityModel) {
+            return cityModel.isSetAppearanceMember();
+        }
     }
 
     public List<Appearance> getRemainingGlobalApps() {
-        return cityModel.getAppearanceMember().stream()
-                .map(AppearanceProperty::getAppearance)
-                .collect(Collectors.toList());
+        synchronized (cityModel) {
+            return cityModel.getAppearanceMember().stream()
+                    .map(AppearanceProperty::getAppearance)
+                    .collect(Collectors.toList());
+        }
     }
 
     public ResultStatistic getResultStatistic() {
         return resultStatistic;
     }
 
-    private Appearance getOrCreateAppearance(AbstractFeature feature, Appearance appearance) {
-        boolean isCityObject = feature instanceof AbstractCityObject;
-        List<? extends AppearanceProperty> properties = isCityObject ?
-                ((AbstractCityObject) feature).getAppearance() : ((CityModel) feature).getAppearanceMember();
+    private ReentrantLock getLock(Appearance appearance) {
+        int hash = System.identityHashCode(appearance);
+        return locks[(hash ^ (hash >>> 16)) & (locks.length - 1)];
+    }
 
-        for (AppearanceProperty property : properties) {
-            if (property.isSetAppearance()
-                    && appearance.getLocalProperty(ID) == property.getAppearance().getLocalProperty(ID))
-                return property.getAppearance();
-        }
+    private LocalAppearance getOrCreateAppearance(AbstractFeature feature, Map<Appearance, LocalAppearance> appearances, Appearance appearance) {
+        LocalAppearance localApp = appearances.get(appearance);
+        if (localApp != null)
+            return localApp;
 
         Appearance copy = (Appearance) appearance.copy(copyBuilder);
-        copy.setId(DefaultGMLIdManager.getInstance().generateUUID());
+        copy.setId(generateId());
         copy.setSurfaceDataMember(new ArrayList<>());
-        copy.setLocalProperty(ID, appearance.getLocalProperty(ID));
 
-        if (isCityObject)
+        if (feature instanceof AbstractCityObject)
             ((AbstractCityObject) feature).addAppearance(new AppearanceProperty(copy));
-        else
-            ((CityModel) feature).addAppearanceMember(new AppearanceMember(copy));
+        else {
+            synchronized (cityModel) {
+                ((CityModel) feature).addAppearanceMember(new AppearanceMember(copy));
+            }
+        }
+
+        localApp = new LocalAppearance(copy);
+        appearances.put(appearance, localApp);
 
         resultStatistic.increment(Appearance.class);
-        return copy;
+        return localApp;
     }
 
-    private AbstractSurfaceData getOrCreateSurfaceData(Appearance appearance, AbstractSurfaceData surfaceData) {
-        String id = (String) surfaceData.getLocalProperty(ID);
-        for (SurfaceDataProperty property : appearance.getSurfaceDataMember()) {
-            if (property.isSetSurfaceData()
-                    && surfaceData.getLocalProperty(ID) == property.getSurfaceData().getLocalProperty(ID))
-                return property.getSurfaceData();
-        }
+    private AbstractSurfaceData getOrCreateSurfaceData(LocalAppearance appearance, int value, AbstractSurfaceData surfaceData) {
+        AbstractSurfaceData copy = appearance.getSurfaceData(value);
+        if (copy != null)
+            return copy;
 
-        AbstractSurfaceData copy = (AbstractSurfaceData) surfaceData.copy(copyBuilder);
-        appearance.addSurfaceDataMember(new SurfaceDataProperty(copy));
+        copy = (AbstractSurfaceData) surfaceData.copy(copyBuilder);
+        appearance.appearance.addSurfaceDataMember(new SurfaceDataProperty(copy));
+        appearance.putSurfaceData(value, copy);
 
-        copy.setId(DefaultGMLIdManager.getInstance().generateUUID());
-        copy.setLocalProperty(ID, id);
+        copy.setId(generateId());
 
         if (surfaceData instanceof ParameterizedTexture)
             ((ParameterizedTexture) copy).setTarget(new ArrayList<>());
@@ -205,24 +229,39 @@ public class GlobalAppMover {
         return copy;
     }
 
-    private void initialize(List<Appearance> appearances) {
+    private void initializeLocks() {
+        for (int i = 0; i < locks.length; i++)
+            locks[i] = new ReentrantLock();
+    }
+
+    private void initialize(List<Appearance> appearances, List<SurfaceDataTarget> surfaceDataTargets) {
         // resolve appearance xlinks
-        XLinkResolver xLinkResolver = new XLinkResolver();
+        Map<String, LinkTarget> linkTargets = new HashMap<>();
+        for (Appearance appearance : appearances) {
+            appearance.accept(new FeatureWalker() {
+                @Override
+                public void visit(AbstractFeature feature) {
+                    if (feature.isSetId())
+                        linkTargets.putIfAbsent(feature.getId(), new LinkTarget(feature, appearance));
+
+                    super.visit(feature);
+                }
+            });
+        }
+
+        Map<AbstractFeature, AbstractFeature> copies = new IdentityHashMap<>();
         for (Appearance appearance : appearances) {
             appearance.accept(new FeatureWalker() {
                 @Override
                 public <T extends AbstractFeature> void visit(FeatureProperty<T> property) {
                     if (property.isSetHref() && !property.isSetFeature()) {
-                        for (Appearance target : appearances) {
-                            if (target == appearance)
-                                continue;
-
-                            AbstractFeature feature = xLinkResolver.getFeature(property.getHref(), target);
-                            if (property.getAssociableClass().isInstance(feature)) {
-                                T copy = property.getAssociableClass().cast(feature.copy(copyBuilder));
-                                property.setFeature(copy);
-                                property.unsetHref();
-                            }
+                        LinkTarget linkTarget = linkTargets.get(clipGMLId(property.getHref()));
+                        if (linkTarget != null
+                                && linkTarget.appearance != appearance
+                                && property.getAssociableClass().isInstance(linkTarget.feature)) {
+                            AbstractFeature copy = copies.computeIfAbsent(linkTarget.feature, v -> (AbstractFeature) v.copy(copyBuilder));
+                            property.setFeature(property.getAssociableClass().cast(copy));
+                            property.unsetHref();
                         }
                     }
 
@@ -233,22 +272,17 @@ public class GlobalAppMover {
 
         // build targets map
         for (Appearance appearance : appearances) {
-            appearance.setLocalProperty(ID, DefaultGMLIdManager.getInstance().generateUUID());
-
             appearance.accept(new FeatureWalker() {
-                @Override
-                public void visit(AbstractSurfaceData surfaceData) {
-                    surfaceData.setLocalProperty(ID, DefaultGMLIdManager.getInstance().generateUUID());
-                }
-
                 @Override
                 public void visit(ParameterizedTexture texture) {
-                    for (TextureAssociation textureAssociation : texture.getTarget()) {
-                        List<AbstractSurfaceData> surfaceDatas = targets.computeIfAbsent(
-                                clipGMLId(textureAssociation.getUri()),
-                                v -> new ArrayList<>());
-
-                        surfaceDatas.add(texture);
+                    int value = addSurfaceData(surfaceDataTargets, appearance, texture);
+                    Set<Integer> added = new HashSet<>();
+                    for (int i = 0; i < texture.getTarget().size(); i++) {
+                        int target = targets.addTarget(clipGMLId(texture.getTarget().get(i).getUri()));
+
+                        // only the first texture association per target is moved
+                        if (added.add(target))
+                            targets.add(target, value, i);
                     }
 
                     super.visit(texture);
@@ -256,34 +290,113 @@ public class GlobalAppMover {
 
                 @Override
                 public void visit(GeoreferencedTexture texture) {
-                    for (String target : texture.getTarget()) {
-                        List<AbstractSurfaceData> surfaceDatas = targets.computeIfAbsent(
-                                clipGMLId(target),
-                                v -> new ArrayList<>());
-
-                        surfaceDatas.add(texture);
-                    }
+                    int value = addSurfaceData(surfaceDataTargets, appearance, texture);
+                    for (String target : texture.getTarget())
+                        targets.add(targets.addTarget(clipGMLId(target)), value, -1);
 
                     super.visit(texture);
                 }
 
                 @Override
                 public void visit(X3DMaterial material) {
-                    for (String target : material.getTarget()) {
-                        List<AbstractSurfaceData> surfaceDatas = targets.computeIfAbsent(
-                                clipGMLId(target),
-                                v -> new ArrayList<>());
-
-                        surfaceDatas.add(material);
-                    }
+                    int value = addSurfaceData(surfaceDataTargets, appearance, material);
+                    for (String target : material.getTarget())
+                        targets.add(targets.addTarget(clipGMLId(target)), value, -1);
 
                     super.visit(material);
                 }
             });
         }
+
+        targets.build();
+    }
+
+    private int addSurfaceData(List<SurfaceDataTarget> surfaceDataTargets, Appearance appearance, AbstractSurfaceData surfaceData) {
+        surfaceDataTargets.add(new SurfaceDataTarget(appearance, surfaceData));
+        return surfaceDataTargets.size() - 1;
+    }
+
+    private String generateId() {
+        // avoids contention on the shared SecureRandom instance of UUID.randomUUID()
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long mostSigBits = (random.nextLong() & ~0xf000L) | 0x4000L;
+        long leastSigBits = (random.nextLong() & ~0xc000000000000000L) | 0x8000000000000000L;
+        return idPrefix + new UUID(mostSigBits, leastSigBits);
     }
 
     private String clipGMLId(String target) {
         return target.replaceAll("^.*?#+?", "");
     }
+
+    private static final class SurfaceDataTarget {
+        private final Appearance appearance;
+        private final AbstractSurfaceData surfaceData;
+
+        SurfaceDataTarget(Appearance appearance, AbstractSurfaceData surfaceData) {
+            this.appearance = appearance;
+            this.surfaceData = surfaceData;
+        }
+    }
+
+    private static final class LinkTarget {
+        private final AbstractFeature feature;
+        private final Appearance appearance;
+
+        LinkTarget(AbstractFeature feature, Appearance appearance) {
+            this.feature = feature;
+            this.appearance = appearance;
+        }
+    }
+
+    // surface data copies are kept in an open-addressing table keyed by the primitive surface data value
+    private static final class LocalAppearance {
+        private final Appearance appearance;
+        private int[] values = new int[8];
+        private AbstractSurfaceData[] surfaceData = new AbstractSurfaceData[8];
+        private int size;
+
+        LocalAppearance(Appearance appearance) {
+            this.appearance = appearance;
+        }
+
+        AbstractSurfaceData getSurfaceData(int value) {
+            int mask = values.length - 1;
+            for (int i = hash(value) & mask; surfaceData[i] != null; i = (i + 1) & mask) {
+                if (values[i] == value)
+                    return surfaceData[i];
+            }
+
+            return null;
+        }
+
+        void putSurfaceData(int value, AbstractSurfaceData copy) {
+            if (++size > values.length >> 1) {
+                int[] oldValues = values;
+                AbstractSurfaceData[] oldSurfaceData = surfaceData;
+                values = new int[oldValues.length << 1];
+                surfaceData = new AbstractSurfaceData[oldValues.length << 1];
+                for (int i = 0; i < oldValues.length; i++) {
+                    if (oldSurfaceData[i] != null)
+                        insert(oldValues[i], oldSurfaceData[i]);
+                }
+            }
+
+            insert(value, copy);
+        }
+
+        private void insert(int value, AbstractSurfaceData copy) {
+            int mask = values.length - 1;
+            int i = hash(value) & mask;
+            while (surfaceData[i] != null && values[i] != value)
+                i = (i + 1) & mask;
+
+            values[i] = value;
+            surfaceData[i] = copy;
+        }
+
+        private int hash(int value) {
+            int hash = value * 0x9e3779b9;
+            return hash ^ (hash >>> 16);
+        }
+    }
 }
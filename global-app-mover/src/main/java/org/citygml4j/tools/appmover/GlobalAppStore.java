@@ -0,0 +1,553 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.appmover;
+
+import org.citygml4j.builder.jaxb.CityGMLBuilder;
+import org.citygml4j.builder.jaxb.CityGMLBuilderException;
+import org.citygml4j.builder.jaxb.unmarshal.JAXBUnmarshaller;
+import org.citygml4j.model.citygml.appearance.AbstractSurfaceData;
+import org.citygml4j.model.citygml.appearance.Appearance;
+import org.citygml4j.model.common.base.ModelObject;
+import org.citygml4j.model.module.Modules;
+import org.citygml4j.model.module.gml.GMLCoreModule;
+import org.citygml4j.model.module.gml.XLinkModule;
+import org.citygml4j.tools.common.util.Compression;
+import org.citygml4j.tools.common.util.IdDictionary;
+import org.citygml4j.tools.common.util.MappedBuffers;
+import org.citygml4j.xml.io.reader.CityGMLReadException;
+import org.citygml4j.xml.io.reader.MissingADESchemaException;
+import org.citygml4j.xml.schema.SchemaHandler;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// keeps the surface data of global appearances in a memory-mapped temporary file so that only
+// the target index has to be held in memory. surface data is unmarshalled on demand and the most
+// recently used objects are cached
+public class GlobalAppStore implements AutoCloseable {
+    private static final int SEGMENT_SIZE = 1 << 30;
+
+    private final CityGMLBuilder cityGMLBuilder;
+    private final SchemaHandler schemaHandler;
+    private final XMLInputFactory in;
+    private final ThreadLocal<AppearanceUnmarshaller> unmarshallers = ThreadLocal.withInitial(AppearanceUnmarshaller::new);
+    private final Path file;
+    private final TargetIndex targets = new TargetIndex();
+    private final Map<Integer, AbstractSurfaceData> cache;
+
+    private final List<byte[]> appearanceHeaders = new ArrayList<>();
+    private final List<byte[][]> appearanceWrappers = new ArrayList<>();
+    private Appearance[] appearances;
+
+    private int[] entrySlots = new int[1024];
+    private int[] entryAppearances = new int[1024];
+    private int entries;
+
+    private long[] slotOffsets = new long[1024];
+    private int[] slotLengths = new int[1024];
+    private int[] slotOwners = new int[1024];
+    private int[] slotPairStarts = new int[1024];
+    private int[] slotPairEnds = new int[1024];
+    private int slots;
+
+    private final IdDictionary slotIds = new IdDictionary();
+    private int[] idSlots = new int[1024];
+    private final List<Link> links = new ArrayList<>();
+
+    private MappedByteBuffer[] segments;
+
+    public GlobalAppStore(CityGMLBuilder cityGMLBuilder, Path file, int cacheSize) throws CityGMLBuilderException {
+        this.cityGMLBuilder = cityGMLBuilder;
+        this.file = file;
+        schemaHandler = cityGMLBuilder.getDefaultSchemaHandler();
+        in = XMLInputFactory.newInstance();
+        in.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        cache = new LinkedHashMap<Integer, AbstractSurfaceData>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, AbstractSurfaceData> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    public int readGlobalApps(Path inputFile) throws CityGMLReadException {
+        try (InputStream input = Compression.newInputStream(inputFile);
+             OutputStream output = new BufferedOutputStream(Files.newOutputStream(file))) {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(input);
+            try {
+                new AppearanceSpiller(reader, output).read();
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XMLStreamException e) {
+            throw new CityGMLReadException("Failed to write global appearances to temporary file.", e);
+        }
+
+        resolveLinks();
+        targets.build();
+        appearances = new Appearance[appearanceHeaders.size()];
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                long offset = (long) i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT_SIZE, size - offset));
+            }
+        } catch (IOException e) {
+            throw new CityGMLReadException("Failed to map temporary file for global appearances.", e);
+        }
+
+        return appearances.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (segments != null) {
+            for (MappedByteBuffer segment : segments)
+                MappedBuffers.unmap(segment);
+
+            segments = null;
+        }
+
+        Files.deleteIfExists(file);
+    }
+
+    TargetIndex getTargets() {
+        return targets;
+    }
+
+    Appearance getAppearance(int value) {
+        int appearance = entryAppearances[value];
+        synchronized (appearances) {
+            if (appearances[appearance] == null) {
+                appearances[appearance] = readAppearance(appearanceHeaders.get(appearance));
+                appearanceHeaders.set(appearance, null);
+            }
+
+            return appearances[appearance];
+        }
+    }
+
+    AbstractSurfaceData getSurfaceData(int value) {
+        int slot = entrySlots[value];
+        AbstractSurfaceData surfaceData;
+        synchronized (cache) {
+            surfaceData = cache.get(slot);
+        }
+
+        if (surfaceData == null) {
+            // surface data is unmarshalled within the namespace context of its global appearance
+            byte[][] wrapper = appearanceWrappers.get(slotOwners[slot]);
+            byte[] bytes = new byte[wrapper[0].length + slotLengths[slot] + wrapper[1].length];
+            System.arraycopy(wrapper[0], 0, bytes, 0, wrapper[0].length);
+            read(slotOffsets[slot], slotLengths[slot], bytes, wrapper[0].length);
+            System.arraycopy(wrapper[1], 0, bytes, bytes.length - wrapper[1].length, wrapper[1].length);
+
+            surfaceData = readAppearance(bytes).getSurfaceDataMember().get(0).getSurfaceData();
+            synchronized (cache) {
+                cache.put(slot, surfaceData);
+            }
+        }
+
+        return surfaceData;
+    }
+
+    // the unmarshallers are reused per thread since creating a reader for every cache miss is expensive
+    private Appearance readAppearance(byte[] bytes) {
+        AppearanceUnmarshaller unmarshaller = unmarshallers.get();
+        try {
+            XMLStreamReader reader = in.createXMLStreamReader(new ByteArrayInputStream(bytes));
+            try {
+                Object object = unmarshaller.unmarshaller.unmarshal(reader);
+                ModelObject modelObject = object != null ? unmarshaller.jaxbUnmarshaller.unmarshal(object) : null;
+                if (modelObject instanceof Appearance)
+                    return (Appearance) modelObject;
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | JAXBException | MissingADESchemaException e) {
+            throw new IllegalStateException("Failed to read global appearance from temporary file.", e);
+        }
+
+        throw new IllegalStateException("Failed to read global appearance from temporary file.");
+    }
+
+    private void read(long offset, int length, byte[] bytes, int pos) {
+        for (int end = pos + length; pos < end; ) {
+            ByteBuffer segment = segments[(int) (offset / SEGMENT_SIZE)].duplicate();
+            segment.position((int) (offset % SEGMENT_SIZE));
+            int count = Math.min(end - pos, segment.remaining());
+            segment.get(bytes, pos, count);
+            offset += count;
+            pos += count;
+        }
+    }
+
+    private void resolveLinks() {
+        for (Link link : links) {
+            int id = slotIds.get(link.id);
+            if (id == -1)
+                continue;
+
+            int slot = idSlots[id];
+            if (slotOwners[slot] == link.appearance)
+                continue;
+
+            int value = addEntry(slot, link.appearance);
+            for (int pair = slotPairStarts[slot]; pair < slotPairEnds[slot]; pair++)
+                targets.add(targets.getPairTarget(pair), value, targets.getPairOrdinal(pair));
+        }
+
+        links.clear();
+        slotPairStarts = slotPairEnds = null;
+        idSlots = null;
+    }
+
+    private int addEntry(int slot, int appearance) {
+        if (entries == entrySlots.length) {
+            int length = entries + (entries >> 1);
+            entrySlots = Arrays.copyOf(entrySlots, length);
+            entryAppearances = Arrays.copyOf(entryAppearances, length);
+        }
+
+        entrySlots[entries] = slot;
+        entryAppearances[entries] = appearance;
+        return entries++;
+    }
+
+    private int addSlot(long offset, int length, int appearance, int pairStart, int pairEnd) {
+        if (slots == slotOffsets.length) {
+            int capacity = slots + (slots >> 1);
+            slotOffsets = Arrays.copyOf(slotOffsets, capacity);
+            slotLengths = Arrays.copyOf(slotLengths, capacity);
+            slotOwners = Arrays.copyOf(slotOwners, capacity);
+            slotPairStarts = Arrays.copyOf(slotPairStarts, capacity);
+            slotPairEnds = Arrays.copyOf(slotPairEnds, capacity);
+        }
+
+        slotOffsets[slots] = offset;
+        slotLengths[slots] = length;
+        slotOwners[slots] = appearance;
+        slotPairStarts[slots] = pairStart;
+        slotPairEnds[slots] = pairEnd;
+        return slots++;
+    }
+
+    private void addSlotId(String gmlId, int slot) {
+        int size = slotIds.size();
+        int id = slotIds.getOrAdd(gmlId);
+        if (id == size) {
+            if (id == idSlots.length)
+                idSlots = Arrays.copyOf(idSlots, id + (id >> 1));
+
+            idSlots[id] = slot;
+        }
+    }
+
+    private String clipGMLId(String target) {
+        return target.replaceAll("^.*?#+?", "");
+    }
+
+    private final class AppearanceUnmarshaller {
+        private final Unmarshaller unmarshaller;
+        private final JAXBUnmarshaller jaxbUnmarshaller;
+
+        AppearanceUnmarshaller() {
+            try {
+                unmarshaller = cityGMLBuilder.getJAXBContext().createUnmarshaller();
+                jaxbUnmarshaller = cityGMLBuilder.createJAXBUnmarshaller(schemaHandler);
+            } catch (JAXBException e) {
+                throw new IllegalStateException("Failed to create unmarshaller for global appearances.", e);
+            }
+        }
+    }
+
+    private final class AppearanceSpiller {
+        private final XMLStreamReader reader;
+        private final OutputStream output;
+        private final XMLOutputFactory factory = XMLOutputFactory.newInstance();
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final Map<String, String> rootNamespaces = new LinkedHashMap<>();
+        private Map<String, String> memberNamespaces;
+        private long position;
+
+        AppearanceSpiller(XMLStreamReader reader, OutputStream output) {
+            this.reader = reader;
+            this.output = output;
+        }
+
+        void read() throws XMLStreamException, IOException {
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 1)
+                        rootNamespaces.putAll(getNamespaces());
+                    else if (depth == 2)
+                        memberNamespaces = getNamespaces();
+                    else if (depth == 3 && isCityGMLElement("Appearance")) {
+                        readAppearance();
+                        depth--;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT)
+                    depth--;
+            }
+        }
+
+        private void readAppearance() throws XMLStreamException, IOException {
+            int appearance = appearanceHeaders.size();
+            String prefix = reader.getPrefix() != null ? reader.getPrefix() : "";
+            String namespaceURI = reader.getNamespaceURI();
+
+            Map<String, String> namespaces = new LinkedHashMap<>(rootNamespaces);
+            namespaces.putAll(memberNamespaces);
+            namespaces.putAll(getNamespaces());
+
+            // the appearance is stored without its surface data members
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            XMLStreamWriter writer = factory.createXMLStreamWriter(header, "UTF-8");
+            writeStartElement(writer, namespaces);
+
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (depth == 0 && isCityGMLElement("surfaceDataMember")) {
+                        readSurfaceDataMember(appearance);
+                        continue;
+                    }
+
+                    depth++;
+                    writeStartElement(writer, getNamespaces());
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    writer.writeEndElement();
+                    if (depth-- == 0)
+                        break;
+                } else if (depth > 0)
+                    writeEvent(writer, event);
+            }
+
+            writer.flush();
+            writer.close();
+            appearanceHeaders.add(header.toByteArray());
+
+            header.reset();
+            writer = factory.createXMLStreamWriter(header, "UTF-8");
+            writer.writeStartElement(prefix, "Appearance", namespaceURI);
+            writeNamespaces(writer, namespaces);
+            writer.writeStartElement(prefix, "surfaceDataMember", namespaceURI);
+            writer.writeCharacters("");
+            writer.flush();
+            byte[] start = header.toByteArray();
+
+            header.reset();
+            writer.writeEndElement();
+            writer.writeEndElement();
+            writer.flush();
+            writer.close();
+            appearanceWrappers.add(new byte[][]{start, header.toByteArray()});
+        }
+
+        private void readSurfaceDataMember(int appearance) throws XMLStreamException, IOException {
+            String href = reader.getAttributeValue(XLinkModule.v3_1_1.getNamespaceURI(), "href");
+            Map<String, String> namespaces = getNamespaces();
+
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (depth == 0 && href == null) {
+                        readSurfaceData(appearance, namespaces);
+                        continue;
+                    }
+
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT && depth-- == 0)
+                    break;
+            }
+
+            if (href != null)
+                links.add(new Link(clipGMLId(href), appearance));
+        }
+
+        private void readSurfaceData(int appearance, Map<String, String> memberNamespaces) throws XMLStreamException, IOException {
+            boolean isParameterizedTexture = reader.getLocalName().equals("ParameterizedTexture");
+            String gmlId = reader.getAttributeValue(GMLCoreModule.v3_1_1.getNamespaceURI(), "id");
+            int value = entries;
+            int pairStart = targets.getPairCount();
+            Set<Integer> added = new HashSet<>();
+            StringBuilder text = null;
+            int ordinal = 0;
+
+            Map<String, String> namespaces = new LinkedHashMap<>(memberNamespaces);
+            namespaces.putAll(getNamespaces());
+
+            buffer.reset();
+            XMLStreamWriter writer = factory.createXMLStreamWriter(buffer, "UTF-8");
+            writeStartElement(writer, namespaces);
+
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 1 && isCityGMLElement("target")) {
+                        if (isParameterizedTexture) {
+                            String uri = reader.getAttributeValue(null, "uri");
+                            if (uri != null) {
+                                int target = targets.addTarget(clipGMLId(uri));
+
+                                // only the first texture association per target is moved
+                                if (added.add(target))
+                                    targets.add(target, value, ordinal);
+                            }
+
+                            ordinal++;
+                        } else
+                            text = new StringBuilder();
+                    }
+
+                    writeStartElement(writer, getNamespaces());
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == 1 && text != null) {
+                        String target = text.toString().trim();
+                        if (!target.isEmpty())
+                            targets.add(targets.addTarget(clipGMLId(target)), value, -1);
+
+                        text = null;
+                    }
+
+                    writer.writeEndElement();
+                    if (depth-- == 0)
+                        break;
+                } else {
+                    if (text != null && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA))
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+
+                    writeEvent(writer, event);
+                }
+            }
+
+            writer.flush();
+            writer.close();
+            buffer.writeTo(output);
+
+            int slot = addSlot(position, buffer.size(), appearance, pairStart, targets.getPairCount());
+            addEntry(slot, appearance);
+            position += buffer.size();
+
+            if (gmlId != null)
+                addSlotId(gmlId, slot);
+        }
+
+        private boolean isCityGMLElement(String localName) {
+            return reader.getLocalName().equals(localName)
+                    && Modules.isCityGMLModuleNamespace(reader.getNamespaceURI());
+        }
+
+        private Map<String, String> getNamespaces() {
+            Map<String, String> namespaces = new LinkedHashMap<>();
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                String prefix = reader.getNamespacePrefix(i);
+                namespaces.put(prefix != null ? prefix : "", reader.getNamespaceURI(i));
+            }
+
+            return namespaces;
+        }
+
+        private void writeStartElement(XMLStreamWriter writer, Map<String, String> namespaces) throws XMLStreamException {
+            String namespaceURI = reader.getNamespaceURI();
+            if (namespaceURI == null || namespaceURI.isEmpty())
+                writer.writeStartElement(reader.getLocalName());
+            else
+                writer.writeStartElement(reader.getPrefix() != null ? reader.getPrefix() : "", reader.getLocalName(), namespaceURI);
+
+            writeNamespaces(writer, namespaces);
+
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                String attributeNamespace = reader.getAttributeNamespace(i);
+                if (attributeNamespace == null || attributeNamespace.isEmpty())
+                    writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                else
+                    writer.writeAttribute(reader.getAttributePrefix(i), attributeNamespace, reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
+        }
+
+        private void writeNamespaces(XMLStreamWriter writer, Map<String, String> namespaces) throws XMLStreamException {
+            for (Map.Entry<String, String> namespace : namespaces.entrySet()) {
+                if (namespace.getKey().isEmpty())
+                    writer.writeDefaultNamespace(namespace.getValue());
+                else
+                    writer.writeNamespace(namespace.getKey(), namespace.getValue());
+            }
+        }
+
+        private void writeEvent(XMLStreamWriter writer, int event) throws XMLStreamException {
+            switch (event) {
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                case XMLStreamConstants.CDATA:
+                    writer.writeCData(reader.getText());
+                    break;
+            }
+        }
+    }
+
+    private static final class Link {
+        private final String id;
+        private final int appearance;
+
+        Link(String id, int appearance) {
+            this.id = id;
+            this.appearance = appearance;
+        }
+    }
+}
@@ -29,16 +29,18 @@ import org.citygml4j.model.citygml.appearance.X3DMaterial;
 import org.citygml4j.model.citygml.core.AbstractCityObject;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 public class ResultStatistic {
-    private final ConcurrentHashMap<String, Integer> counter = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> counter = new ConcurrentHashMap<>();
 
     void increment(Class<? extends CityGML> cityGML) {
-        counter.merge(cityGML.getName(), 1, Integer::sum);
+        counter.computeIfAbsent(cityGML.getName(), v -> new LongAdder()).increment();
     }
 
     int get(Class<? extends CityGML> cityGML) {
-        return counter.getOrDefault(cityGML.getName(), 0);
+        LongAdder adder = counter.get(cityGML.getName());
+        return adder != null ? adder.intValue() : 0;
     }
 
     public int getCityObjects() {
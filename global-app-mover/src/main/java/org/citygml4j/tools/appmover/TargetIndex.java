@@ -0,0 +1,110 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.appmover;
+
+import org.citygml4j.tools.common.util.IdDictionary;
+
+import java.util.Arrays;
+
+class TargetIndex {
+    private final IdDictionary ids = new IdDictionary();
+
+    private int[] pairTargets = new int[1024];
+    private int[] pairValues = new int[1024];
+    private int[] pairOrdinals = new int[1024];
+    private int pairs;
+
+    private int[] offsets;
+    private int[] values;
+    private int[] ordinals;
+
+    int addTarget(String target) {
+        return ids.getOrAdd(target);
+    }
+
+    void add(int target, int value, int ordinal) {
+        if (pairs == pairTargets.length) {
+            int length = pairs + (pairs >> 1);
+            pairTargets = Arrays.copyOf(pairTargets, length);
+            pairValues = Arrays.copyOf(pairValues, length);
+            pairOrdinals = Arrays.copyOf(pairOrdinals, length);
+        }
+
+        pairTargets[pairs] = target;
+        pairValues[pairs] = value;
+        pairOrdinals[pairs] = ordinal;
+        pairs++;
+    }
+
+    int getPairCount() {
+        return pairs;
+    }
+
+    int getPairTarget(int pair) {
+        return pairTargets[pair];
+    }
+
+    int getPairOrdinal(int pair) {
+        return pairOrdinals[pair];
+    }
+
+    void build() {
+        offsets = new int[ids.size() + 1];
+        for (int i = 0; i < pairs; i++)
+            offsets[pairTargets[i] + 1]++;
+
+        for (int target = 0; target < ids.size(); target++)
+            offsets[target + 1] += offsets[target];
+
+        values = new int[pairs];
+        ordinals = new int[pairs];
+        int[] pos = Arrays.copyOf(offsets, ids.size());
+        for (int i = 0; i < pairs; i++) {
+            int slot = pos[pairTargets[i]]++;
+            values[slot] = pairValues[i];
+            ordinals[slot] = pairOrdinals[i];
+        }
+
+        pairTargets = pairValues = pairOrdinals = null;
+        pairs = 0;
+    }
+
+    int getTarget(String target) {
+        return ids.get(target);
+    }
+
+    int getStart(int target) {
+        return offsets[target];
+    }
+
+    int getEnd(int target) {
+        return offsets[target + 1];
+    }
+
+    int getValue(int slot) {
+        return values[slot];
+    }
+
+    int getOrdinal(int slot) {
+        return ordinals[slot];
+    }
+}
@@ -67,7 +67,7 @@ class AppearanceCleaner {
         });
     }
 
-    synchronized void cleanupAppearances(List<Appearance> appearances, Set<String> candidates) {
+    void cleanupAppearances(List<Appearance> appearances, Set<String> candidates) {
         FeatureWalker walker = new FeatureWalker() {
             public void visit(ParameterizedTexture texture) {
                 if (texture.isSetTarget()) {
@@ -110,6 +110,29 @@ class AppearanceCleaner {
         });
     }
 
+    Set<String> getTargets(List<Appearance> appearances) {
+        Set<String> targets = new HashSet<>();
+        FeatureWalker walker = new FeatureWalker() {
+            public void visit(ParameterizedTexture texture) {
+                if (texture.isSetTarget())
+                    texture.getTarget().forEach(t -> targets.add(t.getUri()));
+            }
+
+            public void visit(GeoreferencedTexture texture) {
+                if (texture.isSetTarget())
+                    targets.addAll(texture.getTarget());
+            }
+
+            public void visit(X3DMaterial material) {
+                if (material.isSetTarget())
+                    targets.addAll(material.getTarget());
+            }
+        };
+
+        appearances.forEach(walker::visit);
+        return targets;
+    }
+
     Set<String> getCandidateTargets(List<AssociationByRepOrRef<? extends AbstractGML>> properties) {
         Set<String> candidates = new HashSet<>();
 
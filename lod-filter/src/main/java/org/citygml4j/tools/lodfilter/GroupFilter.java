@@ -0,0 +1,435 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.lodfilter;
+
+import org.citygml4j.model.citygml.CityGML;
+import org.citygml4j.model.citygml.cityobjectgroup.CityObjectGroup;
+import org.citygml4j.model.citygml.core.AbstractCityObject;
+import org.citygml4j.model.gml.feature.AbstractFeature;
+import org.citygml4j.model.module.Modules;
+import org.citygml4j.model.module.citygml.CityGMLModule;
+import org.citygml4j.model.module.citygml.CityGMLModuleType;
+import org.citygml4j.model.module.gml.GMLCoreModule;
+import org.citygml4j.model.module.gml.XLinkModule;
+import org.citygml4j.tools.common.util.IdDictionary;
+import org.citygml4j.tools.common.xml.ElementSkippingReader;
+import org.citygml4j.xml.io.CityGMLInputFactory;
+import org.citygml4j.xml.io.reader.CityGMLReadException;
+import org.citygml4j.xml.io.reader.CityGMLReader;
+import org.citygml4j.xml.io.writer.CityGMLWriteException;
+import org.citygml4j.xml.io.writer.CityModelWriter;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.UUID;
+
+public class GroupFilter implements AutoCloseable {
+    private static final String GML = GMLCoreModule.v3_1_1.getNamespaceURI();
+
+    private final Path spillFile;
+    private final IdDictionary targets = new IdDictionary();
+
+    private OutputStream stream;
+    private XMLStreamWriter writer;
+    private String[] rootElement;
+    private List<String[]> rootNamespaces;
+
+    private int groups;
+    private int[] groupIds = new int[64];
+    private int[] memberGroups = new int[256];
+    private int[] memberTargets = new int[256];
+    private int members;
+    private boolean hasInlineFeatures;
+
+    private BitSet removedGroups;
+    private BitSet removedTargets;
+    private int[] groupsByTarget;
+
+    public GroupFilter(Path spillFile) {
+        this.spillFile = spillFile;
+    }
+
+    public boolean hasGroups() {
+        return groups > 0;
+    }
+
+    public XMLStreamReader spillGroups(XMLStreamReader reader) {
+        return new GroupSpillingReader(reader);
+    }
+
+    public void writeGroups(CityGMLInputFactory in, CityModelWriter writer, LodFilter lodFilter) throws CityGMLReadException, CityGMLWriteException {
+        if (groups == 0)
+            return;
+
+        try {
+            closeSpillFile();
+        } catch (IOException e) {
+            throw new CityGMLReadException("Failed to write temporary file for city object groups.", e);
+        }
+
+        // inline members are split from their groups and have to pass the LoD filter first
+        if (hasInlineFeatures) {
+            try (CityGMLReader reader = createReader(in)) {
+                while (reader.hasNext()) {
+                    CityGML cityGML = reader.nextFeature();
+                    if (cityGML instanceof CityObjectGroup)
+                        continue;
+
+                    if (cityGML instanceof AbstractCityObject) {
+                        AbstractCityObject cityObject = lodFilter.apply((AbstractCityObject) cityGML);
+                        if (cityObject != null)
+                            writer.writeFeatureMember(cityObject);
+                    } else if (cityGML instanceof AbstractFeature)
+                        writer.writeFeatureMember((AbstractFeature) cityGML);
+                }
+            }
+        }
+
+        removeGroups(lodFilter.getRemovedCityObjects());
+
+        try (CityGMLReader reader = createReader(in)) {
+            while (reader.hasNext()) {
+                CityGML cityGML = reader.nextFeature();
+                if (!(cityGML instanceof CityObjectGroup))
+                    continue;
+
+                CityObjectGroup group = (CityObjectGroup) cityGML;
+                int target = group.isSetId() ? targets.get(group.getId()) : -1;
+                int index = target != -1 ? groupsByTarget[target] : -1;
+                if (index != -1 && removedGroups.get(index))
+                    continue;
+
+                if (group.isSetGroupMember())
+                    group.getGroupMember().removeIf(member -> member.isSetHref() && isRemoved(member.getHref()));
+
+                if (group.isSetGroupParent()
+                        && group.getGroupParent().isSetHref()
+                        && isRemoved(group.getGroupParent().getHref()))
+                    group.unsetGroupParent();
+
+                writer.writeFeatureMember(group);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            closeSpillFile();
+        } finally {
+            Files.deleteIfExists(spillFile);
+        }
+    }
+
+    private void removeGroups(IdDictionary removedCityObjects) {
+        removedTargets = new BitSet(targets.size());
+        removedGroups = new BitSet(groups);
+        groupsByTarget = new int[targets.size()];
+        Arrays.fill(groupsByTarget, -1);
+
+        for (int group = 0; group < groups; group++)
+            groupsByTarget[groupIds[group]] = group;
+
+        if (!removedCityObjects.isEmpty()) {
+            for (int target = 0; target < targets.size(); target++) {
+                if (removedCityObjects.contains(targets.get(target)))
+                    removedTargets.set(target);
+            }
+        }
+
+        // groups referencing a target as member, ordered by target
+        int[] referenceStart = new int[targets.size() + 1];
+        for (int i = 0; i < members; i++)
+            referenceStart[memberTargets[i] + 1]++;
+
+        for (int target = 0; target < targets.size(); target++)
+            referenceStart[target + 1] += referenceStart[target];
+
+        int[] references = new int[members];
+        int[] pos = Arrays.copyOf(referenceStart, targets.size());
+        int[] remaining = new int[groups];
+        for (int i = 0; i < members; i++) {
+            references[pos[memberTargets[i]]++] = memberGroups[i];
+            if (!removedTargets.get(memberTargets[i]))
+                remaining[memberGroups[i]]++;
+        }
+
+        int[] queue = new int[groups];
+        int head = 0, tail = 0;
+        for (int group = 0; group < groups; group++) {
+            if (remaining[group] == 0)
+                queue[tail++] = group;
+        }
+
+        while (head < tail) {
+            int group = queue[head++];
+            removedGroups.set(group);
+
+            int target = groupIds[group];
+            if (removedTargets.get(target))
+                continue;
+
+            removedTargets.set(target);
+            for (int i = referenceStart[target]; i < referenceStart[target + 1]; i++) {
+                int parent = references[i];
+                if (!removedGroups.get(parent) && --remaining[parent] == 0)
+                    queue[tail++] = parent;
+            }
+        }
+    }
+
+    private CityGMLReader createReader(CityGMLInputFactory in) throws CityGMLReadException {
+        return in.createFilteredCityGMLReader(in.createCityGMLReader(spillFile.toFile()),
+                name -> !name.getLocalPart().equals(rootElement[2]) || !name.getNamespaceURI().equals(rootElement[1]));
+    }
+
+    private boolean isRemoved(String href) {
+        int target = targets.get(toLocalId(href));
+        return target != -1 && removedTargets.get(target);
+    }
+
+    private String toLocalId(String href) {
+        return href.startsWith("#") ? href.substring(1) : href;
+    }
+
+    private int addGroup(String id) {
+        if (groups == groupIds.length)
+            groupIds = Arrays.copyOf(groupIds, groups << 1);
+
+        groupIds[groups] = targets.getOrAdd(id);
+        return groups++;
+    }
+
+    private void addMember(int group, String href) {
+        if (members == memberGroups.length) {
+            memberGroups = Arrays.copyOf(memberGroups, members << 1);
+            memberTargets = Arrays.copyOf(memberTargets, members << 1);
+        }
+
+        memberGroups[members] = group;
+        memberTargets[members] = targets.getOrAdd(toLocalId(href));
+        members++;
+    }
+
+    private void openSpillFile() throws XMLStreamException {
+        try {
+            stream = new BufferedOutputStream(Files.newOutputStream(spillFile));
+        } catch (IOException e) {
+            throw new XMLStreamException("Failed to create temporary file for city object groups.", e);
+        }
+
+        writer = XMLOutputFactory.newInstance().createXMLStreamWriter(stream, "UTF-8");
+        writer.writeStartDocument("UTF-8", "1.0");
+        writeStartElement(rootElement);
+        writeNamespaces(rootNamespaces);
+    }
+
+    private void closeSpillFile() throws IOException {
+        try {
+            if (writer != null) {
+                writer.writeEndDocument();
+                writer.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to write temporary file for city object groups.", e);
+        } finally {
+            writer = null;
+            if (stream != null) {
+                stream.close();
+                stream = null;
+            }
+        }
+    }
+
+    private void writeStartElement(String[] name) throws XMLStreamException {
+        if (name[1] == null || name[1].isEmpty())
+            writer.writeStartElement(name[2]);
+        else
+            writer.writeStartElement(name[0] != null ? name[0] : "", name[2], name[1]);
+    }
+
+    private void writeNamespaces(List<String[]> namespaces) throws XMLStreamException {
+        for (String[] namespace : namespaces) {
+            if (namespace[0] == null || namespace[0].isEmpty())
+                writer.writeDefaultNamespace(namespace[1]);
+            else
+                writer.writeNamespace(namespace[0], namespace[1]);
+        }
+    }
+
+    private final class GroupSpillingReader extends ElementSkippingReader {
+        private int[] openGroups = new int[32];
+        private int openGroupCount;
+        private String[] memberElement;
+        private List<String[]> memberNamespaces;
+        private int inlineDepth;
+        private boolean isInlineMember;
+
+        GroupSpillingReader(XMLStreamReader reader) {
+            super(reader);
+        }
+
+        @Override
+        protected boolean skip(int depth) {
+            if (depth == 1) {
+                rootElement = getElementName();
+                rootNamespaces = getNamespaces();
+            } else if (depth == 2) {
+                memberElement = getElementName();
+                memberNamespaces = getNamespaces();
+            } else if (depth == 3)
+                return isGroupElement("CityObjectGroup");
+
+            return false;
+        }
+
+        @Override
+        protected void skipped(int event, int depth) throws XMLStreamException {
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    String id = null;
+                    if (depth == 3) {
+                        if (writer == null)
+                            openSpillFile();
+
+                        writeStartElement(memberElement);
+                        writeNamespaces(memberNamespaces);
+                    }
+
+                    if (depth == 3 || depth == inlineDepth) {
+                        id = getAttributeValue(GML, "id");
+                        if (id == null)
+                            id = "UUID_" + UUID.randomUUID();
+                    }
+
+                    if (depth == 3 || (depth == inlineDepth && isGroupElement("CityObjectGroup"))) {
+                        if (depth == inlineDepth && isInlineMember)
+                            addMember(currentGroup(), id);
+
+                        int group = addGroup(id);
+                        if (openGroupCount == openGroups.length)
+                            openGroups = Arrays.copyOf(openGroups, openGroupCount << 1);
+
+                        openGroups[openGroupCount++] = depth;
+                        openGroups[openGroupCount++] = group;
+                    } else if (depth == inlineDepth) {
+                        hasInlineFeatures = true;
+                        if (isInlineMember)
+                            addMember(currentGroup(), id);
+                        else
+                            targets.getOrAdd(id);
+                    } else if (openGroupCount > 0 && depth == currentGroupDepth() + 1) {
+                        boolean isMember = isGroupElement("groupMember");
+                        if (isMember || isGroupElement("parent")) {
+                            String href = getAttributeValue(XLinkModule.v3_1_1.getNamespaceURI(), "href");
+                            if (href == null) {
+                                inlineDepth = depth + 1;
+                                isInlineMember = isMember;
+                            } else if (isMember)
+                                addMember(currentGroup(), href);
+                            else
+                                targets.getOrAdd(toLocalId(href));
+                        }
+                    }
+
+                    writeStartElement(getElementName());
+                    writeNamespaces(getNamespaces());
+                    for (int i = 0; i < getAttributeCount(); i++) {
+                        String namespaceURI = getAttributeNamespace(i);
+                        if (namespaceURI == null || namespaceURI.isEmpty())
+                            writer.writeAttribute(getAttributeLocalName(i), getAttributeValue(i));
+                        else
+                            writer.writeAttribute(getAttributePrefix(i), namespaceURI, getAttributeLocalName(i), getAttributeValue(i));
+                    }
+
+                    if (id != null && getAttributeValue(GML, "id") == null) {
+                        String prefix = getNamespaceContext().getPrefix(GML);
+                        if (prefix == null) {
+                            prefix = "gml";
+                            writer.writeNamespace(prefix, GML);
+                        }
+
+                        writer.writeAttribute(prefix, GML, "id", id);
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    writer.writeEndElement();
+                    if (depth == inlineDepth - 1)
+                        inlineDepth = 0;
+
+                    if (openGroupCount > 0 && depth == currentGroupDepth())
+                        openGroupCount -= 2;
+
+                    if (depth == 3)
+                        writer.writeEndElement();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    writer.writeCharacters(getTextCharacters(), getTextStart(), getTextLength());
+                    break;
+                case XMLStreamConstants.CDATA:
+                    writer.writeCData(getText());
+                    break;
+            }
+        }
+
+        private int currentGroupDepth() {
+            return openGroups[openGroupCount - 2];
+        }
+
+        private int currentGroup() {
+            return openGroups[openGroupCount - 1];
+        }
+
+        private boolean isGroupElement(String localName) {
+            if (!getLocalName().equals(localName))
+                return false;
+
+            CityGMLModule module = Modules.getCityGMLModule(getNamespaceURI());
+            return module != null && module.getType() == CityGMLModuleType.CITY_OBJECT_GROUP;
+        }
+
+        private String[] getElementName() {
+            return new String[]{getPrefix(), getNamespaceURI(), getLocalName()};
+        }
+
+        private List<String[]> getNamespaces() {
+            List<String[]> namespaces = new ArrayList<>(getNamespaceCount());
+            for (int i = 0; i < getNamespaceCount(); i++)
+                namespaces.add(new String[]{getNamespacePrefix(i), getNamespaceURI(i)});
+
+            return namespaces;
+        }
+    }
+}
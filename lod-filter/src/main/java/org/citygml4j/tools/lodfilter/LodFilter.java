@@ -29,21 +29,39 @@ import org.citygml4j.model.common.base.ModelObjects;
 import org.citygml4j.model.common.child.Child;
 import org.citygml4j.model.gml.base.AbstractGML;
 import org.citygml4j.model.gml.base.AssociationByRepOrRef;
+import org.citygml4j.model.gml.feature.AbstractFeature;
+import org.citygml4j.tools.common.util.IdDictionary;
 import org.citygml4j.util.child.ChildInfo;
 import org.citygml4j.util.walker.FeatureWalker;
 
+import javax.xml.stream.XMLStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class LodFilter {
     private final boolean[] lods = {false, false, false, false, false};
     private final AppearanceCleaner appearanceCleaner = new AppearanceCleaner();
-    private final ChildInfo childInfo = new ChildInfo();
-    private final Set<String> removedCityObjects = ConcurrentHashMap.newKeySet();
+    private final Queue<IdDictionary> removedCityObjects = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<IdDictionary> localRemovedCityObjects = ThreadLocal.withInitial(() -> {
+        IdDictionary removed = new IdDictionary();
+        removedCityObjects.add(removed);
+        return removed;
+    });
+
+    // skipped targets are recorded on the reading thread. targets of features without gml:id belong to
+    // the feature that is currently read and are handed over by takeSkippedTargets()
+    private final Map<String, Set<String>> skippedTargets = new ConcurrentHashMap<>();
+    private final ThreadLocal<Set<String>> unassignedSkippedTargets = ThreadLocal.withInitial(HashSet::new);
+    private final Set<String> removedGlobalTargets = ConcurrentHashMap.newKeySet();
+    private Set<String> globalTargets;
 
     private LodFilterMode mode = LodFilterMode.KEEP;
     private boolean keepCityObjectsWithoutLods;
@@ -68,25 +86,68 @@ public class LodFilter {
 
     public LodFilter withGlobalApps(List<Appearance> appearances) {
         globalAppearances = appearances;
+        globalTargets = appearances != null ? appearanceCleaner.getTargets(appearances) : null;
         return this;
     }
 
     public boolean hasRemainingGlobalApps() {
-        return globalAppearances != null && !globalAppearances.isEmpty();
+        return !getRemainingGlobalApps().isEmpty();
     }
 
-    public List<Appearance> getRemainingGlobalApps() {
+    public synchronized List<Appearance> getRemainingGlobalApps() {
+        if (globalAppearances == null)
+            return Collections.emptyList();
+
+        if (!removedGlobalTargets.isEmpty()) {
+            Set<String> candidates = new HashSet<>(removedGlobalTargets);
+            appearanceCleaner.cleanupAppearances(globalAppearances, candidates);
+            removedGlobalTargets.removeAll(candidates);
+        }
+
         return globalAppearances;
     }
 
     public Set<String> getRemovedCityObjectIds() {
-        return new HashSet<>(removedCityObjects);
+        Set<String> removed = new HashSet<>();
+        for (IdDictionary local : removedCityObjects) {
+            for (int id = 0; id < local.size(); id++)
+                removed.add(local.get(id));
+        }
+
+        return removed;
+    }
+
+    public IdDictionary getRemovedCityObjects() {
+        IdDictionary removed = new IdDictionary();
+        for (IdDictionary local : removedCityObjects) {
+            for (int id = 0; id < local.size(); id++)
+                removed.add(local.get(id));
+        }
+
+        return removed;
+    }
+
+    public XMLStreamReader skipLods(XMLStreamReader reader) {
+        if (mode != LodFilterMode.KEEP && mode != LodFilterMode.REMOVE)
+            return reader;
+
+        boolean[] skipLods = new boolean[lods.length];
+        for (int lod = 0; lod < lods.length; lod++)
+            skipLods[lod] = lods[lod] ^ mode != LodFilterMode.REMOVE;
+
+        return new LodSkippingReader(reader, skipLods, this::addSkippedTarget);
     }
 
     public AbstractCityObject apply(AbstractCityObject cityObject) {
+        return apply(cityObject, takeSkippedTargets(cityObject));
+    }
+
+    // the skipped targets must be taken on the reading thread right after the city object has been read
+    public AbstractCityObject apply(AbstractCityObject cityObject, Set<String> skipped) {
         IdentityHashMap<AbstractCityObject, List<AbstractCityObject>> tree = new IdentityHashMap<>();
         List<AssociationByRepOrRef<? extends AbstractGML>> removedProperties = new ArrayList<>();
         boolean[] filterLods = calcFilterLods(cityObject);
+        ChildInfo childInfo = new ChildInfo();
 
         cityObject.accept(new FeatureWalker() {
             public void visit(AbstractCityObject nested) {
@@ -116,21 +177,47 @@ public class LodFilter {
 
         boolean remove = false;
         if (!keepCityObjectsWithoutLods)
-            remove = removeNode(cityObject, tree, true);
+            remove = removeNode(cityObject, tree, true, localRemovedCityObjects.get());
 
         if (!remove || globalAppearances != null) {
             Set<String> candidates = appearanceCleaner.getCandidateTargets(removedProperties);
+            candidates.addAll(skipped);
 
             if (!remove)
                 appearanceCleaner.cleanupAppearances(cityObject, candidates);
 
-            if (globalAppearances != null)
-                appearanceCleaner.cleanupAppearances(globalAppearances, candidates);
+            // global appearances are shared between threads and are cleaned up once all city objects are processed
+            if (globalAppearances != null) {
+                for (String candidate : candidates) {
+                    if (globalTargets.contains(candidate))
+                        removedGlobalTargets.add(candidate);
+                }
+            }
         }
 
         return remove ? null : cityObject;
     }
 
+    // returns the targets of the skipped LoD geometry of a top-level feature that has just been read
+    public Set<String> takeSkippedTargets(AbstractFeature feature) {
+        Set<String> targets = feature.isSetId() ? skippedTargets.remove(feature.getId()) : null;
+        if (targets == null)
+            targets = new HashSet<>();
+
+        Set<String> unassigned = unassignedSkippedTargets.get();
+        if (!unassigned.isEmpty()) {
+            targets.addAll(unassigned);
+            unassigned.clear();
+        }
+
+        return targets;
+    }
+
+    // skipped targets are only tracked until the top-level feature they belong to has been processed
+    public void discardSkippedTargets(AbstractFeature feature) {
+        takeSkippedTargets(feature);
+    }
+
     private boolean[] calcFilterLods(AbstractCityObject cityObject) {
         if (mode == LodFilterMode.KEEP || mode == LodFilterMode.REMOVE)
             return lods;
@@ -150,13 +237,20 @@ public class LodFilter {
         }
     }
 
-    private boolean removeNode(AbstractCityObject node, IdentityHashMap<AbstractCityObject, List<AbstractCityObject>> tree, boolean isParent) {
+    private void addSkippedTarget(String featureId, String target) {
+        if (featureId != null)
+            skippedTargets.computeIfAbsent(featureId, v -> ConcurrentHashMap.newKeySet()).add(target);
+        else
+            unassignedSkippedTargets.get().add(target);
+    }
+
+    private boolean removeNode(AbstractCityObject node, IdentityHashMap<AbstractCityObject, List<AbstractCityObject>> tree, boolean isParent, IdDictionary removedCityObjects) {
         boolean hasChildren = false;
 
         List<AbstractCityObject> children = tree.get(node);
         if (children != null) {
             for (AbstractCityObject child : children) {
-                boolean remove = removeNode(child, tree, false);
+                boolean remove = removeNode(child, tree, false, removedCityObjects);
                 if (!remove)
                     hasChildren = true;
             }
@@ -0,0 +1,103 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.lodfilter;
+
+import org.citygml4j.model.module.Modules;
+import org.citygml4j.model.module.gml.GMLCoreModule;
+import org.citygml4j.tools.common.xml.ElementSkippingReader;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+class LodSkippingReader extends ElementSkippingReader {
+    private static final Set<String> SURFACES = new HashSet<>(Arrays.asList(
+            "Polygon", "Surface", "CompositeSurface", "OrientableSurface", "TriangulatedSurface", "Tin", "MultiSurface"));
+
+    private final boolean[] skipLods;
+    private final BiConsumer<String, String> skippedTargets;
+    private int featureDepth;
+    private String featureId;
+    private int groupDepth;
+
+    LodSkippingReader(XMLStreamReader reader, boolean[] skipLods, BiConsumer<String, String> skippedTargets) {
+        super(reader);
+        this.skipLods = skipLods;
+        this.skippedTargets = skippedTargets;
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        int event = super.next();
+        if (event == XMLStreamConstants.END_ELEMENT && getDepth() < groupDepth)
+            groupDepth = 0;
+
+        return event;
+    }
+
+    @Override
+    protected boolean skip(int depth) {
+        if (depth <= 3) {
+            featureDepth = depth;
+            featureId = getAttributeValue(GMLCoreModule.v3_1_1.getNamespaceURI(), "id");
+        }
+
+        String namespaceURI = getNamespaceURI();
+        if (!Modules.isCityGMLModuleNamespace(namespaceURI))
+            return false;
+
+        String localName = getLocalName();
+        if (groupDepth == 0 && "CityObjectGroup".equals(localName)) {
+            // group members are handled on the object level
+            groupDepth = depth;
+            return false;
+        }
+
+        if (groupDepth != 0
+                || localName.length() < 5
+                || !localName.startsWith("lod")
+                || !Character.isUpperCase(localName.charAt(4)))
+            return false;
+
+        int lod = localName.charAt(3) - '0';
+        return lod >= 0 && lod < skipLods.length && skipLods[lod];
+    }
+
+    @Override
+    protected void skipped(int event, int depth) {
+        if (event != XMLStreamConstants.START_ELEMENT)
+            return;
+
+        String namespaceURI = getNamespaceURI();
+        String localName = getLocalName();
+        if ((GMLCoreModule.v3_1_1.getNamespaceURI().equals(namespaceURI) && SURFACES.contains(localName))
+                || ("TexturedSurface".equals(localName) && Modules.isCityGMLModuleNamespace(namespaceURI))) {
+            String id = getAttributeValue(GMLCoreModule.v3_1_1.getNamespaceURI(), "id");
+            if (id != null)
+                skippedTargets.accept(featureDepth == 3 ? featureId : null, "#" + id);
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.citygml4j.model.citygml.ade.binding.ADEContext;
 import org.citygml4j.tools.command.ChangeHeightCommand;
 import org.citygml4j.tools.command.CityGMLTool;
 import org.citygml4j.tools.command.ClipTexturesCommand;
+import org.citygml4j.tools.command.ConsolidateAppsCommand;
 import org.citygml4j.tools.command.FilterLodsCommand;
 import org.citygml4j.tools.command.FromCityJSONCommand;
 import org.citygml4j.tools.command.MoveGlobalAppsCommand;
@@ -34,10 +35,14 @@ import org.citygml4j.tools.command.RemoveAppsCommand;
 import org.citygml4j.tools.command.ReprojectCommand;
 import org.citygml4j.tools.command.ToCityJSONCommand;
 import org.citygml4j.tools.command.ValidateCommand;
+import org.citygml4j.tools.common.log.LogLevel;
 import org.citygml4j.tools.common.log.Logger;
 import org.citygml4j.tools.option.LoggingOptions;
 import org.citygml4j.tools.util.Constants;
+import org.citygml4j.tools.util.Metrics;
 import org.citygml4j.tools.util.ObjectRegistry;
+import org.citygml4j.tools.util.OutputValidator;
+import org.citygml4j.tools.util.ProgressReporter;
 import org.citygml4j.tools.util.URLClassLoader;
 import org.citygml4j.tools.util.Util;
 import picocli.CommandLine;
@@ -65,6 +70,7 @@ import java.util.stream.Stream;
                 ChangeHeightCommand.class,
                 RemoveAppsCommand.class,
                 MoveGlobalAppsCommand.class,
+                ConsolidateAppsCommand.class,
                 ClipTexturesCommand.class,
                 FilterLodsCommand.class,
                 ReprojectCommand.class,
@@ -112,6 +118,19 @@ public class CityGMLTools implements Callable<Integer>, CommandLine.IVersionProv
             cityGMLTools.subCommand = commandLines.get(1);
             exitCode = cmd.getExecutionStrategy().execute(parseResult);
 
+            // invalid output files are treated like invalid input files of the validate command
+            OutputValidator outputValidator = ObjectRegistry.getInstance().get(OutputValidator.class);
+            if (exitCode == 0 && outputValidator != null && outputValidator.getInvalidFiles() > 0) {
+                log.warn("Found " + outputValidator.getInvalidFiles() + " invalid output file(s).");
+                exitCode = 3;
+            }
+
+            Metrics metrics = ObjectRegistry.getInstance().get(Metrics.class);
+            if (metrics != null) {
+                metrics.report();
+                metrics.unregister();
+            }
+
             log.info("Total execution time: " + Util.formatElapsedTime(Duration.between(start, Instant.now()).toMillis()) + ".");
             int warnings = log.getNumberOfWarnings();
             int errors = log.getNumberOfErrors();
@@ -189,6 +208,16 @@ public class CityGMLTools implements Callable<Integer>, CommandLine.IVersionProv
         CityGMLBuilder cityGMLBuilder = context.createCityGMLBuilder(classLoader);
         ObjectRegistry.getInstance().put(cityGMLBuilder);
 
+        // progress is logged at info level and is therefore not reported in quiet mode
+        if (logging.getProgressInterval() > 0 && log.isLogLevelEnabled(LogLevel.INFO))
+            ObjectRegistry.getInstance().put(new ProgressReporter(logging.getProgressInterval()));
+
+        if (logging.isMetricsEnabled()) {
+            Metrics metrics = new Metrics(subCommand.getCommandName(), logging.getMetricsFile(), logging.getPrometheusFile());
+            metrics.register();
+            ObjectRegistry.getInstance().put(metrics);
+        }
+
         log.info("Executing command '" + subCommand.getCommandName() + "'.");
         return 0;
     }
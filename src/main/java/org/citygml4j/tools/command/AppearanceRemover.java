@@ -0,0 +1,269 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.command;
+
+import org.citygml4j.model.citygml.appearance.Appearance;
+import org.citygml4j.model.citygml.appearance.GeoreferencedTexture;
+import org.citygml4j.model.citygml.appearance.ParameterizedTexture;
+import org.citygml4j.model.citygml.appearance.X3DMaterial;
+import org.citygml4j.model.module.Module;
+import org.citygml4j.model.module.Modules;
+import org.citygml4j.model.module.citygml.CityGMLModuleType;
+import org.citygml4j.util.xml.SAXEventBuffer;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// removes local appearances from the SAX events of a city object without unmarshalling them.
+// the events of an appearance property are buffered until its theme is known and, for textures
+// and materials, until the first child of each surface data member has been seen.
+class AppearanceRemover extends XMLFilterImpl {
+    private final List<String> theme;
+    private final boolean onlyTextures;
+    private final boolean onlyMaterials;
+    private final Map<Class<?>, Integer> counter;
+    private final List<String[]> prefixMappings = new ArrayList<>();
+
+    private int depth;
+    private int propertyDepth;
+    private int skipDepth;
+    private SAXEventBuffer appearance;
+    private SAXEventBuffer member;
+    private boolean hasAppearance;
+    private boolean isThemeKnown;
+    private boolean isRemoved;
+    private int keptMembers;
+    private StringBuilder themeBuilder;
+    private boolean isTheme;
+    private boolean isEndForwarded;
+
+    AppearanceRemover(List<String> theme, boolean onlyTextures, boolean onlyMaterials, Map<Class<?>, Integer> counter) {
+        this.theme = theme;
+        this.onlyTextures = onlyTextures;
+        this.onlyMaterials = onlyMaterials;
+        this.counter = counter;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        depth++;
+
+        if (skipDepth != 0) {
+            prefixMappings.clear();
+            return;
+        }
+
+        if (appearance == null) {
+            if (isAppearanceElement(uri) && "appearance".equals(localName)) {
+                appearance = new SAXEventBuffer();
+                propertyDepth = depth;
+                hasAppearance = false;
+                isThemeKnown = false;
+                isRemoved = false;
+                keptMembers = 0;
+                themeBuilder = null;
+            } else {
+                startPrefixMappings(getContentHandler());
+                super.startElement(uri, localName, qName, atts);
+                return;
+            }
+        }
+
+        else if (depth == propertyDepth + 1)
+            hasAppearance = isAppearanceElement(uri) && "Appearance".equals(localName);
+
+        else if (hasAppearance && depth == propertyDepth + 2 && isAppearanceElement(uri)) {
+            if ("theme".equals(localName)) {
+                themeBuilder = new StringBuilder();
+                isTheme = true;
+            } else if ("surfaceDataMember".equals(localName) && !isThemeKnown) {
+                isThemeKnown = true;
+                if (!satisfiesTheme()) {
+                    flush();
+                    startPrefixMappings(getContentHandler());
+                    super.startElement(uri, localName, qName, atts);
+                    return;
+                } else if (onlyMaterials == onlyTextures) {
+                    // the entire appearance is removed
+                    isRemoved = true;
+                    skipDepth = propertyDepth;
+                    prefixMappings.clear();
+                    return;
+                }
+            }
+
+            if ("surfaceDataMember".equals(localName))
+                member = new SAXEventBuffer();
+        }
+
+        else if (member != null && depth == propertyDepth + 3) {
+            Class<?> type = getSurfaceDataType(uri, localName);
+            if (type != null) {
+                counter.merge(type, 1, Integer::sum);
+                member = null;
+                skipDepth = propertyDepth + 2;
+                prefixMappings.clear();
+                return;
+            }
+
+            keepMember();
+        }
+
+        startPrefixMappings(current());
+        current().startElement(uri, localName, qName, atts);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        int level = depth--;
+        isEndForwarded = skipDepth == 0;
+
+        if (skipDepth != 0) {
+            if (level == skipDepth) {
+                skipDepth = 0;
+                if (level == propertyDepth)
+                    endProperty();
+            }
+
+            return;
+        }
+
+        if (appearance == null) {
+            super.endElement(uri, localName, qName);
+            return;
+        }
+
+        if (isTheme && level == propertyDepth + 2)
+            isTheme = false;
+
+        if (member != null && level == propertyDepth + 2)
+            keepMember();
+
+        current().endElement(uri, localName, qName);
+
+        if (level == propertyDepth)
+            endProperty();
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if (skipDepth == 0) {
+            if (isTheme)
+                themeBuilder.append(ch, start, length);
+
+            current().characters(ch, start, length);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        if (skipDepth == 0)
+            current().ignorableWhitespace(ch, start, length);
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        // prefix mappings precede their element and are only passed on together with it
+        if (skipDepth == 0)
+            prefixMappings.add(new String[]{prefix, uri});
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException {
+        if (isEndForwarded)
+            current().endPrefixMapping(prefix);
+    }
+
+    private void startPrefixMappings(ContentHandler handler) throws SAXException {
+        for (String[] prefixMapping : prefixMappings)
+            handler.startPrefixMapping(prefixMapping[0], prefixMapping[1]);
+
+        prefixMappings.clear();
+    }
+
+    private ContentHandler current() {
+        if (member != null)
+            return member;
+        else if (appearance != null)
+            return appearance;
+        else
+            return getContentHandler();
+    }
+
+    private void keepMember() throws SAXException {
+        member.send(appearance, true);
+        member = null;
+        keptMembers++;
+    }
+
+    private void endProperty() throws SAXException {
+        if (!isRemoved && hasAppearance && (isThemeKnown || satisfiesTheme())) {
+            // appearances without remaining surface data are removed
+            if (onlyMaterials == onlyTextures || keptMembers == 0)
+                isRemoved = true;
+        }
+
+        if (isRemoved)
+            counter.merge(Appearance.class, 1, Integer::sum);
+        else if (appearance != null)
+            flush();
+
+        appearance = null;
+    }
+
+    private void flush() throws SAXException {
+        SAXEventBuffer buffer = appearance;
+        appearance = null;
+        if (!buffer.isEmpty())
+            buffer.send(getContentHandler(), true);
+    }
+
+    private boolean satisfiesTheme() {
+        String value = themeBuilder != null ? themeBuilder.toString().trim() : null;
+        return theme == null
+                || (value == null && theme.contains("null"))
+                || theme.contains(value);
+    }
+
+    private boolean isAppearanceElement(String uri) {
+        Module module = Modules.getCityGMLModule(uri);
+        return module != null && module.getType() == CityGMLModuleType.APPEARANCE;
+    }
+
+    private Class<?> getSurfaceDataType(String uri, String localName) {
+        if (isAppearanceElement(uri)) {
+            if (onlyTextures && "ParameterizedTexture".equals(localName))
+                return ParameterizedTexture.class;
+            else if (onlyTextures && "GeoreferencedTexture".equals(localName))
+                return GeoreferencedTexture.class;
+            else if (onlyMaterials && "X3DMaterial".equals(localName))
+                return X3DMaterial.class;
+        }
+
+        return null;
+    }
+}
@@ -25,33 +25,38 @@ import org.citygml4j.builder.jaxb.CityGMLBuilder;
 import org.citygml4j.builder.jaxb.CityGMLBuilderException;
 import org.citygml4j.geometry.BoundingBox;
 import org.citygml4j.model.citygml.CityGML;
-import org.citygml4j.model.citygml.appearance.Appearance;
+import org.citygml4j.model.citygml.core.AbstractCityObject;
+import org.citygml4j.model.citygml.core.Address;
 import org.citygml4j.model.gml.feature.AbstractFeature;
 import org.citygml4j.tools.CityGMLTools;
 import org.citygml4j.tools.common.helper.CityModelInfoHelper;
 import org.citygml4j.tools.common.helper.ImplicitGeometryReader;
 import org.citygml4j.tools.common.log.Logger;
+import org.citygml4j.tools.common.xml.CityModelChunkWriter;
 import org.citygml4j.tools.heightchanger.ChangeHeightException;
 import org.citygml4j.tools.heightchanger.HeightChanger;
 import org.citygml4j.tools.heightchanger.HeightMode;
 import org.citygml4j.tools.option.CityGMLOutputOptions;
 import org.citygml4j.tools.option.InputOptions;
 import org.citygml4j.tools.option.LoggingOptions;
+import org.citygml4j.tools.util.Constants;
+import org.citygml4j.tools.util.InputFiles;
 import org.citygml4j.tools.util.ObjectRegistry;
 import org.citygml4j.tools.util.Util;
 import org.citygml4j.xml.io.reader.CityGMLReadException;
 import org.citygml4j.xml.io.reader.CityGMLReader;
+import org.citygml4j.xml.io.reader.MissingADESchemaException;
+import org.citygml4j.xml.io.reader.UnmarshalException;
+import org.citygml4j.xml.io.reader.XMLChunk;
 import org.citygml4j.xml.io.writer.CityGMLWriteException;
 import org.citygml4j.xml.io.writer.CityModelInfo;
-import org.citygml4j.xml.io.writer.CityModelWriter;
 import picocli.CommandLine;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.UUID;
+import java.util.function.Predicate;
 
 @CommandLine.Command(name = "change-height",
         description = "Changes the height values of city objects by a given offset.",
@@ -86,104 +91,117 @@ public class ChangeHeightCommand implements CityGMLTool {
         ImplicitGeometryReader implicitGeometryReader = new ImplicitGeometryReader(cityGMLBuilder);
 
         log.debug("Searching for CityGML input files.");
-        List<Path> inputFiles;
+        InputFiles inputFiles;
         try {
-            inputFiles = new ArrayList<>(Util.listFiles(input.getFile(), "**.{gml,xml}", fileNameSuffix));
-            log.info("Found " + inputFiles.size() + " file(s) at '" + input.getFile() + "'.");
+            inputFiles = Util.listFiles(input.getFile(), Constants.CITYGML_FILES, fileNameSuffix);
         } catch (IOException e) {
             log.warn("Failed to find file(s) at '" + input.getFile() + "'.");
             return 0;
         }
 
-        for (int i = 0; i < inputFiles.size(); i++) {
-            Path inputFile = inputFiles.get(i);
-            log.info("[" + (i + 1) + "|" + inputFiles.size() + "] Processing file '" + inputFile.toAbsolutePath() + "'.");
-
-            Path outputFile;
-            if (!overwriteInputFiles) {
-                outputFile = Util.addFileNameSuffix(inputFile, fileNameSuffix);
-                log.info("Writing output to file '" + outputFile.toAbsolutePath() + "'.");
-            } else {
-                outputFile = inputFile.resolveSibling("tmp-" + UUID.randomUUID());
-                log.debug("Writing temporary output file '" + outputFile.toAbsolutePath() + "'.");
-            }
+        if (overwriteInputFiles && inputFiles.isArchive()) {
+            log.error("Files in ZIP archives cannot be overwritten.");
+            inputFiles.close();
+            return 1;
+        }
+
+        try {
+            for (Path inputFile : inputFiles) {
+                log.info(inputFiles.getPosition() + " Processing file '" + inputFile.toAbsolutePath() + "'.");
+
+                Path outputFile;
+                if (!overwriteInputFiles) {
+                    outputFile = cityGMLOutput.getOutputFile(Util.addFileNameSuffix(inputFile, fileNameSuffix));
+                    log.info("Writing output to file '" + outputFile.toAbsolutePath() + "'.");
+                } else {
+                    outputFile = inputFile.resolveSibling("tmp-" + UUID.randomUUID());
+                    log.debug("Writing temporary output file '" + outputFile.toAbsolutePath() + "'.");
+                }
 
-            HeightChanger heightChanger = HeightChanger.defaults()
-                    .withHeightMode(heightMode);
+                HeightChanger heightChanger = HeightChanger.defaults()
+                        .withHeightMode(heightMode);
 
-            if (heightMode == HeightMode.ABSOLUTE) {
-                log.debug("Reading implicit geometries from input file.");
-                try {
-                    heightChanger.withImplicitGeometries(implicitGeometryReader.readImplicitGeometries(inputFile));
-                } catch (CityGMLReadException e) {
-                    log.error("Failed to parse implicit geometries.", e);
-                    return 1;
+                if (heightMode == HeightMode.ABSOLUTE) {
+                    log.debug("Reading implicit geometries from input file.");
+                    try {
+                        heightChanger.withImplicitGeometries(implicitGeometryReader.readImplicitGeometries(inputFile));
+                    } catch (CityGMLReadException e) {
+                        log.error("Failed to parse implicit geometries.", e);
+                        return 1;
+                    }
                 }
-            }
 
-            log.debug("Reading city objects from input file and changing height values.");
+                log.debug("Reading city objects from input file and changing height values.");
+
+                // appearances do not carry height values and are copied without unmarshalling
+                Predicate<XMLChunk> objectFilter = input.createObjectFilter(AbstractCityObject.class, Address.class);
 
-            try (CityGMLReader reader = input.createCityGMLReader(inputFile, input.createSkipFilter("CityModel"));
-                 CityModelWriter writer = cityGMLOutput.createCityModelWriter(outputFile)) {
-                boolean isInitialized = false;
+                try (CityGMLReader reader = input.createCityGMLReader(inputFile, input.createSkipFilter("CityModel"));
+                     CityModelChunkWriter writer = cityGMLOutput.createCityModelWriter(outputFile)) {
+                    boolean isInitialized = false;
 
-                while (reader.hasNext()) {
-                    CityGML cityGML = reader.nextFeature();
+                    while (reader.hasNext()) {
+                        XMLChunk chunk = reader.nextChunk();
+                        CityGML cityGML = objectFilter.test(chunk) ? chunk.unmarshal() : null;
 
-                    // write city model
-                    if (!isInitialized) {
-                        CityModelInfo cityModelInfo = CityModelInfoHelper.getCityModelInfo(cityGML, reader.getParentInfo());
+                        // write city model
+                        if (!isInitialized) {
+                            CityModelInfo cityModelInfo = CityModelInfoHelper.getCityModelInfo(cityGML, chunk.getParentInfo());
 
-                        if (cityModelInfo.isSetBoundedBy() && cityModelInfo.getBoundedBy().isSetEnvelope()) {
-                            BoundingBox bbox = cityModelInfo.getBoundedBy().getEnvelope().toBoundingBox();
-                            if (bbox != null) {
-                                double correction = heightMode == HeightMode.ABSOLUTE ?
-                                        offset - bbox.getLowerCorner().getZ() : offset;
+                            if (cityModelInfo.isSetBoundedBy() && cityModelInfo.getBoundedBy().isSetEnvelope()) {
+                                BoundingBox bbox = cityModelInfo.getBoundedBy().getEnvelope().toBoundingBox();
+                                if (bbox != null) {
+                                    double correction = heightMode == HeightMode.ABSOLUTE ?
+                                            offset - bbox.getLowerCorner().getZ() : offset;
 
-                                bbox.getLowerCorner().setZ(bbox.getLowerCorner().getZ() + correction);
-                                bbox.getUpperCorner().setZ(bbox.getUpperCorner().getZ() + correction);
-                                cityModelInfo.getBoundedBy().setEnvelope(bbox);
+                                    bbox.getLowerCorner().setZ(bbox.getLowerCorner().getZ() + correction);
+                                    bbox.getUpperCorner().setZ(bbox.getUpperCorner().getZ() + correction);
+                                    cityModelInfo.getBoundedBy().setEnvelope(bbox);
+                                }
                             }
-                        }
 
-                        writer.setCityModelInfo(cityModelInfo);
-                        writer.writeStartDocument();
-                        isInitialized = true;
-                    }
+                            writer.setCityModelInfo(cityModelInfo);
+                            writer.writeStartDocument();
+                            isInitialized = true;
+                        }
 
-                    if (cityGML instanceof AbstractFeature) {
-                        AbstractFeature feature = (AbstractFeature) cityGML;
+                        if (cityGML == null)
+                            writer.writeChunk(chunk);
+                        else if (cityGML instanceof AbstractFeature) {
+                            AbstractFeature feature = (AbstractFeature) cityGML;
 
-                        try {
-                            if (!(feature instanceof Appearance))
+                            try {
                                 heightChanger.changeHeight(feature, offset);
-                        } catch (ChangeHeightException e) {
-                            log.warn("Not changing height for " + cityGML.getCityGMLClass() + " with gml:id '" +
-                                    feature.getId() + "'.", e);
-                        }
+                            } catch (ChangeHeightException e) {
+                                log.warn("Not changing height for " + cityGML.getCityGMLClass() + " with gml:id '" +
+                                        feature.getId() + "'.", e);
+                            }
 
-                        writer.writeFeatureMember(feature);
+                            writer.writeFeatureMember(feature);
+                        }
                     }
-                }
 
-            } catch (CityGMLBuilderException | CityGMLReadException e) {
-                log.error("Failed to read city objects.", e);
-                return 1;
-            } catch (CityGMLWriteException e) {
-                log.error("Failed to write city objects.", e);
-                return 1;
-            }
-
-            if (overwriteInputFiles) {
-                try {
-                    log.debug("Replacing input file with temporary file.");
-                    Files.delete(inputFile);
-                    Files.move(outputFile, outputFile.resolveSibling(inputFile.getFileName()));
-                } catch (IOException e) {
-                    log.error("Failed to overwrite input file.", e);
+                } catch (CityGMLBuilderException | CityGMLReadException | UnmarshalException | MissingADESchemaException e) {
+                    log.error("Failed to read city objects.", e);
+                    return 1;
+                } catch (CityGMLWriteException e) {
+                    log.error("Failed to write city objects.", e);
                     return 1;
                 }
+
+                if (overwriteInputFiles) {
+                    try {
+                        log.debug("Replacing input file with temporary file.");
+                        Files.delete(inputFile);
+                        Files.move(outputFile, cityGMLOutput.getOutputFile(Util.removeCompressionExtension(inputFile)));
+                    } catch (IOException e) {
+                        log.error("Failed to overwrite input file.", e);
+                        return 1;
+                    }
+                }
             }
+        } finally {
+            inputFiles.close();
         }
 
         return 0;
@@ -31,8 +31,10 @@ import org.citygml4j.tools.option.LoggingOptions;
 import org.citygml4j.tools.textureclipper.TextureClipper;
 import org.citygml4j.tools.textureclipper.TextureClippingException;
 import org.citygml4j.tools.util.Constants;
+import org.citygml4j.tools.util.InputFiles;
 import org.citygml4j.tools.util.ObjectRegistry;
 import org.citygml4j.tools.util.Util;
+import org.citygml4j.xml.io.writer.CityGMLWriteException;
 import picocli.CommandLine;
 
 import java.io.File;
@@ -41,9 +43,7 @@ import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.List;
 import java.util.stream.Stream;
 
 @CommandLine.Command(name = "clip-textures",
@@ -99,10 +99,9 @@ public class ClipTexturesCommand implements CityGMLTool {
         CityGMLVersion targetVersion = cityGMLOutput.getVersion();
 
         log.debug("Searching for CityGML input files.");
-        List<Path> inputFiles;
+        InputFiles inputFiles;
         try {
-            inputFiles = new ArrayList<>(Util.listFiles(input.getFile(), "**.{gml,xml}"));
-            log.info("Found " + inputFiles.size() + " file(s) at '" + input.getFile() + "'.");
+            inputFiles = Util.listFiles(input.getFile(), Constants.CITYGML_FILES);
         } catch (IOException e) {
             log.warn("Failed to find file(s) at '" + input.getFile() + "'.");
             return 0;
@@ -116,7 +115,7 @@ public class ClipTexturesCommand implements CityGMLTool {
         }
 
         // check that output and input directories are different
-        Path rootDir = Util.getRootDirectory(input.getFile());
+        Path rootDir = inputFiles.getRootDirectory();
         if (outputDir.startsWith(rootDir)) {
             log.error("The output directory must not be a subfolder of or equal to the input directory.");
             return 1;
@@ -142,18 +141,28 @@ public class ClipTexturesCommand implements CityGMLTool {
                 .withInputEncoding(input.getEncoding())
                 .withOutputEncoding(cityGMLOutput.getEncoding());
 
-        for (int i = 0; i < inputFiles.size(); i++) {
-            Path inputFile = inputFiles.get(i);
-            log.info("[" + (i + 1) + "|" + inputFiles.size() + "] Processing file '" + inputFile.toAbsolutePath() + "'.");
+        try {
+            clipper.withOutputStreamFilter(cityGMLOutput.getOutputStreamFilter());
+        } catch (CityGMLWriteException e) {
+            log.error("Failed to create validator for output files.", e);
+            return 1;
+        }
+
+        try {
+            for (Path inputFile : inputFiles) {
+                log.info(inputFiles.getPosition() + " Processing file '" + inputFile.toAbsolutePath() + "'.");
 
-            Path outputFile = outputDir.resolve(rootDir.relativize(inputFile));
-            log.info("Writing output to file '" + outputFile.toAbsolutePath() + "'.");
+                Path outputFile = cityGMLOutput.getOutputFile(Util.removeCompressionExtension(outputDir.resolve(rootDir.relativize(inputFile).toString())));
+                log.info("Writing output to file '" + outputFile.toAbsolutePath() + "'.");
 
-            try {
-                clipper.clipTextures(inputFile, outputFile);
-            } catch (TextureClippingException e) {
-                log.error("Failed to clip textures.", e);
+                try {
+                    clipper.clipTextures(inputFile, outputFile);
+                } catch (TextureClippingException e) {
+                    log.error("Failed to clip textures.", e);
+                }
             }
+        } finally {
+            inputFiles.close();
         }
 
         return 0;
@@ -0,0 +1,191 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.command;
+
+import org.citygml4j.builder.jaxb.CityGMLBuilderException;
+import org.citygml4j.model.citygml.CityGML;
+import org.citygml4j.model.citygml.appearance.Appearance;
+import org.citygml4j.model.citygml.core.AbstractCityObject;
+import org.citygml4j.model.gml.feature.AbstractFeature;
+import org.citygml4j.tools.CityGMLTools;
+import org.citygml4j.tools.appconsolidator.AppConsolidator;
+import org.citygml4j.tools.common.helper.CityModelInfoHelper;
+import org.citygml4j.tools.common.log.Logger;
+import org.citygml4j.tools.option.CityGMLOutputOptions;
+import org.citygml4j.tools.option.InputOptions;
+import org.citygml4j.tools.option.LoggingOptions;
+import org.citygml4j.tools.util.Constants;
+import org.citygml4j.tools.util.InputFiles;
+import org.citygml4j.tools.util.Util;
+import org.citygml4j.xml.io.reader.CityGMLReadException;
+import org.citygml4j.xml.io.reader.CityGMLReader;
+import org.citygml4j.xml.io.writer.CityGMLWriteException;
+import org.citygml4j.xml.io.writer.CityModelWriter;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+@CommandLine.Command(name = "consolidate-apps",
+        description = "Merges identical local appearances into global ones.",
+        versionProvider = CityGMLTools.class,
+        mixinStandardHelpOptions = true,
+        showAtFileInUsageHelp = true)
+public class ConsolidateAppsCommand implements CityGMLTool {
+    @CommandLine.Option(names = "--max-surface-data", paramLabel = "<count>", description = "Maximum number of distinct surface data objects to keep in memory (default: ${DEFAULT-VALUE}).")
+    private int maxSurfaceData = 100000;
+
+    @CommandLine.Option(names = "--max-targets", paramLabel = "<count>", description = "Maximum number of surface targets of these surface data objects to keep in memory (default: ${DEFAULT-VALUE}).")
+    private int maxTargets = 1000000;
+
+    @CommandLine.Option(names = "--overwrite-files", description = "Overwrite input file(s).")
+    private boolean overwriteInputFiles;
+
+    @CommandLine.Mixin
+    private CityGMLOutputOptions cityGMLOutput;
+
+    @CommandLine.Mixin
+    private InputOptions input;
+
+    @CommandLine.Mixin
+    private LoggingOptions logging;
+
+    @Override
+    public Integer call() throws Exception {
+        Logger log = Logger.getInstance();
+        String fileNameSuffix = "_global-app";
+
+        if (maxSurfaceData < 1) {
+            log.error("The maximum number of surface data objects must be a positive integer.");
+            return 1;
+        }
+
+        if (maxTargets < 1) {
+            log.error("The maximum number of surface targets must be a positive integer.");
+            return 1;
+        }
+
+        log.debug("Searching for CityGML input files.");
+        InputFiles inputFiles;
+        try {
+            inputFiles = Util.listFiles(input.getFile(), Constants.CITYGML_FILES, fileNameSuffix);
+        } catch (IOException e) {
+            log.warn("Failed to find file(s) at '" + input.getFile() + "'.");
+            return 0;
+        }
+
+        if (overwriteInputFiles && inputFiles.isArchive()) {
+            log.error("Files in ZIP archives cannot be overwritten.");
+            inputFiles.close();
+            return 1;
+        }
+
+        try {
+            for (Path inputFile : inputFiles) {
+                log.info(inputFiles.getPosition() + " Processing file '" + inputFile.toAbsolutePath() + "'.");
+
+                Path outputFile;
+                if (!overwriteInputFiles) {
+                    outputFile = cityGMLOutput.getOutputFile(Util.addFileNameSuffix(inputFile, fileNameSuffix));
+                    log.info("Writing output to file '" + outputFile.toAbsolutePath() + "'.");
+                } else {
+                    outputFile = inputFile.resolveSibling("tmp-" + UUID.randomUUID());
+                    log.debug("Writing temporary output file '" + outputFile.toAbsolutePath() + "'.");
+                }
+
+                AppConsolidator consolidator = new AppConsolidator(maxSurfaceData, maxTargets);
+                try {
+                    log.debug("Searching for xlinks to surface data in input file.");
+                    consolidator.readSurfaceDataLinks(inputFile);
+                } catch (CityGMLReadException e) {
+                    log.error("Failed to read surface data links.", e);
+                    return 1;
+                }
+
+                log.debug("Reading city objects from input file and consolidating appearances.");
+
+                try (CityGMLReader reader = input.createCityGMLReader(inputFile, input.createSkipFilter("CityModel"));
+                     CityModelWriter writer = cityGMLOutput.createCityModelWriter(outputFile)) {
+                    boolean isInitialized = false;
+
+                    while (reader.hasNext()) {
+                        CityGML cityGML = reader.nextFeature();
+
+                        // write city model
+                        if (!isInitialized) {
+                            writer.setCityModelInfo(CityModelInfoHelper.getCityModelInfo(cityGML, reader.getParentInfo()));
+                            writer.writeStartDocument();
+                            isInitialized = true;
+                        }
+
+                        if (cityGML instanceof AbstractCityObject) {
+                            AbstractCityObject cityObject = (AbstractCityObject) cityGML;
+                            List<Appearance> appearances = consolidator.consolidate(cityObject);
+                            writer.writeFeatureMember(cityObject);
+
+                            // surface data evicted from the content table is written immediately
+                            for (Appearance appearance : appearances)
+                                writer.writeFeatureMember(appearance);
+                        }
+
+                        else if (cityGML instanceof AbstractFeature)
+                            writer.writeFeatureMember((AbstractFeature) cityGML);
+                    }
+
+                    for (Appearance appearance : consolidator.getGlobalApps())
+                        writer.writeFeatureMember(appearance);
+
+                    log.info("Consolidated " + consolidator.getResultStatistic().getLocalSurfaceData() + " local surface data object(s).");
+                    log.debug("Processed city objects: " + consolidator.getResultStatistic().getCityObjects());
+                    log.debug("Created global appearances: " + consolidator.getResultStatistic().getGlobalAppearances());
+                    log.debug("Created ParameterizedTexture elements: " + consolidator.getResultStatistic().getGlobalParameterizedTextures());
+                    log.debug("Created X3DMaterial elements: " + consolidator.getResultStatistic().getGlobalX3DMaterials());
+
+                } catch (CityGMLBuilderException | CityGMLReadException e) {
+                    log.error("Failed to read city objects.", e);
+                    return 1;
+                } catch (CityGMLWriteException e) {
+                    log.error("Failed to write city objects.", e);
+                    return 1;
+                }
+
+                if (overwriteInputFiles) {
+                    try {
+                        log.debug("Replacing input file with temporary file.");
+                        Files.delete(inputFile);
+                        Files.move(outputFile, cityGMLOutput.getOutputFile(Util.removeCompressionExtension(inputFile)));
+                    } catch (IOException e) {
+                        log.error("Failed to overwrite input file.", e);
+                        return 1;
+                    }
+                }
+            }
+        } finally {
+            inputFiles.close();
+        }
+
+        return 0;
+    }
+}
@@ -25,18 +25,20 @@ import org.citygml4j.builder.jaxb.CityGMLBuilder;
 import org.citygml4j.builder.jaxb.CityGMLBuilderException;
 import org.citygml4j.model.citygml.CityGML;
 import org.citygml4j.model.citygml.appearance.Appearance;
-import org.citygml4j.model.citygml.cityobjectgroup.CityObjectGroup;
 import org.citygml4j.model.citygml.core.AbstractCityObject;
 import org.citygml4j.model.gml.feature.AbstractFeature;
 import org.citygml4j.tools.CityGMLTools;
 import org.citygml4j.tools.common.helper.CityModelInfoHelper;
 import org.citygml4j.tools.common.helper.GlobalAppReader;
 import org.citygml4j.tools.common.log.Logger;
+import org.citygml4j.tools.lodfilter.GroupFilter;
 import org.citygml4j.tools.lodfilter.LodFilter;
 import org.citygml4j.tools.lodfilter.LodFilterMode;
 import org.citygml4j.tools.option.CityGMLOutputOptions;
 import org.citygml4j.tools.option.InputOptions;
 import org.citygml4j.tools.option.LoggingOptions;
+import org.citygml4j.tools.util.Constants;
+import org.citygml4j.tools.util.InputFiles;
 import org.citygml4j.tools.util.ObjectRegistry;
 import org.citygml4j.tools.util.Util;
 import org.citygml4j.xml.io.reader.CityGMLReadException;
@@ -48,12 +50,16 @@ import picocli.CommandLine;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @CommandLine.Command(name = "filter-lods",
         description = "Filters the LoD representations of city objects.",
@@ -70,6 +76,9 @@ public class FilterLodsCommand implements CityGMLTool {
     @CommandLine.Option(names = "--keep-cityobjects-without-lods", description = "Do not delete city objects that lack an LoD representation after filtering.")
     private boolean keepCityObjectsWithoutLods;
 
+    @CommandLine.Option(names = "--threads", paramLabel = "<threads>", description = "Number of threads for processing city objects (default: ${DEFAULT-VALUE}).")
+    private int threads = 1;
+
     @CommandLine.Option(names = "--overwrite-files", description = "Overwrite input file(s).")
     private boolean overwriteInputFiles;
 
@@ -90,134 +99,156 @@ public class FilterLodsCommand implements CityGMLTool {
         CityGMLBuilder cityGMLBuilder = ObjectRegistry.getInstance().get(CityGMLBuilder.class);
         GlobalAppReader globalAppReader = new GlobalAppReader(cityGMLBuilder);
 
+        if (threads < 1) {
+            log.error("The number of threads must be a positive integer.");
+            return 1;
+        }
+
         log.debug("Searching for CityGML input files.");
-        List<Path> inputFiles;
+        InputFiles inputFiles;
         try {
-            inputFiles = new ArrayList<>(Util.listFiles(input.getFile(), "**.{gml,xml}", fileNameSuffix));
-            log.info("Found " + inputFiles.size() + " file(s) at '" + input.getFile() + "'.");
+            inputFiles = Util.listFiles(input.getFile(), Constants.CITYGML_FILES, fileNameSuffix);
         } catch (IOException e) {
             log.warn("Failed to find file(s) at '" + input.getFile() + "'.");
             return 0;
         }
 
-        for (int i = 0; i < inputFiles.size(); i++) {
-            Path inputFile = inputFiles.get(i);
-            log.info("[" + (i + 1) + "|" + inputFiles.size() + "] Processing file '" + inputFile.toAbsolutePath() + "'.");
-
-            Path outputFile;
-            if (!overwriteInputFiles) {
-                outputFile = Util.addFileNameSuffix(inputFile, fileNameSuffix);
-                log.info("Writing output to file '" + outputFile.toAbsolutePath() + "'.");
-            } else {
-                outputFile = inputFile.resolveSibling("tmp-" + UUID.randomUUID());
-                log.debug("Writing temporary output file '" + outputFile.toAbsolutePath() + "'.");
-            }
-
-            List<CityObjectGroup> groups = null;
-            List<Appearance> appearances;
-            try {
-                log.debug("Reading global appearances from input file.");
-                appearances = globalAppReader.readGlobalApps(inputFile);
-            } catch (CityGMLBuilderException | CityGMLReadException e) {
-                log.error("Failed to read global appearances.", e);
-                return 1;
-            }
-
-            LodFilter lodFilter = new LodFilter()
-                    .withFilterMode(mode)
-                    .keepCityObjectsWithoutLods(keepCityObjectsWithoutLods)
-                    .withGlobalApps(appearances);
-
-            for (int lod : lods)
-                lodFilter.filterLod(lod);
-
-            log.debug("Reading city objects from input file and filtering LoDs.");
+        if (overwriteInputFiles && inputFiles.isArchive()) {
+            log.error("Files in ZIP archives cannot be overwritten.");
+            inputFiles.close();
+            return 1;
+        }
 
-            try (CityGMLReader reader = input.createCityGMLReader(inputFile, input.createSkipFilter("CityModel", "Appearance"));
-                 CityModelWriter writer = cityGMLOutput.createCityModelWriter(outputFile)) {
-                boolean isInitialized = false;
+        try {
+            for (Path inputFile : inputFiles) {
+                log.info(inputFiles.getPosition() + " Processing file '" + inputFile.toAbsolutePath() + "'.");
+
+                Path outputFile;
+                if (!overwriteInputFiles) {
+                    outputFile = cityGMLOutput.getOutputFile(Util.addFileNameSuffix(inputFile, fileNameSuffix));
+                    log.info("Writing output to file '" + outputFile.toAbsolutePath() + "'.");
+                } else {
+                    outputFile = inputFile.resolveSibling("tmp-" + UUID.randomUUID());
+                    log.debug("Writing temporary output file '" + outputFile.toAbsolutePath() + "'.");
+                }
 
-                while (reader.hasNext()) {
-                    CityGML cityGML = reader.nextFeature();
+                List<Appearance> appearances;
+                try {
+                    log.debug("Reading global appearances from input file.");
+                    appearances = globalAppReader.readGlobalApps(inputFile);
+                } catch (CityGMLBuilderException | CityGMLReadException e) {
+                    log.error("Failed to read global appearances.", e);
+                    return 1;
+                }
 
-                    if (!isInitialized) {
-                        writer.setCityModelInfo(CityModelInfoHelper.getCityModelInfo(cityGML, reader.getParentInfo()));
-                        writer.writeStartDocument();
-                        isInitialized = true;
+                LodFilter lodFilter = new LodFilter()
+                        .withFilterMode(mode)
+                        .keepCityObjectsWithoutLods(keepCityObjectsWithoutLods)
+                        .withGlobalApps(appearances);
+
+                for (int lod : lods)
+                    lodFilter.filterLod(lod);
+
+                log.debug("Reading city objects from input file and filtering LoDs.");
+
+                ExecutorService service = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+                Deque<Future<AbstractFeature>> features = new ArrayDeque<>();
+
+                try (GroupFilter groupFilter = new GroupFilter(outputFile.resolveSibling("tmp-" + UUID.randomUUID()));
+                     CityGMLReader reader = input.createCityGMLReader(inputFile,
+                             input.createSkipFilter("CityModel", "Appearance"),
+                             stream -> lodFilter.skipLods(groupFilter.spillGroups(stream)));
+                     CityModelWriter writer = cityGMLOutput.createCityModelWriter(outputFile)) {
+                    boolean isInitialized = false;
+
+                    while (reader.hasNext()) {
+                        CityGML cityGML = reader.nextFeature();
+
+                        if (!isInitialized) {
+                            writer.setCityModelInfo(CityModelInfoHelper.getCityModelInfo(cityGML, reader.getParentInfo()));
+                            writer.writeStartDocument();
+                            isInitialized = true;
+                        }
+
+                        if (service != null) {
+                            // futures are written in input order to preserve the order of the city objects
+                            if (cityGML instanceof AbstractCityObject) {
+                                AbstractCityObject cityObject = (AbstractCityObject) cityGML;
+                                Set<String> skippedTargets = lodFilter.takeSkippedTargets(cityObject);
+                                features.add(service.submit(() -> lodFilter.apply(cityObject, skippedTargets)));
+                            } else if (cityGML instanceof AbstractFeature) {
+                                lodFilter.discardSkippedTargets((AbstractFeature) cityGML);
+                                features.add(CompletableFuture.completedFuture((AbstractFeature) cityGML));
+                            }
+
+                            while (!features.isEmpty() && (features.size() > threads * 16 || features.peek().isDone()))
+                                writeMember(writer, features.poll().get());
+                        }
+
+                        else if (cityGML instanceof AbstractCityObject) {
+                            AbstractCityObject cityObject = (AbstractCityObject) cityGML;
+                            cityObject = lodFilter.apply(cityObject);
+                            if (cityObject != null)
+                                writer.writeFeatureMember(cityObject);
+                        }
+
+                        else if (cityGML instanceof AbstractFeature) {
+                            lodFilter.discardSkippedTargets((AbstractFeature) cityGML);
+                            writer.writeFeatureMember((AbstractFeature) cityGML);
+                        }
                     }
 
-                    if (cityGML instanceof CityObjectGroup) {
-                        if (groups == null)
-                            groups = new ArrayList<>();
-
-                        groups.add((CityObjectGroup) cityGML);
-                    } else if (cityGML instanceof AbstractCityObject) {
-                        AbstractCityObject cityObject = (AbstractCityObject) cityGML;
-                        cityObject = lodFilter.apply(cityObject);
-                        if (cityObject != null)
-                            writer.writeFeatureMember(cityObject);
-                    } else if (cityGML instanceof AbstractFeature)
-                        writer.writeFeatureMember((AbstractFeature) cityGML);
-                }
-
-                if (groups != null) {
-                    cleanupGroups(groups, lodFilter.getRemovedCityObjectIds());
-                    for (CityObjectGroup group : groups)
-                        writer.writeFeatureMember(group);
-                }
+                    while (!features.isEmpty())
+                        writeMember(writer, features.poll().get());
 
-                if (lodFilter.hasRemainingGlobalApps()) {
-                    for (Appearance appearance : lodFilter.getRemainingGlobalApps())
-                        writer.writeFeatureMember(appearance);
-                }
+                    if (groupFilter.hasGroups()) {
+                        log.debug("Removing city object groups without remaining members.");
+                        groupFilter.writeGroups(input.createCityGMLInputFactory(true), writer, lodFilter);
+                    }
 
-            } catch (CityGMLBuilderException | CityGMLReadException e) {
-                log.error("Failed to read city objects.", e);
-                return 1;
-            } catch (CityGMLWriteException e) {
-                log.error("Failed to write city objects.", e);
-                return 1;
-            }
+                    if (lodFilter.hasRemainingGlobalApps()) {
+                        for (Appearance appearance : lodFilter.getRemainingGlobalApps())
+                            writer.writeFeatureMember(appearance);
+                    }
 
-            if (overwriteInputFiles) {
-                try {
-                    log.debug("Replacing input file with temporary file.");
-                    Files.delete(inputFile);
-                    Files.move(outputFile, outputFile.resolveSibling(inputFile.getFileName()));
+                } catch (CityGMLBuilderException | CityGMLReadException e) {
+                    log.error("Failed to read city objects.", e);
+                    return 1;
+                } catch (CityGMLWriteException e) {
+                    log.error("Failed to write city objects.", e);
+                    return 1;
+                } catch (ExecutionException e) {
+                    log.error("Failed to filter LoDs.", e.getCause());
+                    return 1;
                 } catch (IOException e) {
-                    log.error("Failed to overwrite input file.", e);
+                    log.error("Failed to delete temporary file for city object groups.", e);
                     return 1;
+                } finally {
+                    if (service != null)
+                        service.shutdownNow();
+                }
+
+                if (overwriteInputFiles) {
+                    try {
+                        log.debug("Replacing input file with temporary file.");
+                        Files.delete(inputFile);
+                        Files.move(outputFile, cityGMLOutput.getOutputFile(Util.removeCompressionExtension(inputFile)));
+                    } catch (IOException e) {
+                        log.error("Failed to overwrite input file.", e);
+                        return 1;
+                    }
                 }
             }
+        } finally {
+            inputFiles.close();
         }
 
         return 0;
     }
 
-    private void cleanupGroups(List<CityObjectGroup> groups, Set<String> ids) {
-        for (CityObjectGroup group : groups) {
-            if (group.isSetGroupMember())
-                group.getGroupMember().removeIf(member -> member.isSetHref()
-                        && ids.contains(member.getHref().replaceAll("^#", "")));
-
-            if (group.isSetGroupParent()
-                    && group.getGroupParent().isSetHref()
-                    && ids.contains(group.getGroupParent().getHref().replaceAll("^#", "")))
-                group.unsetGroupParent();
-        }
-
-        Set<String> groupIds = new HashSet<>();
-        for (Iterator<CityObjectGroup> iter = groups.iterator(); iter.hasNext(); ) {
-            CityObjectGroup group = iter.next();
-
-            if (!group.isSetGroupMember()) {
-                iter.remove();
-                if (group.isSetId())
-                    groupIds.add(group.getId());
-            }
-        }
-
-        if (!groupIds.isEmpty())
-            cleanupGroups(groups, groupIds);
+    private void writeMember(CityModelWriter writer, AbstractFeature feature) throws CityGMLWriteException {
+        // city objects without remaining LoDs are removed
+        if (feature != null)
+            writer.writeFeatureMember(feature);
     }
 }
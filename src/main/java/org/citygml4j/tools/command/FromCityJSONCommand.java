@@ -31,6 +31,9 @@ import org.citygml4j.tools.common.log.Logger;
 import org.citygml4j.tools.option.CityGMLOutputOptions;
 import org.citygml4j.tools.option.InputOptions;
 import org.citygml4j.tools.option.LoggingOptions;
+import org.citygml4j.tools.util.Constants;
+import org.citygml4j.tools.util.InputFiles;
+import org.citygml4j.tools.util.Metrics;
 import org.citygml4j.tools.util.ObjectRegistry;
 import org.citygml4j.tools.util.Util;
 import org.citygml4j.xml.io.writer.CityGMLWriteException;
@@ -39,8 +42,6 @@ import picocli.CommandLine;
 
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
 
 @CommandLine.Command(name = "from-cityjson",
         description = "Converts CityJSON files into CityGML.",
@@ -66,10 +67,9 @@ public class FromCityJSONCommand implements CityGMLTool {
         CityGMLBuilder cityGMLBuilder = ObjectRegistry.getInstance().get(CityGMLBuilder.class);
 
         log.debug("Searching for CityJSON input files.");
-        List<Path> inputFiles;
+        InputFiles inputFiles;
         try {
-            inputFiles = new ArrayList<>(Util.listFiles(input.getFile(), "**.{json,cityjson}"));
-            log.info("Found " + inputFiles.size() + " file(s) at '" + input.getFile() + "'.");
+            inputFiles = Util.listFiles(input.getFile(), Constants.CITYJSON_FILES);
         } catch (IOException e) {
             log.warn("Failed to find file(s) at '" + input.getFile() + "'.");
             return 0;
@@ -78,33 +78,40 @@ public class FromCityJSONCommand implements CityGMLTool {
         if (mapUnknownExtensions)
             log.debug("Mapping unknown extensions to generic city objects and attributes.");
 
-        for (int i = 0; i < inputFiles.size(); i++) {
-            Path inputFile = inputFiles.get(i);
-            log.info("[" + (i + 1) + "|" + inputFiles.size() + "] Processing file '" + inputFile.toAbsolutePath() + "'.");
-
-            Path outputFile = Util.replaceFileExtension(inputFile, ".gml");
-            log.info("Writing output to file '" + outputFile.toAbsolutePath() + "'.");
-
-            CityModel cityModel;
-            try (CityJSONReader reader = input.createCityJSONReader(inputFile, mapUnknownExtensions)) {
-                log.debug("Reading CityJSON input file into main memory.");
-                cityModel = reader.read();
-            } catch (CityJSONReadException e) {
-                log.error("Failed to read CityJSON file.", e);
-                if (e.getCause() instanceof JsonSyntaxException)
-                    log.error("Maybe an unsupported CityJSON version?");
-
-                return 1;
-            }
-
-            try (CityGMLWriter writer = cityGMLOutput.createCityGMLWriter(outputFile)) {
-                writer.write(cityModel);
-            } catch (CityGMLWriteException e) {
-                log.error("Failed to write CityGML file.", e);
-                return 1;
+        try {
+            for (Path inputFile : inputFiles) {
+                log.info(inputFiles.getPosition() + " Processing file '" + inputFile.toAbsolutePath() + "'.");
+
+                Path outputFile = cityGMLOutput.getOutputFile(Util.replaceFileExtension(inputFile, ".gml"));
+                log.info("Writing output to file '" + outputFile.toAbsolutePath() + "'.");
+
+                // the input file is kept open while writing so that the output is measured for this file
+                try (CityJSONReader reader = input.createCityJSONReader(inputFile, mapUnknownExtensions)) {
+                    log.debug("Reading CityJSON input file into main memory.");
+                    CityModel cityModel = reader.read();
+
+                    Metrics metrics = ObjectRegistry.getInstance().get(Metrics.class);
+                    if (metrics != null)
+                        cityModel.getCityObjectMember().forEach(member -> metrics.addFeature(member.getCityObject()));
+
+                    try (CityGMLWriter writer = cityGMLOutput.createCityGMLWriter(outputFile)) {
+                        writer.write(cityModel);
+                    } catch (CityGMLWriteException e) {
+                        log.error("Failed to write CityGML file.", e);
+                        return 1;
+                    }
+                } catch (CityJSONReadException e) {
+                    log.error("Failed to read CityJSON file.", e);
+                    if (e.getCause() instanceof JsonSyntaxException)
+                        log.error("Maybe an unsupported CityJSON version?");
+
+                    return 1;
+                }
+
+                log.debug("Successfully converted CityJSON file into CityGML.");
             }
-
-            log.debug("Successfully converted CityJSON file into CityGML.");
+        } finally {
+            inputFiles.close();
         }
 
         return 0;
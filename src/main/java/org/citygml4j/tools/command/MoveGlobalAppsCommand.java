@@ -29,27 +29,40 @@ import org.citygml4j.model.citygml.core.AbstractCityObject;
 import org.citygml4j.model.gml.feature.AbstractFeature;
 import org.citygml4j.tools.CityGMLTools;
 import org.citygml4j.tools.appmover.GlobalAppMover;
+import org.citygml4j.tools.appmover.GlobalAppStore;
 import org.citygml4j.tools.appmover.LocalAppTarget;
 import org.citygml4j.tools.common.helper.CityModelInfoHelper;
 import org.citygml4j.tools.common.helper.GlobalAppReader;
 import org.citygml4j.tools.common.log.Logger;
+import org.citygml4j.tools.common.xml.CityModelChunkWriter;
 import org.citygml4j.tools.option.CityGMLOutputOptions;
 import org.citygml4j.tools.option.InputOptions;
 import org.citygml4j.tools.option.LoggingOptions;
+import org.citygml4j.tools.util.Constants;
+import org.citygml4j.tools.util.InputFiles;
 import org.citygml4j.tools.util.ObjectRegistry;
 import org.citygml4j.tools.util.Util;
 import org.citygml4j.xml.io.reader.CityGMLReadException;
 import org.citygml4j.xml.io.reader.CityGMLReader;
+import org.citygml4j.xml.io.reader.MissingADESchemaException;
+import org.citygml4j.xml.io.reader.UnmarshalException;
+import org.citygml4j.xml.io.reader.XMLChunk;
 import org.citygml4j.xml.io.writer.CityGMLWriteException;
-import org.citygml4j.xml.io.writer.CityModelWriter;
 import picocli.CommandLine;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 
 @CommandLine.Command(name = "move-global-apps",
         description = "Converts global appearances to local ones.",
@@ -60,6 +73,15 @@ public class MoveGlobalAppsCommand implements CityGMLTool {
     @CommandLine.Option(names = "--feature", description = "Feature to assign the local appearance to: top-level, nested (default: ${DEFAULT-VALUE}).")
     private String target = "top-level";
 
+    @CommandLine.Option(names = "--threads", paramLabel = "<threads>", description = "Number of threads for processing city objects (default: ${DEFAULT-VALUE}).")
+    private int threads = 1;
+
+    @CommandLine.Option(names = "--spill-global-apps", description = "Keep global appearances in a temporary file instead of the main memory.")
+    private boolean spillGlobalApps;
+
+    @CommandLine.Option(names = "--spill-cache-size", paramLabel = "<size>", description = "Number of surface data objects to cache when spilling global appearances (default: ${DEFAULT-VALUE}).")
+    private int spillCacheSize = 1000;
+
     @CommandLine.Option(names = "--overwrite-files", description = "Overwrite input file(s).")
     private boolean overwriteInputFiles;
 
@@ -80,108 +102,194 @@ public class MoveGlobalAppsCommand implements CityGMLTool {
         CityGMLBuilder cityGMLBuilder = ObjectRegistry.getInstance().get(CityGMLBuilder.class);
         GlobalAppReader globalAppReader = new GlobalAppReader(cityGMLBuilder);
 
+        if (threads < 1) {
+            log.error("The number of threads must be a positive integer.");
+            return 1;
+        }
+
+        if (spillCacheSize < 1) {
+            log.error("The spill cache size must be a positive integer.");
+            return 1;
+        }
+
         log.debug("Searching for CityGML input files.");
-        List<Path> inputFiles;
+        InputFiles inputFiles;
         try {
-            inputFiles = new ArrayList<>(Util.listFiles(input.getFile(), "**.{gml,xml}", fileNameSuffix));
-            log.info("Found " + inputFiles.size() + " file(s) at '" + input.getFile() + "'.");
+            inputFiles = Util.listFiles(input.getFile(), Constants.CITYGML_FILES, fileNameSuffix);
         } catch (IOException e) {
             log.warn("Failed to find file(s) at '" + input.getFile() + "'.");
             return 0;
         }
 
-        for (int i = 0; i < inputFiles.size(); i++) {
-            Path inputFile = inputFiles.get(i);
-            log.info("[" + (i + 1) + "|" + inputFiles.size() + "] Processing file '" + inputFile.toAbsolutePath() + "'.");
-
-            Path outputFile;
-            if (!overwriteInputFiles) {
-                outputFile = Util.addFileNameSuffix(inputFile, fileNameSuffix);
-                log.info("Writing output to file '" + outputFile.toAbsolutePath() + "'.");
-            } else {
-                outputFile = inputFile.resolveSibling("tmp-" + UUID.randomUUID());
-                log.debug("Writing temporary output file '" + outputFile.toAbsolutePath() + "'.");
-            }
+        if (overwriteInputFiles && inputFiles.isArchive()) {
+            log.error("Files in ZIP archives cannot be overwritten.");
+            inputFiles.close();
+            return 1;
+        }
 
-            GlobalAppMover appMover;
-            try {
-                log.debug("Reading global appearances from input file.");
-                List<Appearance> appearances = globalAppReader.readGlobalApps(inputFile);
-                if (appearances.size() == 0) {
-                    log.info("The file does not contain global appearances. No action required.");
-                    continue;
+        try {
+            for (Path inputFile : inputFiles) {
+                log.info(inputFiles.getPosition() + " Processing file '" + inputFile.toAbsolutePath() + "'.");
+
+                Path outputFile;
+                if (!overwriteInputFiles) {
+                    outputFile = cityGMLOutput.getOutputFile(Util.addFileNameSuffix(inputFile, fileNameSuffix));
+                    log.info("Writing output to file '" + outputFile.toAbsolutePath() + "'.");
+                } else {
+                    outputFile = inputFile.resolveSibling("tmp-" + UUID.randomUUID());
+                    log.debug("Writing temporary output file '" + outputFile.toAbsolutePath() + "'.");
                 }
 
-                appMover = new GlobalAppMover(appearances);
-                if (target.equalsIgnoreCase("nested"))
-                    appMover.setLocalAppTarget(LocalAppTarget.NESTED_FEATURE);
+                GlobalAppMover appMover;
+                GlobalAppStore store = null;
+                try {
+                    int globalApps;
+                    if (spillGlobalApps) {
+                        log.debug("Writing global appearances from input file to temporary file.");
+                        store = new GlobalAppStore(cityGMLBuilder, outputFile.resolveSibling("tmp-" + UUID.randomUUID()), spillCacheSize);
+                        globalApps = store.readGlobalApps(inputFile);
+                        appMover = new GlobalAppMover(store);
+                    } else {
+                        log.debug("Reading global appearances from input file.");
+                        List<Appearance> appearances = globalAppReader.readGlobalApps(inputFile);
+                        globalApps = appearances.size();
+                        appMover = new GlobalAppMover(appearances);
+                    }
 
-                log.debug("Found " + appearances.size() + " global appearance(s).");
-            } catch (CityGMLBuilderException | CityGMLReadException e) {
-                log.error("Failed to read global appearances.", e);
-                return 1;
-            }
+                    if (globalApps == 0) {
+                        log.info("The file does not contain global appearances. No action required.");
+                        closeStore(store);
+                        continue;
+                    }
 
-            log.debug("Reading city objects from input file and moving global appearances.");
+                    if (target.equalsIgnoreCase("nested"))
+                        appMover.setLocalAppTarget(LocalAppTarget.NESTED_FEATURE);
 
-            try (CityGMLReader reader = input.createCityGMLReader(inputFile, input.createSkipFilter("CityModel", "Appearance"));
-                 CityModelWriter writer = cityGMLOutput.createCityModelWriter(outputFile)) {
-                boolean isInitialized = false;
+                    log.debug("Found " + globalApps + " global appearance(s).");
+                } catch (CityGMLBuilderException | CityGMLReadException e) {
+                    log.error("Failed to read global appearances.", e);
+                    closeStore(store);
+                    return 1;
+                }
 
-                while (reader.hasNext()) {
-                    CityGML cityGML = reader.nextFeature();
+                log.debug("Reading city objects from input file and moving global appearances.");
 
-                    // write city model
-                    if (!isInitialized) {
-                        writer.setCityModelInfo(CityModelInfoHelper.getCityModelInfo(cityGML, reader.getParentInfo()));
-                        writer.writeStartDocument();
-                        isInitialized = true;
-                    }
+                ExecutorService service = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+                Deque<Future<?>> features = new ArrayDeque<>();
+
+                // features other than city objects are copied without unmarshalling
+                Predicate<XMLChunk> objectFilter = input.createObjectFilter(AbstractCityObject.class);
+
+                try (CityGMLReader reader = input.createCityGMLReader(inputFile, input.createSkipFilter("CityModel", "Appearance"));
+                     CityModelChunkWriter writer = cityGMLOutput.createCityModelWriter(outputFile)) {
+                    boolean isInitialized = false;
+
+                    while (reader.hasNext()) {
+                        XMLChunk chunk = reader.nextChunk();
+                        CityGML cityGML = objectFilter.test(chunk) ? chunk.unmarshal() : null;
+
+                        // write city model
+                        if (!isInitialized) {
+                            writer.setCityModelInfo(CityModelInfoHelper.getCityModelInfo(cityGML, chunk.getParentInfo()));
+                            writer.writeStartDocument();
+                            isInitialized = true;
+                        }
 
-                    if (cityGML instanceof AbstractCityObject) {
-                        AbstractCityObject cityObject = (AbstractCityObject) cityGML;
-                        appMover.moveGlobalApps(cityObject);
-                        writer.writeFeatureMember(cityObject);
+                        if (service != null) {
+                            // futures are written in input order to preserve the order of the city objects
+                            if (cityGML == null)
+                                features.add(CompletableFuture.completedFuture(chunk));
+                            else if (cityGML instanceof AbstractCityObject) {
+                                AbstractCityObject cityObject = (AbstractCityObject) cityGML;
+                                features.add(service.submit(() -> appMover.moveGlobalApps(cityObject)));
+                            } else if (cityGML instanceof AbstractFeature)
+                                features.add(CompletableFuture.completedFuture(cityGML));
+
+                            while (!features.isEmpty() && (features.size() > threads * 16 || features.peek().isDone()))
+                                writeMember(writer, features.poll().get());
+                        }
+
+                        else if (cityGML == null)
+                            writer.writeChunk(chunk);
+
+                        else if (cityGML instanceof AbstractCityObject) {
+                            AbstractCityObject cityObject = (AbstractCityObject) cityGML;
+                            appMover.moveGlobalApps(cityObject);
+                            writer.writeFeatureMember(cityObject);
+                        }
+
+                        else if (cityGML instanceof AbstractFeature)
+                            writer.writeFeatureMember((AbstractFeature) cityGML);
                     }
 
-                    else if (cityGML instanceof AbstractFeature)
-                        writer.writeFeatureMember((AbstractFeature) cityGML);
-                }
+                    while (!features.isEmpty())
+                        writeMember(writer, features.poll().get());
 
-                if (appMover.hasRemainingGlobalApps()) {
-                    List<Appearance> appearances = appMover.getRemainingGlobalApps();
-                    log.info(appearances.size() + " global appearance(s) could not be moved due to implicit geometries.");
-                    for (Appearance appearance : appearances)
-                        writer.writeFeatureMember(appearance);
-                } else
-                    log.info("Successfully moved all global appearances.");
-
-                log.debug("Processed city objects: " + appMover.getResultStatistic().getCityObjects());
-                log.debug("Created local appearances: " + appMover.getResultStatistic().getAppearances());
-                log.debug("Created ParameterizedTexture elements: " + appMover.getResultStatistic().getParameterizedTextures());
-                log.debug("Created GeoreferencedTexture elements: " + appMover.getResultStatistic().getGeoreferencedTextures());
-                log.debug("Created X3DMaterial elements: " + appMover.getResultStatistic().getX3DMaterials());
-
-            } catch (CityGMLBuilderException | CityGMLReadException e) {
-                log.error("Failed to read city objects.", e);
-                return 1;
-            } catch (CityGMLWriteException e) {
-                log.error("Failed to write city objects.", e);
-                return 1;
-            }
+                    if (appMover.hasRemainingGlobalApps()) {
+                        List<Appearance> appearances = appMover.getRemainingGlobalApps();
+                        log.info(appearances.size() + " global appearance(s) could not be moved due to implicit geometries.");
+                        for (Appearance appearance : appearances)
+                            writer.writeFeatureMember(appearance);
+                    } else
+                        log.info("Successfully moved all global appearances.");
 
-            if (overwriteInputFiles) {
-                try {
-                    log.debug("Replacing input file with temporary file.");
-                    Files.delete(inputFile);
-                    Files.move(outputFile, outputFile.resolveSibling(inputFile.getFileName()));
-                } catch (IOException e) {
-                    log.error("Failed to overwrite input file.", e);
+                    log.debug("Processed city objects: " + appMover.getResultStatistic().getCityObjects());
+                    log.debug("Created local appearances: " + appMover.getResultStatistic().getAppearances());
+                    log.debug("Created ParameterizedTexture elements: " + appMover.getResultStatistic().getParameterizedTextures());
+                    log.debug("Created GeoreferencedTexture elements: " + appMover.getResultStatistic().getGeoreferencedTextures());
+                    log.debug("Created X3DMaterial elements: " + appMover.getResultStatistic().getX3DMaterials());
+
+                } catch (CityGMLBuilderException | CityGMLReadException | UnmarshalException | MissingADESchemaException e) {
+                    log.error("Failed to read city objects.", e);
+                    return 1;
+                } catch (CityGMLWriteException e) {
+                    log.error("Failed to write city objects.", e);
+                    return 1;
+                } catch (ExecutionException e) {
+                    log.error("Failed to move global appearances.", e.getCause());
+                    return 1;
+                } catch (IllegalStateException e) {
+                    log.error("Failed to move global appearances.", e);
                     return 1;
+                } finally {
+                    if (service != null)
+                        service.shutdownNow();
+
+                    closeStore(store);
+                }
+
+                if (overwriteInputFiles) {
+                    try {
+                        log.debug("Replacing input file with temporary file.");
+                        Files.delete(inputFile);
+                        Files.move(outputFile, cityGMLOutput.getOutputFile(Util.removeCompressionExtension(inputFile)));
+                    } catch (IOException e) {
+                        log.error("Failed to overwrite input file.", e);
+                        return 1;
+                    }
                 }
             }
+        } finally {
+            inputFiles.close();
         }
 
         return 0;
     }
+
+    private void writeMember(CityModelChunkWriter writer, Object member) throws CityGMLWriteException {
+        if (member instanceof XMLChunk)
+            writer.writeChunk((XMLChunk) member);
+        else
+            writer.writeFeatureMember((AbstractFeature) member);
+    }
+
+    private void closeStore(GlobalAppStore store) {
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                Logger.getInstance().warn("Failed to delete temporary file for global appearances.");
+            }
+        }
+    }
 }
@@ -34,26 +34,31 @@ import org.citygml4j.model.gml.feature.AbstractFeature;
 import org.citygml4j.tools.CityGMLTools;
 import org.citygml4j.tools.common.helper.CityModelInfoHelper;
 import org.citygml4j.tools.common.log.Logger;
+import org.citygml4j.tools.common.xml.CityModelChunkWriter;
 import org.citygml4j.tools.option.CityGMLOutputOptions;
 import org.citygml4j.tools.option.InputOptions;
 import org.citygml4j.tools.option.LoggingOptions;
+import org.citygml4j.tools.util.Constants;
+import org.citygml4j.tools.util.InputFiles;
 import org.citygml4j.tools.util.Util;
 import org.citygml4j.util.walker.FeatureWalker;
 import org.citygml4j.xml.io.reader.CityGMLReadException;
 import org.citygml4j.xml.io.reader.CityGMLReader;
+import org.citygml4j.xml.io.reader.MissingADESchemaException;
+import org.citygml4j.xml.io.reader.UnmarshalException;
+import org.citygml4j.xml.io.reader.XMLChunk;
 import org.citygml4j.xml.io.writer.CityGMLWriteException;
-import org.citygml4j.xml.io.writer.CityModelWriter;
 import picocli.CommandLine;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Predicate;
 
 @CommandLine.Command(name = "remove-apps",
         description = "Removes appearances from city objects.",
@@ -91,98 +96,117 @@ public class RemoveAppsCommand implements CityGMLTool {
         String fileNameSuffix = "_wo-app";
 
         log.debug("Searching for CityGML input files.");
-        List<Path> inputFiles;
+        InputFiles inputFiles;
         try {
-            inputFiles = new ArrayList<>(Util.listFiles(input.getFile(), "**.{gml,xml}", fileNameSuffix));
-            log.info("Found " + inputFiles.size() + " file(s) at '" + input.getFile() + "'.");
+            inputFiles = Util.listFiles(input.getFile(), Constants.CITYGML_FILES, fileNameSuffix);
         } catch (IOException e) {
             log.warn("Failed to find file(s) at '" + input.getFile() + "'.");
             return 0;
         }
 
-        for (int i = 0; i < inputFiles.size(); i++) {
-            Path inputFile = inputFiles.get(i);
-            log.info("[" + (i + 1) + "|" + inputFiles.size() + "] Processing file '" + inputFile.toAbsolutePath() + "'.");
-
-            Path outputFile;
-            if (!overwriteInputFiles) {
-                outputFile = Util.addFileNameSuffix(inputFile, fileNameSuffix);
-                log.info("Writing output to file '" + outputFile.toAbsolutePath() + "'.");
-            } else {
-                outputFile = inputFile.resolveSibling("tmp-" + UUID.randomUUID());
-                log.debug("Writing temporary output file '" + outputFile.toAbsolutePath() + "'.");
-            }
+        if (overwriteInputFiles && inputFiles.isArchive()) {
+            log.error("Files in ZIP archives cannot be overwritten.");
+            inputFiles.close();
+            return 1;
+        }
+
+        try {
+            for (Path inputFile : inputFiles) {
+                log.info(inputFiles.getPosition() + " Processing file '" + inputFile.toAbsolutePath() + "'.");
+
+                Path outputFile;
+                if (!overwriteInputFiles) {
+                    outputFile = cityGMLOutput.getOutputFile(Util.addFileNameSuffix(inputFile, fileNameSuffix));
+                    log.info("Writing output to file '" + outputFile.toAbsolutePath() + "'.");
+                } else {
+                    outputFile = inputFile.resolveSibling("tmp-" + UUID.randomUUID());
+                    log.debug("Writing temporary output file '" + outputFile.toAbsolutePath() + "'.");
+                }
 
-            log.debug("Reading city objects from input file and removing appearances.");
+                log.debug("Reading city objects from input file and removing appearances.");
 
-            try (CityGMLReader reader = input.createCityGMLReader(inputFile, input.createSkipFilter("CityModel"));
-                 CityModelWriter writer = cityGMLOutput.createCityModelWriter(outputFile)) {
-                boolean isInitialized = false;
-                Map<Class<?>, Integer> counter = new HashMap<>();
+                Predicate<XMLChunk> objectFilter = input.createObjectFilter(Appearance.class);
 
-                while (reader.hasNext()) {
-                    CityGML cityGML = reader.nextFeature();
+                try (CityGMLReader reader = input.createCityGMLReader(inputFile, input.createSkipFilter("CityModel"));
+                     CityModelChunkWriter writer = cityGMLOutput.createCityModelWriter(outputFile)) {
+                    boolean isInitialized = false;
+                    Map<Class<?>, Integer> counter = new HashMap<>();
 
-                    // write city model
-                    if (!isInitialized) {
-                        writer.setCityModelInfo(CityModelInfoHelper.getCityModelInfo(cityGML, reader.getParentInfo()));
-                        writer.writeStartDocument();
-                        isInitialized = true;
-                    }
+                    // local appearances are removed from the XML events of a city object without unmarshalling it
+                    AppearanceRemover appearanceRemover = !onlyGlobal ?
+                            new AppearanceRemover(theme, onlyTextures, onlyMaterials, counter) :
+                            null;
 
-                    if (cityGML instanceof AbstractCityObject) {
-                        AbstractCityObject cityObject = (AbstractCityObject) cityGML;
+                    while (reader.hasNext()) {
+                        XMLChunk chunk = reader.nextChunk();
+                        CityGML cityGML = objectFilter.test(chunk) || !writer.isCopyable(chunk) ? chunk.unmarshal() : null;
 
-                        if (!onlyGlobal) {
-                            cityObject.accept(new FeatureWalker() {
-                                public void visit(AbstractCityObject cityObject) {
-                                    cityObject.getAppearance().removeIf(p -> process(p.getAppearance(), counter));
-                                    super.visit(cityObject);
-                                }
-                            });
+                        // write city model
+                        if (!isInitialized) {
+                            writer.setCityModelInfo(CityModelInfoHelper.getCityModelInfo(cityGML, chunk.getParentInfo()));
+                            writer.writeStartDocument();
+                            isInitialized = true;
                         }
 
-                        writer.writeFeatureMember(cityObject);
-                    }
+                        if (cityGML == null)
+                            writer.writeChunk(chunk, appearanceRemover);
 
-                    else if (cityGML instanceof Appearance) {
-                        Appearance appearance = (Appearance) cityGML;
-                        if (!process(appearance, counter))
-                            writer.writeFeatureMember(appearance);
-                    }
+                        else if (cityGML instanceof AbstractCityObject) {
+                            AbstractCityObject cityObject = (AbstractCityObject) cityGML;
 
-                    else if (cityGML instanceof AbstractFeature)
-                        writer.writeFeatureMember((AbstractFeature) cityGML);
-                }
+                            if (!onlyGlobal) {
+                                cityObject.accept(new FeatureWalker() {
+                                    public void visit(AbstractCityObject cityObject) {
+                                        cityObject.getAppearance().removeIf(p -> process(p.getAppearance(), counter));
+                                        super.visit(cityObject);
+                                    }
+                                });
+                            }
 
-                if (onlyTextures) {
-                    log.debug("Removed ParameterizedTexture elements: " + counter.getOrDefault(ParameterizedTexture.class, 0));
-                    log.debug("Removed GeoreferencedTexture elements: " + counter.getOrDefault(GeoreferencedTexture.class, 0));
-                }
+                            writer.writeFeatureMember(cityObject);
+                        }
 
-                if (onlyMaterials)
-                    log.debug("Removed X3DMaterial elements: " + counter.getOrDefault(X3DMaterial.class, 0));
+                        else if (cityGML instanceof Appearance) {
+                            Appearance appearance = (Appearance) cityGML;
+                            if (!process(appearance, counter))
+                                writer.writeFeatureMember(appearance);
+                        }
 
-                log.debug("Removed Appearance elements: " + counter.getOrDefault(Appearance.class, 0));
+                        else if (cityGML instanceof AbstractFeature)
+                            writer.writeFeatureMember((AbstractFeature) cityGML);
+                    }
 
-            } catch (CityGMLBuilderException | CityGMLReadException e) {
-                log.error("Failed to read city objects.", e);
-                return 1;
-            } catch (CityGMLWriteException e) {
-                log.error("Failed to write city objects.", e);
-                return 1;
-            }
+                    if (onlyTextures) {
+                        log.debug("Removed ParameterizedTexture elements: " + counter.getOrDefault(ParameterizedTexture.class, 0));
+                        log.debug("Removed GeoreferencedTexture elements: " + counter.getOrDefault(GeoreferencedTexture.class, 0));
+                    }
+
+                    if (onlyMaterials)
+                        log.debug("Removed X3DMaterial elements: " + counter.getOrDefault(X3DMaterial.class, 0));
 
-            if (overwriteInputFiles) {
-                try {
-                    log.debug("Replacing input file with temporary file.");
-                    Files.delete(inputFile);
-                    Files.move(outputFile, outputFile.resolveSibling(inputFile.getFileName()));
-                } catch (IOException e) {
-                    log.error("Failed to overwrite input file.", e);
+                    log.debug("Removed Appearance elements: " + counter.getOrDefault(Appearance.class, 0));
+
+                } catch (CityGMLBuilderException | CityGMLReadException | UnmarshalException | MissingADESchemaException e) {
+                    log.error("Failed to read city objects.", e);
+                    return 1;
+                } catch (CityGMLWriteException e) {
+                    log.error("Failed to write city objects.", e);
                     return 1;
                 }
+
+                if (overwriteInputFiles) {
+                    try {
+                        log.debug("Replacing input file with temporary file.");
+                        Files.delete(inputFile);
+                        Files.move(outputFile, cityGMLOutput.getOutputFile(Util.removeCompressionExtension(inputFile)));
+                    } catch (IOException e) {
+                        log.error("Failed to overwrite input file.", e);
+                        return 1;
+                    }
+                }
             }
+        } finally {
+            inputFiles.close();
         }
 
         return 0;
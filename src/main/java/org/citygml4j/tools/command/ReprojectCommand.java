@@ -35,6 +35,8 @@ import org.citygml4j.tools.reproject.ReprojectionBuilder;
 import org.citygml4j.tools.reproject.ReprojectionBuilderException;
 import org.citygml4j.tools.reproject.ReprojectionException;
 import org.citygml4j.tools.reproject.Reprojector;
+import org.citygml4j.tools.util.Constants;
+import org.citygml4j.tools.util.InputFiles;
 import org.citygml4j.tools.util.Util;
 import org.citygml4j.xml.io.reader.CityGMLReadException;
 import org.citygml4j.xml.io.reader.CityGMLReader;
@@ -46,8 +48,6 @@ import picocli.CommandLine;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.UUID;
 
 @CommandLine.Command(name = "reproject",
@@ -92,15 +92,20 @@ public class ReprojectCommand implements CityGMLTool {
         String fileNameSuffix = "_reprojected";
 
         log.debug("Searching for CityGML input files.");
-        List<Path> inputFiles;
+        InputFiles inputFiles;
         try {
-            inputFiles = new ArrayList<>(Util.listFiles(input.getFile(), "**.{gml,xml}", fileNameSuffix));
-            log.info("Found " + inputFiles.size() + " file(s) at '" + input.getFile() + "'.");
+            inputFiles = Util.listFiles(input.getFile(), Constants.CITYGML_FILES, fileNameSuffix);
         } catch (IOException e) {
             log.warn("Failed to find file(s) at '" + input.getFile() + "'.");
             return 0;
         }
 
+        if (overwriteInputFiles && inputFiles.isArchive()) {
+            log.error("Files in ZIP archives cannot be overwritten.");
+            inputFiles.close();
+            return 1;
+        }
+
         Reprojector reprojector;
         try {
             reprojector = ReprojectionBuilder.defaults()
@@ -120,71 +125,74 @@ public class ReprojectCommand implements CityGMLTool {
             return 1;
         }
 
-        for (int i = 0; i < inputFiles.size(); i++) {
-            Path inputFile = inputFiles.get(i);
-            log.info("[" + (i + 1) + "|" + inputFiles.size() + "] Processing file '" + inputFile.toAbsolutePath() + "'.");
-
-            Path outputFile;
-            if (!overwriteInputFiles) {
-                outputFile = Util.addFileNameSuffix(inputFile, fileNameSuffix);
-                log.info("Writing output to file '" + outputFile.toAbsolutePath() + "'.");
-            } else {
-                outputFile = inputFile.resolveSibling("tmp-" + UUID.randomUUID());
-                log.debug("Writing temporary output file '" + outputFile.toAbsolutePath() + "'.");
-            }
+        try {
+            for (Path inputFile : inputFiles) {
+                log.info(inputFiles.getPosition() + " Processing file '" + inputFile.toAbsolutePath() + "'.");
+
+                Path outputFile;
+                if (!overwriteInputFiles) {
+                    outputFile = cityGMLOutput.getOutputFile(Util.addFileNameSuffix(inputFile, fileNameSuffix));
+                    log.info("Writing output to file '" + outputFile.toAbsolutePath() + "'.");
+                } else {
+                    outputFile = inputFile.resolveSibling("tmp-" + UUID.randomUUID());
+                    log.debug("Writing temporary output file '" + outputFile.toAbsolutePath() + "'.");
+                }
 
-            log.debug("Reading city objects from input file and reprojecting coordinates.");
+                log.debug("Reading city objects from input file and reprojecting coordinates.");
 
-            try (CityGMLReader reader = input.createCityGMLReader(inputFile, input.createSkipFilter("CityModel"));
-                 CityModelWriter writer = cityGMLOutput.createCityModelWriter(outputFile)) {
-                boolean isInitialized = false;
+                try (CityGMLReader reader = input.createCityGMLReader(inputFile, input.createSkipFilter("CityModel"));
+                     CityModelWriter writer = cityGMLOutput.createCityModelWriter(outputFile)) {
+                    boolean isInitialized = false;
 
-                while (reader.hasNext()) {
-                    CityGML cityGML = reader.nextFeature();
+                    while (reader.hasNext()) {
+                        CityGML cityGML = reader.nextFeature();
 
-                    if (!isInitialized) {
-                        CityModelInfo cityModelInfo = CityModelInfoHelper.getCityModelInfo(cityGML, reader.getParentInfo());
+                        if (!isInitialized) {
+                            CityModelInfo cityModelInfo = CityModelInfoHelper.getCityModelInfo(cityGML, reader.getParentInfo());
 
-                        if (cityModelInfo.isSetBoundedBy()) {
-                            if (cityModelInfo.getBoundedBy().isSetEnvelope()
-                                    &&cityModelInfo.getBoundedBy().getEnvelope().isSetSrsName())
-                                reprojector.setFallbackSRSName(cityModelInfo.getBoundedBy().getEnvelope().getSrsName());
+                            if (cityModelInfo.isSetBoundedBy()) {
+                                if (cityModelInfo.getBoundedBy().isSetEnvelope()
+                                        &&cityModelInfo.getBoundedBy().getEnvelope().isSetSrsName())
+                                    reprojector.setFallbackSRSName(cityModelInfo.getBoundedBy().getEnvelope().getSrsName());
 
-                            reprojector.reproject(cityModelInfo.getBoundedBy());
-                        }
+                                reprojector.reproject(cityModelInfo.getBoundedBy());
+                            }
 
-                        writer.setCityModelInfo(cityModelInfo);
-                        writer.writeStartDocument();
-                        isInitialized = true;
-                    }
+                            writer.setCityModelInfo(cityModelInfo);
+                            writer.writeStartDocument();
+                            isInitialized = true;
+                        }
 
-                    if (cityGML instanceof AbstractFeature) {
-                        AbstractFeature feature = (AbstractFeature) cityGML;
-                        reprojector.reproject(feature);
-                        writer.writeFeatureMember(feature);
+                        if (cityGML instanceof AbstractFeature) {
+                            AbstractFeature feature = (AbstractFeature) cityGML;
+                            reprojector.reproject(feature);
+                            writer.writeFeatureMember(feature);
+                        }
                     }
+                } catch (ReprojectionException e) {
+                    log.error("Failed to reproject city objects.", e);
+                    return 1;
+                } catch (CityGMLBuilderException | CityGMLReadException e) {
+                    log.error("Failed to read city objects.", e);
+                    return 1;
+                } catch (CityGMLWriteException e) {
+                    log.error("Failed to write city objects.", e);
+                    return 1;
                 }
-            } catch (ReprojectionException e) {
-                log.error("Failed to reproject city objects.", e);
-                return 1;
-            } catch (CityGMLBuilderException | CityGMLReadException e) {
-                log.error("Failed to read city objects.", e);
-                return 1;
-            } catch (CityGMLWriteException e) {
-                log.error("Failed to write city objects.", e);
-                return 1;
-            }
 
-            if (overwriteInputFiles) {
-                try {
-                    log.debug("Replacing input file with temporary file.");
-                    Files.delete(inputFile);
-                    Files.move(outputFile, outputFile.resolveSibling(inputFile.getFileName()));
-                } catch (IOException e) {
-                    log.error("Failed to overwrite input file.", e);
-                    return 1;
+                if (overwriteInputFiles) {
+                    try {
+                        log.debug("Replacing input file with temporary file.");
+                        Files.delete(inputFile);
+                        Files.move(outputFile, cityGMLOutput.getOutputFile(Util.removeCompressionExtension(inputFile)));
+                    } catch (IOException e) {
+                        log.error("Failed to overwrite input file.", e);
+                        return 1;
+                    }
                 }
             }
+        } finally {
+            inputFiles.close();
         }
 
         return 0;
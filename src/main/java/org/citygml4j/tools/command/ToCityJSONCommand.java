@@ -39,6 +39,8 @@ import org.citygml4j.tools.common.srs.SrsParseException;
 import org.citygml4j.tools.option.InputOptions;
 import org.citygml4j.tools.option.LoggingOptions;
 import org.citygml4j.tools.option.OutputOptions;
+import org.citygml4j.tools.util.Constants;
+import org.citygml4j.tools.util.InputFiles;
 import org.citygml4j.tools.util.Util;
 import org.citygml4j.xml.io.reader.CityGMLReadException;
 import org.citygml4j.xml.io.reader.CityGMLReader;
@@ -46,8 +48,6 @@ import picocli.CommandLine;
 
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
 
 @CommandLine.Command(name = "to-cityjson",
         description = "Converts CityGML files into CityJSON.",
@@ -93,60 +93,62 @@ public class ToCityJSONCommand implements CityGMLTool {
         Logger log = Logger.getInstance();
 
         log.debug("Searching for CityGML input files.");
-        List<Path> inputFiles;
+        InputFiles inputFiles;
         try {
-            inputFiles = new ArrayList<>(Util.listFiles(input.getFile(), "**.{gml,xml}"));
-            log.info("Found " + inputFiles.size() + " file(s) at '" + input.getFile() + "'.");
+            inputFiles = Util.listFiles(input.getFile(), Constants.CITYGML_FILES);
         } catch (IOException e) {
             log.warn("Failed to find file(s) at '" + input.getFile() + "'.");
             return 0;
         }
 
-        for (int i = 0; i < inputFiles.size(); i++) {
-            Path inputFile = inputFiles.get(i);
-            log.info("[" + (i + 1) + "|" + inputFiles.size() + "] Processing file '" + inputFile.toAbsolutePath() + "'.");
-
-            Path outputFile = Util.replaceFileExtension(inputFile, ".json");
-            log.info("Writing output to file '" + outputFile.toAbsolutePath() + "'.");
-
-            CityGML cityGML;
-            try (CityGMLReader reader = input.createCityGMLReader(inputFile, false)) {
-                log.debug("Reading CityJSON input file into main memory.");
-                cityGML = reader.nextFeature();
-            } catch (CityGMLBuilderException | CityGMLReadException e) {
-                log.error("Failed to read CityGML file.", e);
-                return 1;
-            }
-
-            if (cityGML instanceof CityModel) {
-                try (CityJSONWriter writer = output.createCityJSONWriter(outputFile, removeDuplicateChildGeometries)) {
-                    CityModel cityModel = (CityModel) cityGML;
-
-                    // set builder for geometry, template and texture vertices
-                    writer.setVerticesBuilder(new DefaultVerticesBuilder().withSignificantDigits(verticesDigites));
-                    writer.setTemplatesVerticesBuilder(new DefaultVerticesBuilder().withSignificantDigits(templateDigites));
-                    writer.setTextureVerticesBuilder(new DefaultTextureVerticesBuilder().withSignificantDigits(textureVerticesDigites));
-
-                    // apply compression if requested
-                    if (compress)
-                        writer.setVerticesTransformer(new DefaultVerticesTransformer().withSignificantDigits(compressDigits));
-
-                    // pretty print
-                    if (prettyPrint)
-                        writer.setIndent("  ");
-
-                    // retrieve metadata
-                    writer.setMetadata(getMetadata(cityModel, log));
-
-                    // convert and write city model
-                    writer.write(cityModel);
-                    log.debug("Successfully converted CityGML file into CityJSON.");
-                } catch (CityJSONWriteException e) {
-                    log.error("Failed to write CityJSON file.", e);
+        try {
+            for (Path inputFile : inputFiles) {
+                log.info(inputFiles.getPosition() + " Processing file '" + inputFile.toAbsolutePath() + "'.");
+
+                Path outputFile = output.getOutputFile(Util.replaceFileExtension(inputFile, ".json"));
+                log.info("Writing output to file '" + outputFile.toAbsolutePath() + "'.");
+
+                // the input file is kept open while writing so that the output is measured for this file
+                try (CityGMLReader reader = input.createCityGMLReader(inputFile, false)) {
+                    log.debug("Reading CityJSON input file into main memory.");
+                    CityGML cityGML = reader.nextFeature();
+
+                    if (cityGML instanceof CityModel) {
+                        try (CityJSONWriter writer = output.createCityJSONWriter(outputFile, removeDuplicateChildGeometries)) {
+                            CityModel cityModel = (CityModel) cityGML;
+
+                            // set builder for geometry, template and texture vertices
+                            writer.setVerticesBuilder(new DefaultVerticesBuilder().withSignificantDigits(verticesDigites));
+                            writer.setTemplatesVerticesBuilder(new DefaultVerticesBuilder().withSignificantDigits(templateDigites));
+                            writer.setTextureVerticesBuilder(new DefaultTextureVerticesBuilder().withSignificantDigits(textureVerticesDigites));
+
+                            // apply compression if requested
+                            if (compress)
+                                writer.setVerticesTransformer(new DefaultVerticesTransformer().withSignificantDigits(compressDigits));
+
+                            // pretty print
+                            if (prettyPrint)
+                                writer.setIndent("  ");
+
+                            // retrieve metadata
+                            writer.setMetadata(getMetadata(cityModel, log));
+
+                            // convert and write city model
+                            writer.write(cityModel);
+                            log.debug("Successfully converted CityGML file into CityJSON.");
+                        } catch (CityJSONWriteException e) {
+                            log.error("Failed to write CityJSON file.", e);
+                            return 1;
+                        }
+                    } else
+                        log.error("Failed to find a root CityModel element. Skipping CityGML file.");
+                } catch (CityGMLBuilderException | CityGMLReadException e) {
+                    log.error("Failed to read CityGML file.", e);
                     return 1;
                 }
-            } else
-                log.error("Failed to find a root CityModel element. Skipping CityGML file.");
+            }
+        } finally {
+            inputFiles.close();
         }
 
         return 0;
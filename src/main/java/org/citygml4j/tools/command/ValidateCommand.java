@@ -22,6 +22,8 @@
 package org.citygml4j.tools.command;
 
 import org.citygml4j.tools.CityGMLTools;
+import org.citygml4j.tools.command.validate.GeometryCommand;
+import org.citygml4j.tools.command.validate.LinksCommand;
 import org.citygml4j.tools.command.validate.XMLSchemaCommand;
 import org.citygml4j.tools.option.LoggingOptions;
 import picocli.CommandLine;
@@ -34,7 +36,9 @@ import picocli.CommandLine;
         showAtFileInUsageHelp = true,
         subcommands = {
                 CommandLine.HelpCommand.class,
-                XMLSchemaCommand.class
+                XMLSchemaCommand.class,
+                GeometryCommand.class,
+                LinksCommand.class
         })
 public class ValidateCommand implements CityGMLTool {
     @CommandLine.Mixin
@@ -0,0 +1,437 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.command.validate;
+
+import org.citygml4j.model.module.gml.GMLCoreModule;
+import org.citygml4j.tools.common.util.IdDictionary;
+import org.citygml4j.tools.option.InputOptions;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.validation.Schema;
+import javax.xml.validation.ValidatorHandler;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// validates the top-level feature members of a file as separate documents on worker threads.
+// the remaining envelope of the root element is validated on the calling thread. events are
+// recorded with their position in the file so that errors refer to the original line and column.
+// once an error handler throws an ErrorLimitException, reading the file stops.
+// since each chunk is validated on its own, gml:id values that occur in more than one chunk
+// are not detected by the validators and are reported as duplicate IDs while reading.
+class ChunkedXMLValidator {
+    private static final Set<String> MEMBERS = new HashSet<>(Arrays.asList(
+            "cityObjectMember", "featureMember", "featureMembers", "appearanceMember"));
+
+    private final Schema schema;
+    private final ExecutorService service;
+    private final int window;
+    private final ThreadLocal<ValidatorHandler> validators;
+    private final XMLInputFactory factory;
+    private final InputOptions input;
+
+    ChunkedXMLValidator(Schema schema, ExecutorService service, int window, InputOptions input) {
+        this.schema = schema;
+        this.input = input;
+        this.service = service;
+        this.window = window;
+        validators = ThreadLocal.withInitial(schema::newValidatorHandler);
+        factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    }
+
+    // error handlers are passed to the consumer in document order, followed by the one of the envelope
+    <T extends ErrorHandler> void validate(Path file, Function<ElementPath, T> errorHandlers, Consumer<T> results) throws IOException, SAXException, ExecutionException, InterruptedException {
+        String systemId = file.toUri().toString();
+        ElementPath envelopePath = new ElementPath();
+        T envelopeErrors = errorHandlers.apply(envelopePath);
+        ValidatorHandler envelope = schema.newValidatorHandler();
+        envelope.setErrorHandler(envelopeErrors);
+        envelopePath.setContentHandler(envelope);
+        ChunkLocator locator = new ChunkLocator(systemId);
+        envelopePath.setDocumentLocator(locator);
+
+        Deque<Future<T>> chunks = new ArrayDeque<>();
+        DocumentIds ids = new DocumentIds();
+        AtomicBoolean stop = new AtomicBoolean();
+        XMLStreamReader reader = null;
+
+        try (InputStream stream = input.createInputStream(file)) {
+            reader = factory.createXMLStreamReader(systemId, stream);
+            envelopePath.startDocument();
+
+            List<String[]> rootNamespaces = new ArrayList<>();
+            String rootName = null;
+            Chunk chunk = null;
+            int chunkNumber = 0;
+            int depth = 0;
+
+            while (reader.hasNext() && !stop.get()) {
+                int event = reader.next();
+                Event current;
+                Event duplicateId = null;
+
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 1) {
+                        rootName = getQName(reader.getPrefix(), reader.getLocalName());
+                        for (int i = 0; i < reader.getNamespaceCount(); i++)
+                            rootNamespaces.add(new String[]{nonNull(reader.getNamespacePrefix(i)), nonNull(reader.getNamespaceURI(i))});
+                    } else if (depth == 2 && MEMBERS.contains(reader.getLocalName())) {
+                        chunk = new Chunk(systemId, rootNamespaces);
+                        chunkNumber++;
+                    }
+
+                    current = new StartElement(reader);
+                    String id = reader.getAttributeValue(GMLCoreModule.v3_1_1.getNamespaceURI(), "id");
+                    if (id != null && ids.isDuplicate(id, chunk != null ? chunkNumber : 0))
+                        duplicateId = new DuplicateId(reader, systemId, id);
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    current = new EndElement(reader);
+                    depth--;
+                } else if (event == XMLStreamConstants.CHARACTERS
+                        || event == XMLStreamConstants.CDATA
+                        || event == XMLStreamConstants.SPACE)
+                    current = new Characters(reader);
+                else
+                    continue;
+
+                if (chunk != null) {
+                    chunk.events.add(current);
+                    if (duplicateId != null)
+                        chunk.events.add(duplicateId);
+
+                    if (event == XMLStreamConstants.END_ELEMENT && depth == 1) {
+                        ElementPath path = new ElementPath(rootName);
+                        chunks.add(submit(chunk, path, errorHandlers.apply(path), stop));
+                        chunk = null;
+
+                        input.addFeatures(stream, 1);
+
+                        while (!chunks.isEmpty() && (chunks.size() > window || chunks.peek().isDone()))
+                            results.accept(chunks.poll().get());
+                    }
+                } else {
+                    try {
+                        locator.setPosition(current);
+                        current.send(envelopePath, envelopeErrors);
+                        if (duplicateId != null)
+                            duplicateId.send(envelopePath, envelopeErrors);
+                    } catch (ErrorLimitException e) {
+                        stop.set(true);
+                    }
+                }
+            }
+
+            if (!stop.get())
+                envelopePath.endDocument();
+        } catch (XMLStreamException e) {
+            // stax parsers prefix the message with the location
+            String message = e.getMessage();
+            int index = message != null ? message.indexOf("Message: ") : -1;
+            if (index != -1)
+                message = message.substring(index + 9);
+
+            Location location = e.getLocation();
+            SAXParseException exception = new SAXParseException(message, null, systemId,
+                    location != null ? location.getLineNumber() : -1,
+                    location != null ? location.getColumnNumber() : -1, e);
+
+            while (!chunks.isEmpty())
+                results.accept(chunks.poll().get());
+
+            envelopeErrors.fatalError(exception);
+            results.accept(envelopeErrors);
+            throw exception;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    //
+                }
+            }
+        }
+
+        while (!chunks.isEmpty())
+            results.accept(chunks.poll().get());
+
+        results.accept(envelopeErrors);
+    }
+
+    private <T extends ErrorHandler> Future<T> submit(Chunk chunk, ElementPath path, T errorHandler, AtomicBoolean stop) throws SAXException {
+        if (service != null)
+            return service.submit(() -> validate(chunk, path, errorHandler, stop));
+        else
+            return CompletableFuture.completedFuture(validate(chunk, path, errorHandler, stop));
+    }
+
+    private <T extends ErrorHandler> T validate(Chunk chunk, ElementPath path, T errorHandler, AtomicBoolean stop) throws SAXException {
+        try {
+            ValidatorHandler validator = validators.get();
+            validator.setErrorHandler(errorHandler);
+            path.setContentHandler(validator);
+            chunk.send(path, errorHandler);
+            return errorHandler;
+        } catch (ErrorLimitException e) {
+            // the validator has been left in the middle of a document
+            validators.remove();
+            stop.set(true);
+            return errorHandler;
+        }
+    }
+
+    private static String nonNull(String value) {
+        return value != null ? value : "";
+    }
+
+    private static String getQName(String prefix, String localName) {
+        return prefix != null && !prefix.isEmpty() ? prefix + ":" + localName : localName;
+    }
+
+    private static class Chunk {
+        private final String systemId;
+        private final List<String[]> namespaces;
+        private final List<Event> events = new ArrayList<>();
+
+        Chunk(String systemId, List<String[]> namespaces) {
+            this.systemId = systemId;
+            this.namespaces = namespaces;
+        }
+
+        void send(ContentHandler handler, ErrorHandler errorHandler) throws SAXException {
+            ChunkLocator locator = new ChunkLocator(systemId);
+            handler.setDocumentLocator(locator);
+            handler.startDocument();
+
+            // the chunk inherits the namespace declarations of the root element
+            for (String[] namespace : namespaces)
+                handler.startPrefixMapping(namespace[0], namespace[1]);
+
+            for (Event event : events) {
+                locator.setPosition(event);
+                event.send(handler, errorHandler);
+            }
+
+            for (String[] namespace : namespaces)
+                handler.endPrefixMapping(namespace[0]);
+
+            handler.endDocument();
+        }
+    }
+
+    private static class ChunkLocator implements Locator {
+        private final String systemId;
+        private int line;
+        private int column;
+
+        ChunkLocator(String systemId) {
+            this.systemId = systemId;
+        }
+
+        void setPosition(Event event) {
+            line = event.line;
+            column = event.column;
+        }
+
+        @Override
+        public String getPublicId() {
+            return null;
+        }
+
+        @Override
+        public String getSystemId() {
+            return systemId;
+        }
+
+        @Override
+        public int getLineNumber() {
+            return line;
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return column;
+        }
+    }
+
+    private static abstract class Event {
+        final int line;
+        final int column;
+
+        Event(XMLStreamReader reader) {
+            Location location = reader.getLocation();
+            line = location.getLineNumber();
+            column = location.getColumnNumber();
+        }
+
+        abstract void send(ContentHandler handler) throws SAXException;
+
+        void send(ContentHandler handler, ErrorHandler errorHandler) throws SAXException {
+            send(handler);
+        }
+    }
+
+    private static class StartElement extends Event {
+        private final String uri;
+        private final String localName;
+        private final String qName;
+        private final AttributesImpl attributes = new AttributesImpl();
+        private final String[] namespaces;
+
+        StartElement(XMLStreamReader reader) {
+            super(reader);
+            uri = nonNull(reader.getNamespaceURI());
+            localName = reader.getLocalName();
+            qName = getQName(reader.getPrefix(), localName);
+
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                attributes.addAttribute(nonNull(reader.getAttributeNamespace(i)),
+                        reader.getAttributeLocalName(i),
+                        getQName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                        reader.getAttributeType(i),
+                        reader.getAttributeValue(i));
+            }
+
+            namespaces = new String[reader.getNamespaceCount() * 2];
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                namespaces[i * 2] = nonNull(reader.getNamespacePrefix(i));
+                namespaces[i * 2 + 1] = nonNull(reader.getNamespaceURI(i));
+            }
+        }
+
+        @Override
+        void send(ContentHandler handler) throws SAXException {
+            for (int i = 0; i < namespaces.length; i += 2)
+                handler.startPrefixMapping(namespaces[i], namespaces[i + 1]);
+
+            handler.startElement(uri, localName, qName, attributes);
+        }
+    }
+
+    private static class EndElement extends Event {
+        private final String uri;
+        private final String localName;
+        private final String qName;
+        private final String[] prefixes;
+
+        EndElement(XMLStreamReader reader) {
+            super(reader);
+            uri = nonNull(reader.getNamespaceURI());
+            localName = reader.getLocalName();
+            qName = getQName(reader.getPrefix(), localName);
+
+            prefixes = new String[reader.getNamespaceCount()];
+            for (int i = 0; i < prefixes.length; i++)
+                prefixes[i] = nonNull(reader.getNamespacePrefix(i));
+        }
+
+        @Override
+        void send(ContentHandler handler) throws SAXException {
+            handler.endElement(uri, localName, qName);
+            for (String prefix : prefixes)
+                handler.endPrefixMapping(prefix);
+        }
+    }
+
+    private static class DuplicateId extends Event {
+        private final String systemId;
+        private final String id;
+
+        DuplicateId(XMLStreamReader reader, String systemId, String id) {
+            super(reader);
+            this.systemId = systemId;
+            this.id = id;
+        }
+
+        @Override
+        void send(ContentHandler handler) {
+        }
+
+        @Override
+        void send(ContentHandler handler, ErrorHandler errorHandler) throws SAXException {
+            errorHandler.error(new SAXParseException("cvc-id.2: There are multiple occurrences of ID value '" + id + "'.",
+                    null, systemId, line, column));
+        }
+    }
+
+    // remembers the chunk in which a gml:id was seen last, the envelope being chunk 0. duplicates within
+    // the same chunk are left to the validator so that each duplicate is reported once
+    private static class DocumentIds {
+        private final IdDictionary ids = new IdDictionary();
+        private int[] chunks = new int[1024];
+
+        boolean isDuplicate(String id, int chunk) {
+            int size = ids.size();
+            int index = ids.getOrAdd(id);
+            if (index == size) {
+                if (index == chunks.length)
+                    chunks = Arrays.copyOf(chunks, index + (index >> 1));
+
+                chunks[index] = chunk;
+                return false;
+            }
+
+            boolean isDuplicate = chunks[index] != chunk;
+            chunks[index] = chunk;
+            return isDuplicate;
+        }
+    }
+
+    private static class Characters extends Event {
+        private final char[] text;
+
+        Characters(XMLStreamReader reader) {
+            super(reader);
+            text = Arrays.copyOfRange(reader.getTextCharacters(), reader.getTextStart(), reader.getTextStart() + reader.getTextLength());
+        }
+
+        @Override
+        void send(ContentHandler handler) throws SAXException {
+            handler.characters(text, 0, text.length);
+        }
+    }
+}
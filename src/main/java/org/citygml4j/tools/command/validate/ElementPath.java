@@ -0,0 +1,70 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.command.validate;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+
+// keeps track of the path of the element currently being validated
+class ElementPath extends XMLFilterImpl {
+    private final Deque<String> elements = new ArrayDeque<>();
+    private boolean members;
+    private int features;
+
+    ElementPath(String... parents) {
+        Collections.addAll(elements, parents);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        elements.addLast(qName);
+        if (elements.size() == 2) {
+            members = localName.endsWith("Members");
+            if (localName.endsWith("Member"))
+                features++;
+        } else if (elements.size() == 3 && members)
+            features++;
+
+        super.startElement(uri, localName, qName, atts);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        super.endElement(uri, localName, qName);
+        elements.pollLast();
+    }
+
+    // top-level features of the document
+    int getFeatures() {
+        return features;
+    }
+
+    @Override
+    public String toString() {
+        return "/" + String.join("/", elements);
+    }
+}
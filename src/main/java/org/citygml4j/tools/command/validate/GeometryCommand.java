@@ -0,0 +1,199 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.command.validate;
+
+import org.citygml4j.builder.jaxb.CityGMLBuilderException;
+import org.citygml4j.model.citygml.CityGML;
+import org.citygml4j.model.citygml.core.AbstractCityObject;
+import org.citygml4j.tools.CityGMLTools;
+import org.citygml4j.tools.command.CityGMLTool;
+import org.citygml4j.tools.common.log.Logger;
+import org.citygml4j.tools.geometryvalidator.GeometryError;
+import org.citygml4j.tools.geometryvalidator.GeometryValidator;
+import org.citygml4j.tools.geometryvalidator.ValidationResult;
+import org.citygml4j.tools.option.InputOptions;
+import org.citygml4j.tools.option.LoggingOptions;
+import org.citygml4j.tools.util.Constants;
+import org.citygml4j.tools.util.InputFiles;
+import org.citygml4j.tools.util.Util;
+import org.citygml4j.xml.io.reader.CityGMLReadException;
+import org.citygml4j.xml.io.reader.CityGMLReader;
+import org.citygml4j.xml.io.reader.MissingADESchemaException;
+import org.citygml4j.xml.io.reader.UnmarshalException;
+import org.citygml4j.xml.io.reader.XMLChunk;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+@CommandLine.Command(name = "geometry",
+        description = "Performs geometric validation of polygons and solids.",
+        versionProvider = CityGMLTools.class,
+        mixinStandardHelpOptions = true,
+        showAtFileInUsageHelp = true)
+public class GeometryCommand implements CityGMLTool {
+    @CommandLine.Option(names = {"-s", "--suppress-validation-errors"}, description = "Do not show validation errors for a concise report.")
+    private boolean suppressValidationErrors;
+
+    @CommandLine.Option(names = "--tolerance", paramLabel = "<distance>", description = "Distance tolerance for duplicate points, ring closure and shared vertices of solids (default: ${DEFAULT-VALUE}).")
+    private double tolerance = 0.001;
+
+    @CommandLine.Option(names = "--planarity-tolerance", paramLabel = "<distance>", description = "Maximum distance of a polygon point to the polygon plane (default: ${DEFAULT-VALUE}).")
+    private double planarityTolerance = 0.01;
+
+    @CommandLine.Option(names = "--threads", paramLabel = "<threads>", description = "Number of threads for validating city objects (default: ${DEFAULT-VALUE}).")
+    private int threads = 1;
+
+    @CommandLine.Mixin
+    private InputOptions input;
+
+    @CommandLine.Mixin
+    private LoggingOptions logging;
+
+    @Override
+    public Integer call() throws Exception {
+        Logger log = Logger.getInstance();
+
+        if (threads < 1) {
+            log.error("The number of threads must be a positive integer.");
+            return 1;
+        }
+
+        if (tolerance <= 0 || planarityTolerance <= 0) {
+            log.error("The tolerances must be positive numbers.");
+            return 1;
+        }
+
+        log.info("Performing geometric validation of polygons and solids.");
+
+        log.debug("Searching for CityGML input files.");
+        InputFiles inputFiles;
+        try {
+            inputFiles = Util.listFiles(input.getFile(), Constants.CITYGML_FILES);
+        } catch (IOException e) {
+            log.warn("Failed to find file(s) at '" + input.getFile() + "'.");
+            return 0;
+        }
+
+        GeometryValidator validator = new GeometryValidator()
+                .withTolerance(tolerance)
+                .withPlanarityTolerance(planarityTolerance);
+
+        // only city objects are unmarshalled, all other features are skipped
+        Predicate<XMLChunk> objectFilter = input.createObjectFilter(AbstractCityObject.class);
+        ExecutorService service = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        int invalid = 0;
+
+        try {
+            for (Path inputFile : inputFiles) {
+                log.info(inputFiles.getPosition() + " Validating file '" + inputFile.toAbsolutePath() + "'.");
+
+                Deque<Future<ValidationResult>> results = new ArrayDeque<>();
+                FileResult fileResult = new FileResult();
+
+                try (CityGMLReader reader = input.createCityGMLReader(inputFile, input.createSkipFilter("CityModel", "Appearance"))) {
+                    while (reader.hasNext()) {
+                        XMLChunk chunk = reader.nextChunk();
+                        if (!objectFilter.test(chunk))
+                            continue;
+
+                        if (service != null) {
+                            // results are reported in input order
+                            results.add(service.submit(() -> validate(chunk, validator)));
+                            while (!results.isEmpty() && (results.size() > threads * 16 || results.peek().isDone()))
+                                fileResult.add(results.poll().get());
+                        } else
+                            fileResult.add(validate(chunk, validator));
+                    }
+
+                    while (!results.isEmpty())
+                        fileResult.add(results.poll().get());
+                }
+
+                log.debug("Validated " + fileResult.polygons + " polygon(s) and " + fileResult.solids + " solid(s).");
+
+                if (fileResult.errors == 0)
+                    log.info("The file is valid.");
+                else {
+                    log.warn("The file is invalid. Found " + fileResult.errors + " error(s).");
+                    invalid++;
+                }
+            }
+        } catch (CityGMLBuilderException | CityGMLReadException | UnmarshalException | MissingADESchemaException e) {
+            log.error("Failed to read city objects.", e);
+            return 1;
+        } catch (ExecutionException e) {
+            log.error("Failed to validate city objects.", e.getCause());
+            return 1;
+        } finally {
+            inputFiles.close();
+            if (service != null)
+                service.shutdownNow();
+        }
+
+        if (invalid == 0) {
+            log.info("Validation complete. All files are valid.");
+            return 0;
+        } else {
+            log.warn("Validation complete. Found " + invalid + " invalid file(s).");
+            return 3;
+        }
+    }
+
+    private ValidationResult validate(XMLChunk chunk, GeometryValidator validator) throws UnmarshalException, MissingADESchemaException {
+        CityGML cityGML = chunk.unmarshal();
+        return cityGML instanceof AbstractCityObject ?
+                validator.validate((AbstractCityObject) cityGML) :
+                null;
+    }
+
+    private class FileResult {
+        private final Logger log = Logger.getInstance();
+        private int polygons;
+        private int solids;
+        private int errors;
+
+        void add(ValidationResult result) {
+            if (result == null)
+                return;
+
+            polygons += result.getPolygons();
+            solids += result.getSolids();
+            errors += result.getErrors().size();
+
+            if (!suppressValidationErrors) {
+                for (GeometryError error : result.getErrors()) {
+                    log.error("Invalid geometry at [" + error.getCityObjectId()
+                            + (error.getGeometryId() != null ? ", " + error.getGeometryId() : "") + "]: "
+                            + error.getType() + ": " + error.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.command.validate;
+
+import org.citygml4j.model.module.Modules;
+import org.citygml4j.model.module.citygml.CityGMLModule;
+import org.citygml4j.model.module.citygml.CityGMLModuleType;
+import org.citygml4j.model.module.gml.GMLCoreModule;
+import org.citygml4j.model.module.gml.XLinkModule;
+import org.citygml4j.tools.common.util.IdDictionary;
+import org.citygml4j.tools.option.InputOptions;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// collects the gml:ids and local references of a file in a single streaming pass.
+// ids and references are stored in IdDictionary instances so that no String object is kept per entry.
+// both are held on the heap for the whole file; nothing is spilled to disk.
+class LinkChecker {
+    private static final String GML = GMLCoreModule.v3_1_1.getNamespaceURI();
+    private static final String XLINK = XLinkModule.v3_1_1.getNamespaceURI();
+    private static final int MAX_MESSAGES = 1000;
+
+    private final XMLInputFactory factory;
+    private final InputOptions input;
+
+    LinkChecker(InputOptions input) {
+        this.input = input;
+        factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    }
+
+    Result check(Path file) throws IOException, XMLStreamException {
+        Result result = new Result();
+        IdDictionary ids = new IdDictionary();
+        IdDictionary references = new IdDictionary();
+        Positions idPositions = new Positions();
+        Positions referencePositions = new Positions();
+        XMLStreamReader reader = null;
+
+        try (InputStream stream = input.createInputStream(file)) {
+            reader = input.getEncoding() == null ?
+                    factory.createXMLStreamReader(file.toUri().toString(), stream) :
+                    factory.createXMLStreamReader(stream, input.getEncoding());
+
+            int depth = 0;
+            int features = 0;
+            boolean members = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT)
+                    depth--;
+
+                if (event != XMLStreamConstants.START_ELEMENT)
+                    continue;
+
+                // top-level features are counted like in the progress reports
+                depth++;
+                if (depth == 2) {
+                    members = reader.getLocalName().endsWith("Members");
+                    if (reader.getLocalName().endsWith("Member"))
+                        features++;
+                } else if (depth == 3 && members)
+                    features++;
+
+                Location location = reader.getLocation();
+                String id = reader.getAttributeValue(GML, "id");
+                if (id != null) {
+                    int size = ids.size();
+                    int index = ids.getOrAdd(id);
+                    if (index == size)
+                        idPositions.add(location);
+                    else {
+                        result.error(location, "Duplicate gml:id '" + id + "'. The gml:id is already used at ["
+                                + idPositions.getLine(index) + ", " + idPositions.getColumn(index) + "].");
+                    }
+                }
+
+                String href = reader.getAttributeValue(XLINK, "href");
+                if (href == null && isTextureTarget(reader)) {
+                    // parameterized textures use a uri attribute whereas the other surface data use the element value
+                    href = reader.getAttributeValue(null, "uri");
+                    if (href == null) {
+                        href = reader.getElementText();
+                        depth--;
+                    }
+                }
+
+                if (href != null) {
+                    href = href.trim();
+                    if (href.startsWith("#")) {
+                        int size = references.size();
+                        int index = references.getOrAdd(href.substring(1));
+                        if (index == size)
+                            referencePositions.add(location);
+                        else
+                            referencePositions.increment(index);
+
+                        result.references++;
+                    } else
+                        result.external++;
+                }
+            }
+
+            input.addFeatures(stream, features);
+        } finally {
+            if (reader != null)
+                reader.close();
+        }
+
+        result.ids = ids.size();
+        for (int index = 0; index < references.size(); index++) {
+            String id = references.get(index);
+            if (!ids.contains(id)) {
+                int count = referencePositions.getCount(index);
+                result.error(referencePositions.getLine(index), referencePositions.getColumn(index),
+                        "Unresolved reference '#" + id + "'. No object with this gml:id exists in the file"
+                                + (count > 1 ? " (referenced " + count + " times)." : "."));
+            }
+        }
+
+        return result;
+    }
+
+    private boolean isTextureTarget(XMLStreamReader reader) {
+        if (!"target".equals(reader.getLocalName()))
+            return false;
+
+        CityGMLModule module = Modules.getCityGMLModule(reader.getNamespaceURI());
+        return module != null && module.getType() == CityGMLModuleType.APPEARANCE;
+    }
+
+    static class Result {
+        private final List<String> messages = new ArrayList<>();
+        private int ids;
+        private int references;
+        private int external;
+        private int errors;
+
+        List<String> getMessages() {
+            return messages;
+        }
+
+        int getIds() {
+            return ids;
+        }
+
+        int getReferences() {
+            return references;
+        }
+
+        int getExternal() {
+            return external;
+        }
+
+        int getErrors() {
+            return errors;
+        }
+
+        int getOmitted() {
+            return errors - messages.size();
+        }
+
+        private void error(Location location, String message) {
+            error(location.getLineNumber(), location.getColumnNumber(), message);
+        }
+
+        private void error(int line, int column, String message) {
+            errors++;
+            if (messages.size() < MAX_MESSAGES)
+                messages.add("Invalid link at [" + line + ", " + column + "]: " + message);
+        }
+    }
+
+    private static class Positions {
+        private int[] lines = new int[1024];
+        private int[] columns = new int[1024];
+        private int[] counts = new int[1024];
+        private int size;
+
+        void add(Location location) {
+            if (size == lines.length) {
+                int length = lines.length + (lines.length >> 1);
+                lines = Arrays.copyOf(lines, length);
+                columns = Arrays.copyOf(columns, length);
+                counts = Arrays.copyOf(counts, length);
+            }
+
+            lines[size] = location.getLineNumber();
+            columns[size] = location.getColumnNumber();
+            counts[size++] = 1;
+        }
+
+        void increment(int index) {
+            counts[index]++;
+        }
+
+        int getLine(int index) {
+            return lines[index];
+        }
+
+        int getColumn(int index) {
+            return columns[index];
+        }
+
+        int getCount(int index) {
+            return counts[index];
+        }
+    }
+}
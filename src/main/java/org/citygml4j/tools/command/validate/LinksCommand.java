@@ -0,0 +1,169 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.command.validate;
+
+import org.citygml4j.tools.CityGMLTools;
+import org.citygml4j.tools.command.CityGMLTool;
+import org.citygml4j.tools.common.log.Logger;
+import org.citygml4j.tools.option.InputOptions;
+import org.citygml4j.tools.option.LoggingOptions;
+import org.citygml4j.tools.util.Constants;
+import org.citygml4j.tools.util.InputFiles;
+import org.citygml4j.tools.util.Util;
+import picocli.CommandLine;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@CommandLine.Command(name = "links",
+        description = {"Checks the uniqueness of gml:ids and the integrity of local XLink references.",
+                "Each file is checked on its own. The gml:ids and references of a file are held in memory, " +
+                        "so the maximum heap size limits the size of the files that can be checked."},
+        versionProvider = CityGMLTools.class,
+        mixinStandardHelpOptions = true,
+        showAtFileInUsageHelp = true)
+public class LinksCommand implements CityGMLTool {
+    @CommandLine.Option(names = {"-s", "--suppress-validation-errors"}, description = "Do not show validation errors for a concise report.")
+    private boolean suppressValidationErrors;
+
+    @CommandLine.Option(names = "--threads", paramLabel = "<threads>", description = "Number of threads for checking files. Each thread holds the gml:ids of one file in memory (default: ${DEFAULT-VALUE}).")
+    private int threads = 1;
+
+    @CommandLine.Mixin
+    private InputOptions input;
+
+    @CommandLine.Mixin
+    private LoggingOptions logging;
+
+    @Override
+    public Integer call() throws Exception {
+        Logger log = Logger.getInstance();
+
+        if (threads < 1) {
+            log.error("The number of threads must be a positive integer.");
+            return 1;
+        }
+
+        log.info("Checking gml:ids and XLink references.");
+
+        log.debug("Searching for CityGML input files.");
+        InputFiles inputFiles;
+        try {
+            inputFiles = Util.listFiles(input.getFile(), Constants.CITYGML_FILES);
+        } catch (IOException e) {
+            log.warn("Failed to find file(s) at '" + input.getFile() + "'.");
+            return 0;
+        }
+
+        LinkChecker checker = new LinkChecker(input);
+        ExecutorService service = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        Deque<Future<FileResult>> results = new ArrayDeque<>();
+        int invalid = 0;
+
+        try {
+            for (Path inputFile : inputFiles) {
+                int index = inputFiles.getIndex();
+
+                if (service != null) {
+                    // files are checked in parallel and reported in input order
+                    results.add(service.submit(() -> check(inputFile, index, inputFiles, checker)));
+                    while (!results.isEmpty() && (results.size() > threads * 4 || results.peek().isDone())) {
+                        if (!report(results.poll().get()))
+                            invalid++;
+                    }
+                } else if (!report(check(inputFile, index, inputFiles, checker)))
+                    invalid++;
+            }
+
+            while (!results.isEmpty()) {
+                if (!report(results.poll().get()))
+                    invalid++;
+            }
+        } catch (IOException | XMLStreamException e) {
+            log.error("Failed to read CityGML file.", e);
+            return 1;
+        } catch (ExecutionException e) {
+            log.error("Failed to read CityGML file.", e.getCause());
+            return 1;
+        } finally {
+            inputFiles.close();
+            if (service != null)
+                service.shutdownNow();
+        }
+
+        if (invalid == 0) {
+            log.info("Validation complete. All files are valid.");
+            return 0;
+        } else {
+            log.warn("Validation complete. Found " + invalid + " invalid file(s).");
+            return 3;
+        }
+    }
+
+    private FileResult check(Path inputFile, int index, InputFiles inputFiles, LinkChecker checker) throws IOException, XMLStreamException {
+        return new FileResult(inputFile, index, inputFiles, checker.check(inputFile));
+    }
+
+    private boolean report(FileResult fileResult) {
+        Logger log = Logger.getInstance();
+        LinkChecker.Result result = fileResult.result;
+
+        log.info(fileResult.inputFiles.getPosition(fileResult.index) + " Checking file '" + fileResult.inputFile.toAbsolutePath() + "'.");
+        log.debug("Found " + result.getIds() + " gml:id(s), " + result.getReferences() + " local reference(s) and "
+                + result.getExternal() + " external reference(s).");
+
+        if (!suppressValidationErrors) {
+            result.getMessages().forEach(log::error);
+            if (result.getOmitted() > 0)
+                log.warn("Omitted " + result.getOmitted() + " further error(s).");
+        }
+
+        if (result.getErrors() == 0) {
+            log.info("The file is valid.");
+            return true;
+        } else {
+            log.warn("The file is invalid. Found " + result.getErrors() + " error(s).");
+            return false;
+        }
+    }
+
+    private static class FileResult {
+        private final Path inputFile;
+        private final int index;
+        private final InputFiles inputFiles;
+        private final LinkChecker.Result result;
+
+        FileResult(Path inputFile, int index, InputFiles inputFiles, LinkChecker.Result result) {
+            this.inputFile = inputFile;
+            this.index = index;
+            this.inputFiles = inputFiles;
+            this.result = result;
+        }
+    }
+}
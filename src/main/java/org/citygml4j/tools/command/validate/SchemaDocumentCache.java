@@ -0,0 +1,287 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.command.validate;
+
+import org.citygml4j.tools.common.log.Logger;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// keeps a local copy of every schema document fetched over http(s) so that repeated
+// validation runs neither hit the network nor depend on the availability of remote servers.
+// the cache mirrors the URL structure so that relative references between cached documents
+// still resolve to the cache directory.
+class SchemaDocumentCache implements EntityResolver, LSResourceResolver {
+    private static final Set<String> REFERENCES = new HashSet<>(Arrays.asList("include", "import", "redefine"));
+
+    private final Logger log = Logger.getInstance();
+    private final Path directory;
+
+    SchemaDocumentCache(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory).toAbsolutePath().normalize();
+    }
+
+    String getLocation(String location) throws IOException {
+        Path file = getFile(location);
+        return file != null ? file.toUri().toString() : location;
+    }
+
+    @Override
+    public InputSource resolveEntity(String publicId, String systemId) throws IOException {
+        Path file = systemId != null ? getFile(systemId) : null;
+        if (file == null)
+            return null;
+
+        InputSource inputSource = new InputSource(Files.newInputStream(file));
+        inputSource.setPublicId(publicId);
+        inputSource.setSystemId(file.toUri().toString());
+        return inputSource;
+    }
+
+    @Override
+    public LSInput resolveResource(String type, String namespaceURI, String publicId, String systemId, String baseURI) {
+        if (systemId == null)
+            return null;
+
+        try {
+            String location = baseURI != null ? URI.create(baseURI).resolve(systemId).toString() : systemId;
+            Path file = getFile(location);
+            return file != null ?
+                    new CachedInput(publicId, file.toUri().toString(), baseURI, Files.newInputStream(file)) :
+                    null;
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug("Failed to resolve schema document '" + systemId + "' from cache: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Path getFile(String location) throws IOException {
+        URI uri;
+        try {
+            uri = URI.create(location).normalize();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        String scheme = uri.getScheme();
+        Path file;
+        String remote;
+
+        if (("http".equals(scheme) || "https".equals(scheme)) && uri.getRawAuthority() != null) {
+            file = directory.resolve(scheme)
+                    .resolve(URLEncoder.encode(uri.getRawAuthority(), StandardCharsets.UTF_8.name()));
+            if (uri.getRawPath() != null) {
+                for (String segment : uri.getRawPath().split("/")) {
+                    if (!segment.isEmpty())
+                        file = file.resolve(segment);
+                }
+            }
+
+            remote = location;
+        } else if ("file".equals(scheme)) {
+            file = Paths.get(uri).normalize();
+            if (!file.startsWith(directory))
+                return null;
+            else if (Files.exists(file))
+                return file;
+
+            // a relative reference from a cached document to a document not cached yet
+            Path relative = directory.relativize(file);
+            if (relative.getNameCount() < 3)
+                return null;
+
+            StringBuilder builder = new StringBuilder(relative.getName(0).toString())
+                    .append("://")
+                    .append(URLDecoder.decode(relative.getName(1).toString(), StandardCharsets.UTF_8.name()));
+            for (int i = 2; i < relative.getNameCount(); i++)
+                builder.append("/").append(relative.getName(i));
+
+            remote = builder.toString();
+        } else
+            return null;
+
+        file = file.normalize();
+        if (!file.startsWith(directory) || file.equals(directory))
+            return null;
+
+        if (!Files.exists(file)) {
+            log.debug("Downloading schema document '" + remote + "' to cache.");
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), "tmp-", ".xsd");
+            try (InputStream stream = new URL(remote).openStream()) {
+                Files.copy(stream, tmp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+
+            // relative references are not passed to the entity resolver, so they are cached right away
+            for (String reference : getRelativeReferences(file))
+                getFile(URI.create(remote).resolve(reference).toString());
+        }
+
+        return file;
+    }
+
+    private List<String> getRelativeReferences(Path file) throws IOException {
+        List<String> references = new ArrayList<>();
+        XMLStreamReader reader = null;
+        try (InputStream stream = Files.newInputStream(file)) {
+            reader = XMLInputFactory.newInstance().createXMLStreamReader(stream);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT
+                        && XMLConstants.W3C_XML_SCHEMA_NS_URI.equals(reader.getNamespaceURI())
+                        && REFERENCES.contains(reader.getLocalName())) {
+                    String schemaLocation = reader.getAttributeValue(null, "schemaLocation");
+                    if (schemaLocation != null && URI.create(schemaLocation).getScheme() == null)
+                        references.add(schemaLocation);
+                }
+            }
+        } catch (XMLStreamException | IllegalArgumentException e) {
+            log.debug("Failed to parse schema references of '" + file + "': " + e.getMessage());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    //
+                }
+            }
+        }
+
+        return references;
+    }
+
+    private static class CachedInput implements LSInput {
+        private String publicId;
+        private String systemId;
+        private String baseURI;
+        private InputStream byteStream;
+
+        CachedInput(String publicId, String systemId, String baseURI, InputStream byteStream) {
+            this.publicId = publicId;
+            this.systemId = systemId;
+            this.baseURI = baseURI;
+            this.byteStream = byteStream;
+        }
+
+        @Override
+        public Reader getCharacterStream() {
+            return null;
+        }
+
+        @Override
+        public void setCharacterStream(Reader characterStream) {
+        }
+
+        @Override
+        public InputStream getByteStream() {
+            return byteStream;
+        }
+
+        @Override
+        public void setByteStream(InputStream byteStream) {
+            this.byteStream = byteStream;
+        }
+
+        @Override
+        public String getStringData() {
+            return null;
+        }
+
+        @Override
+        public void setStringData(String stringData) {
+        }
+
+        @Override
+        public String getSystemId() {
+            return systemId;
+        }
+
+        @Override
+        public void setSystemId(String systemId) {
+            this.systemId = systemId;
+        }
+
+        @Override
+        public String getPublicId() {
+            return publicId;
+        }
+
+        @Override
+        public void setPublicId(String publicId) {
+            this.publicId = publicId;
+        }
+
+        @Override
+        public String getBaseURI() {
+            return baseURI;
+        }
+
+        @Override
+        public void setBaseURI(String baseURI) {
+            this.baseURI = baseURI;
+        }
+
+        @Override
+        public String getEncoding() {
+            return null;
+        }
+
+        @Override
+        public void setEncoding(String encoding) {
+        }
+
+        @Override
+        public boolean getCertifiedText() {
+            return false;
+        }
+
+        @Override
+        public void setCertifiedText(boolean certifiedText) {
+        }
+    }
+}
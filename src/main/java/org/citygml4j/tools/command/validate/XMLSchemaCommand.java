@@ -21,6 +21,7 @@
 
 package org.citygml4j.tools.command.validate;
 
+import com.google.gson.stream.JsonWriter;
 import org.citygml4j.builder.jaxb.CityGMLBuilder;
 import org.citygml4j.builder.jaxb.CityGMLBuilderException;
 import org.citygml4j.tools.CityGMLTools;
@@ -29,23 +30,42 @@ import org.citygml4j.tools.common.log.LogLevel;
 import org.citygml4j.tools.common.log.Logger;
 import org.citygml4j.tools.option.InputOptions;
 import org.citygml4j.tools.option.LoggingOptions;
+import org.citygml4j.tools.util.Constants;
+import org.citygml4j.tools.util.InputFiles;
 import org.citygml4j.tools.util.ObjectRegistry;
 import org.citygml4j.tools.util.Util;
 import org.citygml4j.xml.schema.SchemaHandler;
 import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 import picocli.CommandLine;
 
 import javax.xml.XMLConstants;
-import javax.xml.transform.stream.StreamSource;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.sax.SAXSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @CommandLine.Command(name = "xml",
         description = "Performs XML validation against the CityGML schemas.",
@@ -59,33 +79,87 @@ public class XMLSchemaCommand implements CityGMLTool {
     @CommandLine.Option(names = "--schema", paramLabel = "<URI>", description = "Load additional XML schema from a file or URL. Note that the official CityGML schemas cannot be replaced.")
     private List<String> schemas;
 
+    @CommandLine.Option(names = "--schema-cache", paramLabel = "<dir>", description = "Keep local copies of remote XML schemas in this directory and reuse them in later runs.")
+    private Path schemaCache;
+
+    @CommandLine.Option(names = "--threads", paramLabel = "<threads>", description = "Number of threads for validating files (default: ${DEFAULT-VALUE}).")
+    private int threads = 1;
+
+    @CommandLine.Option(names = "--chunk-files", description = "Split each file into its top-level feature members and validate the members in parallel instead of whole files. Duplicate gml:ids across members are still reported. Useful for large files.")
+    private boolean chunkFiles;
+
+    @CommandLine.Option(names = "--max-errors", paramLabel = "<n>", description = "Stop validating a file after this number of errors.")
+    private Integer maxErrors;
+
+    @CommandLine.Option(names = "--max-total-errors", paramLabel = "<n>", description = "Stop the validation after this number of errors in total.")
+    private Integer maxTotalErrors;
+
+    @CommandLine.Option(names = "--all-errors", description = "Log every validation error instead of only the first one per message template and element path.")
+    private boolean allErrors;
+
+    @CommandLine.Option(names = "--report", paramLabel = "<file>", description = "Write a JSON report of the validation results to this file.")
+    private Path reportFile;
+
     @CommandLine.Mixin
     private InputOptions input;
 
     @CommandLine.Mixin
     private LoggingOptions logging;
 
+    private static final Pattern TEMPLATE = Pattern.compile("^([\\w.-]+): ");
+    private final AtomicInteger totalErrors = new AtomicInteger();
+    private JsonWriter report;
+
+    // parser factories are not thread-safe and are therefore created per validating thread
+    private final ThreadLocal<SAXParserFactory> parserFactories = ThreadLocal.withInitial(() -> {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory;
+    });
+
     @Override
     public Integer call() throws Exception {
         Logger log = Logger.getInstance();
         CityGMLBuilder cityGMLBuilder = ObjectRegistry.getInstance().get(CityGMLBuilder.class);
 
+        if (threads < 1) {
+            log.error("The number of threads must be a positive integer.");
+            return 1;
+        }
+
+        if ((maxErrors != null && maxErrors < 1) || (maxTotalErrors != null && maxTotalErrors < 1)) {
+            log.error("The maximum number of errors must be a positive integer.");
+            return 1;
+        }
+
         log.info("Performing XML validation against the official CityGML schemas.");
 
         log.debug("Searching for CityGML input files.");
-        List<Path> inputFiles;
+        InputFiles inputFiles;
         try {
-            inputFiles = new ArrayList<>(Util.listFiles(input.getFile(), "**.{gml,xml}"));
-            log.info("Found " + inputFiles.size() + " file(s) at '" + input.getFile() + "'.");
+            inputFiles = Util.listFiles(input.getFile(), Constants.CITYGML_FILES);
         } catch (IOException e) {
             log.warn("Failed to find file(s) at '" + input.getFile() + "'.");
             return 0;
         }
 
+        SchemaDocumentCache schemaDocumentCache = null;
+        if (schemaCache != null) {
+            try {
+                log.debug("Using schema cache at '" + schemaCache.toAbsolutePath() + "'.");
+                schemaDocumentCache = new SchemaDocumentCache(schemaCache);
+            } catch (IOException e) {
+                log.error("Failed to create schema cache at '" + schemaCache.toAbsolutePath() + "'.", e);
+                return 1;
+            }
+        }
+
         log.debug("Loading default CityGML schemas.");
         SchemaHandler schemaHandler;
         try {
             schemaHandler = cityGMLBuilder.getDefaultSchemaHandler();
+            if (schemaDocumentCache != null)
+                schemaHandler.setSchemaEntityResolver(schemaDocumentCache);
         } catch (CityGMLBuilderException e) {
             log.error("Failed to load default CityGML schemas.", e);
             return 1;
@@ -95,47 +169,113 @@ public class XMLSchemaCommand implements CityGMLTool {
             for (String schema : schemas) {
                 try {
                     log.debug("Loading additional XML schema from '" + schema + "'.");
-                    schemaHandler.parseSchema("", schema);
-                } catch (SAXException e) {
+                    schemaHandler.parseSchema("", schemaDocumentCache != null ? schemaDocumentCache.getLocation(schema) : schema);
+                } catch (SAXException | IOException e) {
                     log.error("Failed to load XML schema from '" + schema + "'.", e);
                     return 1;
                 }
             }
         }
 
-        Validator validator;
+        Schema schema;
         try {
             SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            Schema schema = schemaFactory.newSchema(schemaHandler.getSchemaSources());
-            validator = schema.newValidator();
+            if (schemaDocumentCache != null)
+                schemaFactory.setResourceResolver(schemaDocumentCache);
+
+            schema = schemaFactory.newSchema(schemaHandler.getSchemaSources());
         } catch (SAXException e) {
             log.error("Failed to create validator object.", e);
             return 1;
         }
 
-        ValidationErrorHandler errorHandler = new ValidationErrorHandler();
+        if (reportFile != null) {
+            try {
+                log.debug("Writing validation report to '" + reportFile.toAbsolutePath() + "'.");
+                report = new JsonWriter(Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8));
+                report.setIndent("  ");
+                report.beginObject().name("files").beginArray();
+            } catch (IOException e) {
+                log.error("Failed to create validation report '" + reportFile.toAbsolutePath() + "'.", e);
+                return 1;
+            }
+        }
+
+        // the compiled schema is thread-safe whereas validators must not be shared between threads
+        ThreadLocal<Validator> validators = ThreadLocal.withInitial(schema::newValidator);
+        ExecutorService service = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        Deque<Future<ValidationErrorHandler>> results = new ArrayDeque<>();
         int invalid = 0;
 
-        for (int i = 0; i < inputFiles.size(); i++) {
-            Path inputFile = inputFiles.get(i);
-            log.info("[" + (i + 1) + "|" + inputFiles.size() + "] Validating file '" + inputFile.toAbsolutePath() + "'.");
+        ChunkedXMLValidator chunkedValidator = chunkFiles ?
+                new ChunkedXMLValidator(schema, service, threads * 4, input) :
+                null;
 
-            try {
-                validator.setErrorHandler(errorHandler);
-                validator.validate(new StreamSource(inputFile.toFile()));
+        try {
+            for (Path inputFile : inputFiles) {
+                if (isErrorLimitReached())
+                    break;
+
+                int i = inputFiles.getIndex();
+
+                if (chunkedValidator != null) {
+                    // files are processed one after another and the reports of their members are merged
+                    ValidationErrorHandler errorHandler = new ValidationErrorHandler(inputFile, i, inputFiles, false);
+                    errorHandler.logStart();
+                    chunkedValidator.validate(inputFile,
+                            path -> new ValidationErrorHandler(errorHandler, path),
+                            errorHandler::merge);
+                    if (!report(errorHandler))
+                        invalid++;
+                } else if (service != null) {
+                    // reports are buffered and logged in input order once a file has been validated
+                    ValidationErrorHandler errorHandler = new ValidationErrorHandler(inputFile, i, inputFiles, true);
+                    results.add(service.submit(() -> validate(inputFile, validators.get(), errorHandler)));
+
+                    while (!results.isEmpty() && (results.size() > threads * 4 || results.peek().isDone())) {
+                        if (!report(results.poll().get()))
+                            invalid++;
+                    }
+                } else {
+                    ValidationErrorHandler errorHandler = new ValidationErrorHandler(inputFile, i, inputFiles, false);
+                    errorHandler.logStart();
+                    if (!report(validate(inputFile, validators.get(), errorHandler)))
+                        invalid++;
+                }
+            }
 
-                if (errorHandler.errors == 0)
-                    log.info("The file is valid.");
-                else {
-                    log.warn("The file is invalid. Found " + errorHandler.errors + " error(s).");
+            while (!results.isEmpty()) {
+                if (!report(results.poll().get()))
                     invalid++;
+            }
+
+            if (isErrorLimitReached())
+                log.warn("Stopped the validation after reaching the maximum number of " + maxTotalErrors + " error(s).");
+
+            if (report != null) {
+                report.endArray()
+                        .name("invalidFiles").value(invalid)
+                        .name("errors").value(totalErrors.get())
+                        .name("aborted").value(isErrorLimitReached())
+                        .endObject();
+            }
+        } catch (SAXException | IOException e) {
+            log.error("Failed to validate CityGML file.", e);
+            return 1;
+        } catch (ExecutionException e) {
+            log.error("Failed to validate CityGML file.", e.getCause());
+            return 1;
+        } finally {
+            inputFiles.close();
+            if (service != null)
+                service.shutdownNow();
+
+            if (report != null) {
+                try {
+                    report.close();
+                } catch (IOException e) {
+                    log.error("Failed to write validation report '" + reportFile.toAbsolutePath() + "'.", e);
                 }
-            } catch (SAXException | IOException e) {
-                log.error("Failed to validate CityGML file.", e);
-                return 1;
-            } finally {
-                validator.reset();
-                errorHandler.reset();
             }
         }
 
@@ -148,10 +288,125 @@ public class XMLSchemaCommand implements CityGMLTool {
         }
     }
 
+    private ValidationErrorHandler validate(Path inputFile, Validator validator, ValidationErrorHandler errorHandler) throws SAXException, IOException {
+        try {
+            // the element path is tracked by a filter between the parser and the validator
+            ElementPath path = new ElementPath();
+            path.setParent(parserFactories.get().newSAXParser().getXMLReader());
+            errorHandler.path = path;
+
+            validator.setErrorHandler(errorHandler);
+            try (InputStream stream = input.createInputStream(inputFile)) {
+                InputSource source = new InputSource(stream);
+                source.setSystemId(inputFile.toUri().toString());
+                validator.validate(new SAXSource(path, source));
+                input.addFeatures(stream, path.getFeatures());
+            }
+        } catch (ErrorLimitException e) {
+            //
+        } catch (ParserConfigurationException e) {
+            throw new SAXException("Failed to create XML parser.", e);
+        } finally {
+            validator.reset();
+        }
+
+        return errorHandler;
+    }
+
+    private boolean isErrorLimitReached() {
+        return maxTotalErrors != null && totalErrors.get() >= maxTotalErrors;
+    }
+
+    private boolean report(ValidationErrorHandler errorHandler) throws IOException {
+        Logger log = Logger.getInstance();
+        if (errorHandler.buffered) {
+            errorHandler.logStart();
+            if (!suppressValidationErrors)
+                (allErrors ? errorHandler.occurrences : errorHandler.issues.values()).forEach(Issue::log);
+        }
+
+        if (!suppressValidationErrors && !allErrors) {
+            int suppressed = 0;
+            for (Issue issue : errorHandler.issues.values()) {
+                if (issue.count > 1) {
+                    log.log(issue.level, issue.type + " '" + issue.template + "' at element " + issue.path + " occurred " + issue.count + " times.");
+                    suppressed += issue.count - 1;
+                }
+            }
+
+            if (suppressed > 0)
+                log.info("Suppressed " + suppressed + " repeated validation message(s). Use --all-errors to show them.");
+        }
+
+        if (errorHandler.aborted)
+            log.warn("Stopped validating the file after reaching the maximum number of errors.");
+
+        if (report != null)
+            writeReport(errorHandler);
+
+        if (errorHandler.errors == 0) {
+            log.info("The file is valid.");
+            return true;
+        } else {
+            log.warn("The file is invalid. Found " + errorHandler.errors + " error(s).");
+            return false;
+        }
+    }
+
+    private void writeReport(ValidationErrorHandler errorHandler) throws IOException {
+        report.beginObject()
+                .name("file").value(errorHandler.inputFile.toAbsolutePath().toString())
+                .name("valid").value(errorHandler.errors == 0)
+                .name("errors").value(errorHandler.errors)
+                .name("aborted").value(errorHandler.aborted)
+                .name("issues").beginArray();
+
+        for (Issue issue : errorHandler.issues.values()) {
+            report.beginObject()
+                    .name("level").value(issue.level.name())
+                    .name("type").value(issue.type)
+                    .name("template").value(issue.template)
+                    .name("path").value(issue.path)
+                    .name("line").value(issue.line)
+                    .name("column").value(issue.column)
+                    .name("message").value(issue.message)
+                    .name("count").value(issue.count)
+                    .endObject();
+        }
+
+        report.endArray().endObject();
+    }
+
     private class ValidationErrorHandler implements ErrorHandler {
-        private final Logger log = Logger.getInstance();
+        private final Path inputFile;
+        private final int index;
+        private final InputFiles inputFiles;
+        private final boolean buffered;
+        private final AtomicInteger fileErrors;
+        private final Map<String, Issue> issues = new LinkedHashMap<>();
+        private final List<Issue> occurrences = new ArrayList<>();
+        private ElementPath path;
         private String location;
         private int errors;
+        private boolean aborted;
+
+        ValidationErrorHandler(Path inputFile, int index, InputFiles inputFiles, boolean buffered) {
+            this(inputFile, index, inputFiles, buffered, new AtomicInteger());
+        }
+
+        // handler for a part of a file that counts towards the error limit of the file
+        ValidationErrorHandler(ValidationErrorHandler parent, ElementPath path) {
+            this(parent.inputFile, parent.index, parent.inputFiles, true, parent.fileErrors);
+            this.path = path;
+        }
+
+        private ValidationErrorHandler(Path inputFile, int index, InputFiles inputFiles, boolean buffered, AtomicInteger fileErrors) {
+            this.inputFile = inputFile;
+            this.index = index;
+            this.inputFiles = inputFiles;
+            this.buffered = buffered;
+            this.fileErrors = fileErrors;
+        }
 
         @Override
         public void warning(SAXParseException e) throws SAXException {
@@ -168,20 +423,97 @@ public class XMLSchemaCommand implements CityGMLTool {
             report(e, "Invalid content", LogLevel.ERROR);
         }
 
-        private void report(SAXParseException e, String type, LogLevel level) {
+        private void report(SAXParseException e, String type, LogLevel level) throws ErrorLimitException {
             String location = e.getLineNumber() + ", " + e.getColumnNumber();
-            if (!location.equals(this.location)) {
+            boolean isNewError = !location.equals(this.location);
+            if (isNewError) {
                 this.location = location;
                 errors++;
             }
 
-            if (!suppressValidationErrors)
-                log.log(level, type + " at [" + location + "]: " + e.getMessage());
+            // identical errors are reported once per message template and element path
+            String message = e.getMessage();
+            Matcher matcher = TEMPLATE.matcher(message);
+            String template = matcher.find() ? matcher.group(1) : message;
+            String path = this.path != null ? this.path.toString() : "";
+
+            Issue issue = issues.get(template + path);
+            if (issue == null) {
+                issue = new Issue(level, type, template, path, e);
+                issues.put(template + path, issue);
+                if (!buffered && !suppressValidationErrors && !allErrors)
+                    issue.log();
+            }
+
+            issue.count++;
+
+            if (allErrors && !suppressValidationErrors) {
+                Issue occurrence = issue.count == 1 ? issue : new Issue(level, type, template, path, e);
+                if (buffered)
+                    occurrences.add(occurrence);
+                else
+                    occurrence.log();
+            }
+
+            if (isNewError) {
+                int fileErrors = this.fileErrors.incrementAndGet();
+                int totalErrors = XMLSchemaCommand.this.totalErrors.incrementAndGet();
+                if ((maxErrors != null && fileErrors >= maxErrors)
+                        || (maxTotalErrors != null && totalErrors >= maxTotalErrors)) {
+                    aborted = true;
+                    throw new ErrorLimitException();
+                }
+            }
+        }
+
+        private void merge(ValidationErrorHandler other) {
+            errors += other.errors;
+            aborted |= other.aborted;
+
+            for (Map.Entry<String, Issue> entry : other.issues.entrySet()) {
+                Issue issue = issues.get(entry.getKey());
+                if (issue == null) {
+                    issue = entry.getValue();
+                    issues.put(entry.getKey(), issue);
+                    if (!buffered && !suppressValidationErrors && !allErrors)
+                        issue.log();
+                } else
+                    issue.count += entry.getValue().count;
+            }
+
+            if (buffered)
+                occurrences.addAll(other.occurrences);
+            else
+                other.occurrences.forEach(Issue::log);
+        }
+
+        private void logStart() {
+            Logger.getInstance().info(inputFiles.getPosition(index) + " Validating file '" + inputFile.toAbsolutePath() + "'.");
+        }
+    }
+
+    private static class Issue {
+        private final LogLevel level;
+        private final String type;
+        private final String template;
+        private final String path;
+        private final int line;
+        private final int column;
+        private final String message;
+        private int count;
+
+        Issue(LogLevel level, String type, String template, String path, SAXParseException e) {
+            this.level = level;
+            this.type = type;
+            this.template = template;
+            this.path = path;
+            line = e.getLineNumber();
+            column = e.getColumnNumber();
+            message = e.getMessage();
         }
 
-        private void reset() {
-            location = null;
-            errors = 0;
+        void log() {
+            Logger.getInstance().log(level, type + " at [" + line + ", " + column + "]: " + message);
         }
     }
 }
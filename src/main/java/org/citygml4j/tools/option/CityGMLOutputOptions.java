@@ -22,23 +22,41 @@
 package org.citygml4j.tools.option;
 
 import org.citygml4j.builder.jaxb.CityGMLBuilder;
+import org.citygml4j.builder.jaxb.CityGMLBuilderException;
+import org.citygml4j.builder.jaxb.xml.io.writer.JAXBOutputFactory;
+import org.citygml4j.model.citygml.ade.ADEComponent;
+import org.citygml4j.model.gml.feature.AbstractFeature;
 import org.citygml4j.model.module.ModuleContext;
 import org.citygml4j.model.module.citygml.CityGMLModuleType;
 import org.citygml4j.model.module.citygml.CityGMLVersion;
+import org.citygml4j.tools.common.xml.CityModelChunkWriter;
+import org.citygml4j.tools.util.Metrics;
 import org.citygml4j.tools.util.ObjectRegistry;
+import org.citygml4j.tools.util.OutputValidator;
+import org.citygml4j.util.xml.SAXWriter;
 import org.citygml4j.xml.io.CityGMLOutputFactory;
+import org.citygml4j.xml.io.reader.XMLChunk;
 import org.citygml4j.xml.io.writer.AbstractCityGMLWriter;
 import org.citygml4j.xml.io.writer.CityGMLWriteException;
 import org.citygml4j.xml.io.writer.CityGMLWriter;
-import org.citygml4j.xml.io.writer.CityModelWriter;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.XMLFilterImpl;
 import picocli.CommandLine;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.function.BiFunction;
 
 public class CityGMLOutputOptions extends OutputOptions {
     @CommandLine.Option(names = "--citygml", description = "CityGML version used for output file(s): 2.0, 1.0 (default: ${DEFAULT-VALUE}).")
     private String version = "2.0";
 
+    @CommandLine.Option(names = "--validate-output", description = "Validate output file(s) against the CityGML schemas while writing them.")
+    private boolean validateOutput;
+
     public CityGMLVersion getVersion() {
         if (version.equals("1.0"))
             return CityGMLVersion.v1_0_0;
@@ -53,6 +71,45 @@ public class CityGMLOutputOptions extends OutputOptions {
         return CityGMLVersion.v2_0_0;
     }
 
+    public boolean isValidateOutput() {
+        return validateOutput;
+    }
+
+    public OutputValidator getOutputValidator() throws CityGMLWriteException {
+        try {
+            return OutputValidator.getInstance();
+        } catch (CityGMLBuilderException | SAXException e) {
+            throw new CityGMLWriteException("Failed to create validator for output files.", e);
+        }
+    }
+
+    // output streams are measured, compressed and validated if requested, otherwise no filter is returned.
+    // the written bytes are measured after compression whereas the validator needs the uncompressed data.
+    public BiFunction<OutputStream, Path, OutputStream> getOutputStreamFilter() throws CityGMLWriteException {
+        Metrics metrics = ObjectRegistry.getInstance().get(Metrics.class);
+        OutputValidator validator = validateOutput ? getOutputValidator() : null;
+        if (metrics == null && validator == null && !isCompressOutput())
+            return null;
+
+        return (stream, outputFile) -> {
+            if (metrics != null)
+                stream = metrics.measure(stream);
+
+            stream = compress(stream);
+            return validator != null ? validator.wrap(stream, outputFile) : stream;
+        };
+    }
+
+    private OutputStream createOutputStream(Path outputFile) throws IOException, CityGMLWriteException {
+        Path parent = outputFile.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+
+        OutputStream stream = Files.newOutputStream(outputFile);
+        BiFunction<OutputStream, Path, OutputStream> filter = getOutputStreamFilter();
+        return filter != null ? filter.apply(stream, outputFile) : stream;
+    }
+
     private CityGMLOutputFactory createCityGMLOutputFactory(CityGMLVersion version) {
         CityGMLBuilder builder = ObjectRegistry.getInstance().get(CityGMLBuilder.class);
         return builder.createCityGMLOutputFactory(version);
@@ -62,19 +119,35 @@ public class CityGMLOutputOptions extends OutputOptions {
         return createCityGMLOutputFactory(getVersion());
     }
 
-    public CityModelWriter createCityModelWriter(Path outputFile) throws CityGMLWriteException {
+    public CityModelChunkWriter createCityModelWriter(Path outputFile) throws CityGMLWriteException {
         CityGMLVersion version = getVersion();
         CityGMLOutputFactory out = createCityGMLOutputFactory(version);
-        CityModelWriter writer = out.createCityModelWriter(outputFile.toFile(), getEncoding());
-        setDefaultXMLContext(writer, version);
 
+        CityModelChunkWriter writer;
+        try {
+            SAXWriter saxWriter = new SAXWriter(new OutputStreamWriter(createOutputStream(outputFile), getEncoding()));
+            Metrics metrics = ObjectRegistry.getInstance().get(Metrics.class);
+            writer = metrics != null ?
+                    new MeasuringChunkWriter(saxWriter, (JAXBOutputFactory) out, new ModuleContext(version), metrics) :
+                    new CityModelChunkWriter(saxWriter, (JAXBOutputFactory) out, new ModuleContext(version));
+        } catch (IOException e) {
+            throw new CityGMLWriteException("Caused by: ", e);
+        }
+
+        setDefaultXMLContext(writer, version);
         return writer;
     }
 
     public CityGMLWriter createCityGMLWriter(Path outputFile) throws CityGMLWriteException {
         CityGMLVersion version = getVersion();
         CityGMLOutputFactory out = createCityGMLOutputFactory(version);
-        CityGMLWriter writer = out.createCityGMLWriter(outputFile.toFile(), getEncoding());
+        CityGMLWriter writer;
+        try {
+            writer = out.createCityGMLWriter(createOutputStream(outputFile), getEncoding());
+        } catch (IOException e) {
+            throw new CityGMLWriteException("Caused by: ", e);
+        }
+
         setDefaultXMLContext(writer, version);
 
         return writer;
@@ -92,4 +165,88 @@ public class CityGMLOutputOptions extends OutputOptions {
         writer.setDefaultNamespace(version.getCityGMLModule(CityGMLModuleType.CORE));
         writer.setIndentString("  ");
     }
+
+    // the time spent in the output stream is excluded from the marshalling time
+    private static class MeasuringChunkWriter extends CityModelChunkWriter {
+        private final Metrics metrics;
+        private int depth;
+        private long writeTime;
+
+        MeasuringChunkWriter(SAXWriter writer, JAXBOutputFactory factory, ModuleContext moduleContext, Metrics metrics) throws CityGMLWriteException {
+            super(writer, factory, moduleContext);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void writeStartDocument() throws CityGMLWriteException {
+            long start = start();
+            try {
+                super.writeStartDocument();
+            } finally {
+                stop(start);
+            }
+        }
+
+        @Override
+        public void writeEndDocument() throws CityGMLWriteException {
+            long start = start();
+            try {
+                super.writeEndDocument();
+            } finally {
+                stop(start);
+            }
+        }
+
+        @Override
+        public void writeFeatureMember(AbstractFeature feature) throws CityGMLWriteException {
+            long start = start();
+            try {
+                super.writeFeatureMember(feature);
+            } finally {
+                stop(start);
+            }
+        }
+
+        @Override
+        public void writeFeatureMember(ADEComponent adeComponent) throws CityGMLWriteException {
+            long start = start();
+            try {
+                super.writeFeatureMember(adeComponent);
+            } finally {
+                stop(start);
+            }
+        }
+
+        @Override
+        public void writeChunk(XMLChunk chunk, XMLFilterImpl filter) throws CityGMLWriteException {
+            long start = start();
+            try {
+                super.writeChunk(chunk, filter);
+            } finally {
+                stop(start);
+            }
+        }
+
+        @Override
+        public void close() throws CityGMLWriteException {
+            long start = start();
+            try {
+                super.close();
+            } finally {
+                stop(start);
+            }
+        }
+
+        private long start() {
+            if (depth++ == 0)
+                writeTime = metrics.getLocalTime(Metrics.Stage.WRITE);
+
+            return metrics.start();
+        }
+
+        private void stop(long start) {
+            if (--depth == 0)
+                metrics.stop(Metrics.Stage.MARSHAL, start + metrics.getLocalTime(Metrics.Stage.WRITE) - writeTime);
+        }
+    }
 }
@@ -21,6 +21,7 @@
 
 package org.citygml4j.tools.option;
 
+import com.google.gson.stream.JsonReader;
 import org.citygml4j.CityGMLContext;
 import org.citygml4j.builder.cityjson.CityJSONBuilder;
 import org.citygml4j.builder.cityjson.CityJSONBuilderException;
@@ -29,19 +30,32 @@ import org.citygml4j.builder.cityjson.json.io.reader.CityJSONReadException;
 import org.citygml4j.builder.cityjson.json.io.reader.CityJSONReader;
 import org.citygml4j.builder.jaxb.CityGMLBuilder;
 import org.citygml4j.builder.jaxb.CityGMLBuilderException;
+import org.citygml4j.model.citygml.CityGMLClass;
 import org.citygml4j.model.module.Modules;
+import org.citygml4j.tools.common.util.Compression;
+import org.citygml4j.tools.common.util.IOMode;
+import org.citygml4j.tools.common.xml.FilteredXMLInputFactory;
+import org.citygml4j.tools.util.Metrics;
 import org.citygml4j.tools.util.ObjectRegistry;
+import org.citygml4j.tools.util.ProgressReporter;
 import org.citygml4j.xml.io.CityGMLInputFactory;
 import org.citygml4j.xml.io.reader.CityGMLInputFilter;
 import org.citygml4j.xml.io.reader.CityGMLReadException;
 import org.citygml4j.xml.io.reader.CityGMLReader;
 import org.citygml4j.xml.io.reader.FeatureReadMode;
+import org.citygml4j.xml.io.reader.XMLChunk;
 import picocli.CommandLine;
 
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 public class InputOptions {
     @CommandLine.Parameters(paramLabel = "<file>", description = "File(s) or directory to process (glob patterns allowed).")
@@ -50,6 +64,9 @@ public class InputOptions {
     @CommandLine.Option(names = "--input-encoding", description = "Encoding of input file(s).")
     private String encoding;
 
+    @CommandLine.Option(names = "--io-mode", paramLabel = "<mode>", description = "I/O mode for reading input file(s): ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).")
+    private IOMode ioMode = IOMode.DEFAULT;
+
     public String getFile() {
         return file;
     }
@@ -58,6 +75,10 @@ public class InputOptions {
         return encoding;
     }
 
+    public IOMode getIOMode() {
+        return ioMode;
+    }
+
     public CityGMLInputFactory createCityGMLInputFactory(boolean useChunks) throws CityGMLBuilderException {
         CityGMLBuilder builder = ObjectRegistry.getInstance().get(CityGMLBuilder.class);
         CityGMLInputFactory in = builder.createCityGMLInputFactory();
@@ -71,18 +92,78 @@ public class InputOptions {
 
     public CityGMLReader createCityGMLReader(Path inputFile, boolean useChunks) throws CityGMLBuilderException, CityGMLReadException {
         CityGMLInputFactory in = createCityGMLInputFactory(useChunks);
-        return encoding == null ?
-                in.createCityGMLReader(inputFile.toFile()) :
-                in.createCityGMLReader(inputFile.toFile(), encoding);
+        return measure(createCityGMLReader(in, inputFile, UnaryOperator.identity()), inputFile);
     }
 
     public CityGMLReader createCityGMLReader(Path inputFile, CityGMLInputFilter filter) throws CityGMLBuilderException, CityGMLReadException {
+        return createCityGMLReader(inputFile, filter, UnaryOperator.identity());
+    }
+
+    public CityGMLReader createCityGMLReader(Path inputFile, CityGMLInputFilter filter, UnaryOperator<XMLStreamReader> streamFilter) throws CityGMLBuilderException, CityGMLReadException {
         CityGMLInputFactory in = createCityGMLInputFactory(true);
-        CityGMLReader reader = encoding == null ?
-                in.createCityGMLReader(inputFile.toFile()) :
-                in.createCityGMLReader(inputFile.toFile(), encoding);
+        CityGMLReader reader = createCityGMLReader(in, inputFile, streamFilter);
+        return measure(in.createFilteredCityGMLReader(reader, filter), inputFile);
+    }
+
+    private CityGMLReader createCityGMLReader(CityGMLInputFactory in, Path inputFile, UnaryOperator<XMLStreamReader> streamFilter) throws CityGMLReadException {
+        InputStream stream;
+        try {
+            stream = openInputStream(inputFile);
+        } catch (IOException e) {
+            throw new CityGMLReadException("Caused by: ", e);
+        }
+
+        // top-level features are counted for progress reports
+        if (stream instanceof ProgressReporter.ProgressInputStream) {
+            ProgressReporter.ProgressInputStream progress = (ProgressReporter.ProgressInputStream) stream;
+            in.setXMLInputFactory(new FilteredXMLInputFactory(in.getXMLInputFactory(), reader -> streamFilter.apply(progress.countFeatures(reader))));
+        } else
+            in.setXMLInputFactory(new FilteredXMLInputFactory(in.getXMLInputFactory(), streamFilter));
+
+        String systemId = inputFile.toAbsolutePath().toUri().toString();
+        try {
+            return encoding == null ?
+                    in.createCityGMLReader(systemId, stream) :
+                    in.createCityGMLReader(systemId, stream, encoding);
+        } catch (CityGMLReadException e) {
+            try {
+                stream.close();
+            } catch (IOException ioException) {
+                //
+            }
+
+            throw e;
+        }
+    }
 
-        return in.createFilteredCityGMLReader(reader, filter);
+    // compressed input files are decompressed and the input stream reports the reading progress if enabled
+    public InputStream createInputStream(Path inputFile) throws IOException {
+        InputStream stream = openInputStream(inputFile);
+        Metrics metrics = ObjectRegistry.getInstance().get(Metrics.class);
+        return metrics != null ? metrics.measure(stream, inputFile) : stream;
+    }
+
+    // top-level features read from streams created by createInputStream are counted for progress reports and metrics
+    public void addFeatures(InputStream stream, int features) {
+        Metrics metrics = ObjectRegistry.getInstance().get(Metrics.class);
+        if (metrics != null) {
+            metrics.addFeatures(stream, features);
+            stream = metrics.unwrap(stream);
+        }
+
+        if (stream instanceof ProgressReporter.ProgressInputStream)
+            ((ProgressReporter.ProgressInputStream) stream).addFeatures(features);
+    }
+
+    // streams for CityGML readers are not measured because the reader itself is
+    private InputStream openInputStream(Path inputFile) throws IOException {
+        ProgressReporter reporter = ObjectRegistry.getInstance().get(ProgressReporter.class);
+        return reporter != null ? reporter.newInputStream(inputFile, ioMode) : Compression.newInputStream(inputFile, ioMode);
+    }
+
+    private CityGMLReader measure(CityGMLReader reader, Path inputFile) {
+        Metrics metrics = ObjectRegistry.getInstance().get(Metrics.class);
+        return metrics != null ? metrics.measure(reader, inputFile) : reader;
     }
 
     public CityGMLInputFilter createSkipFilter(String... localNames) {
@@ -91,6 +172,15 @@ public class InputOptions {
                 || !Modules.isCityGMLModuleNamespace(name.getNamespaceURI());
     }
 
+    // chunks rejected by the filter are not required as objects and can be copied to the output as they are
+    public Predicate<XMLChunk> createObjectFilter(Class<?>... types) {
+        return chunk -> {
+            CityGMLClass cityGMLClass = chunk.getCityGMLClass();
+            Class<?> modelClass = cityGMLClass != null ? cityGMLClass.getModelClass() : null;
+            return modelClass == null || Arrays.stream(types).anyMatch(type -> type.isAssignableFrom(modelClass));
+        };
+    }
+
     public CityJSONInputFactory createCityJSONInputFactory(boolean processUnknownExtensions) throws CityJSONBuilderException {
         CityJSONBuilder builder = CityGMLContext.getInstance().createCityJSONBuilder();
         CityJSONInputFactory in = builder.createCityJSONInputFactory();
@@ -101,8 +191,22 @@ public class InputOptions {
 
     public CityJSONReader createCityJSONReader(Path inputFile, boolean processUnknownExtensions) throws CityJSONBuilderException, CityJSONReadException {
         CityJSONInputFactory in = createCityJSONInputFactory(processUnknownExtensions);
-        return encoding == null ?
-                in.createCityJSONReader(inputFile.toFile()) :
-                in.createCityJSONReader(inputFile.toFile(), encoding);
+        InputStream stream = null;
+        try {
+            stream = createInputStream(inputFile);
+            return encoding == null ?
+                    in.createCityJSONReader(stream) :
+                    new CityJSONReader(new JsonReader(new InputStreamReader(stream, encoding)), in);
+        } catch (IOException e) {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ioException) {
+                    //
+                }
+            }
+
+            throw new CityJSONReadException("Caused by: ", e);
+        }
     }
 }
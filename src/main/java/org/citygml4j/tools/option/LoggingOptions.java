@@ -30,6 +30,10 @@ import java.nio.file.Path;
 public class LoggingOptions {
     private LogLevel logLevel = LogLevel.INFO;
     private Path logFile;
+    private boolean metrics;
+    private Path metricsFile;
+    private Path prometheusFile;
+    private int progressInterval = 10;
 
     private @CommandLine.Spec(CommandLine.Spec.Target.MIXEE)
     CommandLine.Model.CommandSpec mixee;
@@ -55,4 +59,40 @@ public class LoggingOptions {
     public void setLogFile(Path logFile) {
         getRootLoggingOptions(mixee).logFile = logFile;
     }
+
+    public boolean isMetricsEnabled() {
+        return metrics || metricsFile != null || prometheusFile != null;
+    }
+
+    @CommandLine.Option(names = "--metrics", description = "Collect performance metrics and expose them through JMX.")
+    public void setMetrics(boolean metrics) {
+        getRootLoggingOptions(mixee).metrics = metrics;
+    }
+
+    public Path getMetricsFile() {
+        return metricsFile;
+    }
+
+    @CommandLine.Option(names = "--metrics-file", paramLabel = "<file>", description = "Write a JSON summary of the performance metrics to the specified file.")
+    public void setMetricsFile(Path metricsFile) {
+        getRootLoggingOptions(mixee).metricsFile = metricsFile;
+    }
+
+    public Path getPrometheusFile() {
+        return prometheusFile;
+    }
+
+    @CommandLine.Option(names = "--prometheus-file", paramLabel = "<file>", description = "Write the performance metrics in Prometheus text format to the specified file.")
+    public void setPrometheusFile(Path prometheusFile) {
+        getRootLoggingOptions(mixee).prometheusFile = prometheusFile;
+    }
+
+    public int getProgressInterval() {
+        return progressInterval;
+    }
+
+    @CommandLine.Option(names = "--progress-interval", paramLabel = "<seconds>", description = "Interval for reporting the progress of reading input files, 0 to disable (default: 10).")
+    public void setProgressInterval(int progressInterval) {
+        getRootLoggingOptions(mixee).progressInterval = progressInterval;
+    }
 }
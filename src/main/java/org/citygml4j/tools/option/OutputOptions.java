@@ -27,18 +27,44 @@ import org.citygml4j.builder.cityjson.CityJSONBuilderException;
 import org.citygml4j.builder.cityjson.json.io.writer.CityJSONOutputFactory;
 import org.citygml4j.builder.cityjson.json.io.writer.CityJSONWriteException;
 import org.citygml4j.builder.cityjson.json.io.writer.CityJSONWriter;
+import org.citygml4j.tools.util.Metrics;
+import org.citygml4j.tools.util.ObjectRegistry;
+import org.citygml4j.tools.util.ParallelGZIPOutputStream;
 import picocli.CommandLine;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.zip.Deflater;
 
 public class OutputOptions {
     @CommandLine.Option(names = "--output-encoding", description = "Encoding used for output file(s) (default: ${DEFAULT-VALUE}).")
     private String encoding = "UTF-8";
 
+    @CommandLine.Option(names = "--output-compression", paramLabel = "<gzip[:level]>", converter = CompressionConverter.class,
+            description = "Compress output file(s) using gzip with an optional compression level from 1 to 9.")
+    private Integer compressionLevel;
+
     public String getEncoding() {
         return encoding;
     }
 
+    public boolean isCompressOutput() {
+        return compressionLevel != null;
+    }
+
+    // compressed output files get the extension of the compression format
+    public Path getOutputFile(Path outputFile) {
+        return compressionLevel != null ?
+                outputFile.resolveSibling(outputFile.getFileName() + ".gz") :
+                outputFile;
+    }
+
+    public OutputStream compress(OutputStream stream) {
+        return compressionLevel != null ? new ParallelGZIPOutputStream(stream, compressionLevel) : stream;
+    }
+
     public CityJSONOutputFactory createCityJSONOutputFactory(boolean removeDuplicateChildGeometries) throws CityJSONBuilderException {
         CityJSONBuilder builder = CityGMLContext.getInstance().createCityJSONBuilder();
         CityJSONOutputFactory out = builder.createCityJSONOutputFactory();
@@ -48,6 +74,46 @@ public class OutputOptions {
     }
 
     public CityJSONWriter createCityJSONWriter(Path outputFile, boolean removeDuplicateChildGeometries) throws CityJSONBuilderException, CityJSONWriteException {
-        return createCityJSONOutputFactory(removeDuplicateChildGeometries).createCityJSONWriter(outputFile.toFile(), encoding);
+        CityJSONOutputFactory out = createCityJSONOutputFactory(removeDuplicateChildGeometries);
+        try {
+            Path parent = outputFile.toAbsolutePath().getParent();
+            if (parent != null)
+                Files.createDirectories(parent);
+
+            Metrics metrics = ObjectRegistry.getInstance().get(Metrics.class);
+            if (metrics == null && compressionLevel == null)
+                return out.createCityJSONWriter(outputFile.toFile(), encoding);
+
+            // the written bytes are measured after compression
+            OutputStream stream = Files.newOutputStream(outputFile);
+            if (metrics != null)
+                stream = metrics.measure(stream);
+
+            return out.createCityJSONWriter(compress(stream), encoding);
+        } catch (IOException e) {
+            throw new CityJSONWriteException("Caused by: ", e);
+        }
+    }
+
+    private static class CompressionConverter implements CommandLine.ITypeConverter<Integer> {
+        @Override
+        public Integer convert(String value) {
+            String[] parts = value.split(":", 2);
+            if (!parts[0].equalsIgnoreCase("gzip"))
+                throw new CommandLine.TypeConversionException("Unsupported compression '" + parts[0] + "'. Only gzip is supported.");
+
+            if (parts.length == 1)
+                return Deflater.DEFAULT_COMPRESSION;
+
+            try {
+                int level = Integer.parseInt(parts[1]);
+                if (level >= 1 && level <= 9)
+                    return level;
+            } catch (NumberFormatException e) {
+                //
+            }
+
+            throw new CommandLine.TypeConversionException("The gzip compression level must be an integer from 1 to 9 but was '" + parts[1] + "'.");
+        }
     }
 }
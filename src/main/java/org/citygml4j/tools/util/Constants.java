@@ -31,6 +31,10 @@ public class Constants {
 
     public static final String ADE_EXTENSIONS_DIR = "ade-extensions";
 
+    // compressed input files are matched by the extension of their compression format
+    public static final String CITYGML_FILES = "**.{gml,xml,gml.gz,xml.gz,gml.bz2,xml.bz2,gml.xz,xml.xz}";
+    public static final String CITYJSON_FILES = "**.{json,cityjson,json.gz,cityjson.gz,json.bz2,cityjson.bz2,json.xz,cityjson.xz}";
+
     static {
         String appHomeEnv = System.getenv("APP_HOME");
         if (appHomeEnv == null)
@@ -0,0 +1,329 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.util;
+
+import org.citygml4j.tools.common.log.Logger;
+import org.citygml4j.tools.common.util.Compression;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// discovers input files lazily while they are processed. directories are listed in parallel
+// and ahead of the walk, but files are handed out in the same depth-first order as Files.walk.
+public class InputFiles implements Iterable<Path>, AutoCloseable {
+    private static final int QUEUE_SIZE = 1024;
+    private static final int THREADS = 8;
+    private static final Path END = Paths.get("");
+
+    private final String file;
+    private final Path root;
+    private final PathMatcher matcher;
+    private final List<PathMatcher> prefix;
+    private final int depth;
+    private final String skipSuffix;
+    private final BlockingQueue<Path> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+
+    private ExecutorService service;
+    private Thread walker;
+    private volatile boolean closed;
+    private volatile int total = -1;
+    private int skipped;
+    private int index;
+
+    InputFiles(String file, Path root, String glob, List<String> components, String skipSuffix) {
+        this.file = file;
+        this.root = root;
+        this.skipSuffix = skipSuffix;
+        matcher = root.getFileSystem().getPathMatcher("glob:" + escape(glob));
+
+        // directories that cannot contain matching files are pruned using the leading glob components
+        prefix = new ArrayList<>();
+        boolean bounded = true;
+        for (String component : components) {
+            if (component.contains("**") || count(component, '{') != count(component, '}')) {
+                bounded = false;
+                break;
+            }
+
+            prefix.add(root.getFileSystem().getPathMatcher("glob:" + escape(component)));
+        }
+
+        depth = bounded ? components.size() : Integer.MAX_VALUE;
+    }
+
+    public Path getRootDirectory() {
+        return Files.isDirectory(root) ? root : root.getParent();
+    }
+
+    public boolean isArchive() {
+        return root.getFileSystem() != FileSystems.getDefault();
+    }
+
+    public int getIndex() {
+        return index - 1;
+    }
+
+    public String getPosition() {
+        return getPosition(getIndex());
+    }
+
+    public String getPosition(int index) {
+        int total = this.total;
+        return "[" + (index + 1) + (total >= 0 ? "|" + total : "") + "]";
+    }
+
+    @Override
+    public Iterator<Path> iterator() {
+        start();
+
+        return new Iterator<Path>() {
+            private Path next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = queue.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        next = END;
+                    }
+                }
+
+                return next != END;
+            }
+
+            @Override
+            public Path next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                Path file = next;
+                next = null;
+                index++;
+                return file;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (walker != null) {
+            walker.interrupt();
+            service.shutdownNow();
+        }
+
+        if (isArchive()) {
+            try {
+                // the walk must not touch the archive once it is closed
+                if (walker != null) {
+                    walker.join();
+                    service.awaitTermination(1, TimeUnit.MINUTES);
+                }
+
+                root.getFileSystem().close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                Logger.getInstance().warn("Failed to close archive '" + file + "'.", e);
+            }
+        }
+    }
+
+    private synchronized void start() {
+        if (walker != null)
+            throw new IllegalStateException("The input files can only be iterated once.");
+
+        service = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "file-walker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        walker = new Thread(this::walk, "file-walker");
+        walker.setDaemon(true);
+        walker.start();
+    }
+
+    private void walk() {
+        Logger log = Logger.getInstance();
+        int found = 0;
+
+        try {
+            if (Files.isDirectory(root))
+                found = walk(root, service.submit(() -> list(root, 0)));
+            else if (accept(root) && put(root))
+                found = 1;
+        } catch (InterruptedException e) {
+            //
+        } finally {
+            service.shutdown();
+            if (!closed) {
+                total = found;
+                if (skipped > 0)
+                    log.debug("Skipped " + skipped + " file(s) ending with '" + skipSuffix + "'.");
+
+                log.info("Found " + found + " file(s) at '" + file + "'.");
+                putEnd();
+            }
+        }
+    }
+
+    // the end marker must be delivered even if the queue is full, otherwise the iterator blocks forever
+    private void putEnd() {
+        boolean interrupted = false;
+        try {
+            while (!closed) {
+                try {
+                    queue.put(END);
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    private int walk(Path directory, Future<List<Entry>> listing) throws InterruptedException {
+        List<Entry> entries;
+        try {
+            entries = listing.get();
+        } catch (ExecutionException e) {
+            if (!closed)
+                Logger.getInstance().warn("Failed to read directory '" + directory.toAbsolutePath() + "'.", e.getCause());
+            return 0;
+        }
+
+        // sub-directories are listed ahead of the walk using a sliding window
+        List<Entry> directories = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.depth >= 0)
+                directories.add(entry);
+        }
+
+        Deque<Future<List<Entry>>> listings = new ArrayDeque<>();
+        int submitted = 0;
+        int found = 0;
+
+        for (Entry entry : entries) {
+            if (entry.depth < 0) {
+                if (!put(entry.path))
+                    break;
+
+                found++;
+            } else {
+                while (submitted < directories.size() && listings.size() < THREADS) {
+                    Entry next = directories.get(submitted++);
+                    listings.add(service.submit(() -> list(next.path, next.depth)));
+                }
+
+                found += walk(entry.path, listings.poll());
+            }
+        }
+
+        return found;
+    }
+
+    private List<Entry> list(Path directory, int depth) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    if (depth + 1 < this.depth
+                            && (depth >= prefix.size() || prefix.get(depth).matches(path.getFileName())))
+                        entries.add(new Entry(path, depth + 1));
+                } else if (accept(path))
+                    entries.add(new Entry(path, -1));
+            }
+        }
+
+        return entries;
+    }
+
+    private boolean accept(Path path) {
+        if (!matcher.matches(path.toAbsolutePath().normalize()))
+            return false;
+
+        if (skipSuffix != null && !skipSuffix.isEmpty()) {
+            String fileName = Compression.removeExtension(path.getFileName().toString());
+            int index = fileName.lastIndexOf(".");
+            if (index > 0 && fileName.substring(0, index).endsWith(skipSuffix)) {
+                synchronized (this) {
+                    skipped++;
+                }
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean put(Path path) throws InterruptedException {
+        if (closed)
+            return false;
+
+        queue.put(path);
+        return true;
+    }
+
+    private String escape(String glob) {
+        return glob.replace("\\", "\\\\");
+    }
+
+    private int count(String value, char c) {
+        return (int) value.chars().filter(v -> v == c).count();
+    }
+
+    private static class Entry {
+        private final Path path;
+        private final int depth;
+
+        Entry(Path path, int depth) {
+            this.path = path;
+            this.depth = depth;
+        }
+    }
+}
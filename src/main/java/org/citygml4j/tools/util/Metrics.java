@@ -0,0 +1,770 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.util;
+
+import com.google.gson.stream.JsonWriter;
+import org.citygml4j.model.citygml.CityGML;
+import org.citygml4j.model.citygml.CityGMLClass;
+import org.citygml4j.model.citygml.appearance.GeoreferencedTexture;
+import org.citygml4j.model.citygml.appearance.ParameterizedTexture;
+import org.citygml4j.model.gml.feature.AbstractFeature;
+import org.citygml4j.model.gml.geometry.AbstractGeometry;
+import org.citygml4j.model.gml.geometry.primitives.DirectPositionList;
+import org.citygml4j.model.gml.geometry.primitives.LineString;
+import org.citygml4j.model.gml.geometry.primitives.LinearRing;
+import org.citygml4j.model.gml.geometry.primitives.Point;
+import org.citygml4j.tools.common.log.Logger;
+import org.citygml4j.util.walker.GMLWalker;
+import org.citygml4j.xml.io.reader.CityGMLReadException;
+import org.citygml4j.xml.io.reader.CityGMLReader;
+import org.citygml4j.xml.io.reader.MissingADESchemaException;
+import org.citygml4j.xml.io.reader.ParentInfo;
+import org.citygml4j.xml.io.reader.UnmarshalException;
+import org.citygml4j.xml.io.reader.XMLChunk;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.xml.namespace.QName;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// collects per-stage timings and counts of the processed input files.
+// every thread updates its own counters without locking, and the counters are only summed up
+// for reporting. values read while threads are still working may therefore be slightly behind.
+// per-file values are recorded into the context of the file that is read by the current thread,
+// so files processed in parallel do not see each other's values.
+public class Metrics implements MetricsMBean {
+    private static final String OBJECT_NAME = "org.citygml4j.tools:type=Metrics";
+
+    public enum Stage {
+        READ, UNMARSHAL, PROCESS, MARSHAL, WRITE
+    }
+
+    public enum Counter {
+        FILES, FEATURES, GEOMETRIES, VERTICES, TEXTURES, BYTES_READ, BYTES_WRITTEN
+    }
+
+    private static final int STAGES = Stage.values().length;
+    private static final int SIZE = STAGES + Counter.values().length;
+
+    private final String command;
+    private final Path metricsFile;
+    private final Path prometheusFile;
+    private final Instant startTime = Instant.now();
+    private final long start = System.nanoTime();
+    private final Queue<long[]> values = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<long[]> localValues = ThreadLocal.withInitial(() -> {
+        long[] local = new long[SIZE];
+        values.add(local);
+        return local;
+    });
+
+    private final ThreadLocal<FileContext> currentFile = new ThreadLocal<>();
+
+    private final List<FileContext> files = Collections.synchronizedList(new ArrayList<>());
+    private ObjectName objectName;
+
+    public Metrics(String command, Path metricsFile, Path prometheusFile) {
+        this.command = command;
+        this.metricsFile = metricsFile;
+        this.prometheusFile = prometheusFile;
+    }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void stop(Stage stage, long start) {
+        record(currentFile.get(), stage.ordinal(), System.nanoTime() - start);
+    }
+
+    public void add(Counter counter, long value) {
+        record(currentFile.get(), STAGES + counter.ordinal(), value);
+    }
+
+    // time spent by the current thread in the given stage
+    public long getLocalTime(Stage stage) {
+        return localValues.get()[stage.ordinal()];
+    }
+
+    public CityGMLReader measure(CityGMLReader reader, Path inputFile) {
+        return new MeasuringReader(reader, inputFile);
+    }
+
+    public InputStream measure(InputStream stream, Path inputFile) {
+        return new MeasuringInputStream(stream, inputFile);
+    }
+
+    public OutputStream measure(OutputStream stream) {
+        return new MeasuringOutputStream(stream);
+    }
+
+    // counts a feature that has not been read by a measured CityGML reader
+    public void addFeature(CityGML cityGML) {
+        add(Counter.FEATURES, 1);
+        count(cityGML, currentFile.get());
+    }
+
+    // parsers may close the input stream before all of its features have been counted
+    public void addFeatures(InputStream stream, int features) {
+        record(stream instanceof MeasuringInputStream ? ((MeasuringInputStream) stream).context : currentFile.get(),
+                STAGES + Counter.FEATURES.ordinal(), features);
+    }
+
+    public InputStream unwrap(InputStream stream) {
+        return stream instanceof MeasuringInputStream ? ((MeasuringInputStream) stream).getStream() : stream;
+    }
+
+    public void register() {
+        try {
+            objectName = new ObjectName(OBJECT_NAME);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException e) {
+            Logger.getInstance().warn("Failed to register metrics MBean '" + OBJECT_NAME + "'.", e);
+            objectName = null;
+        }
+    }
+
+    public void unregister() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                //
+            }
+
+            objectName = null;
+        }
+    }
+
+    public void report() {
+        Logger log = Logger.getInstance();
+        long[] totals = snapshot();
+        double elapsed = seconds(System.nanoTime() - start);
+
+        log.info("Processed " + get(totals, Counter.FEATURES) + " feature(s) in " + get(totals, Counter.FILES) + " file(s) at "
+                + format(get(totals, Counter.FEATURES) / elapsed) + " features/s and "
+                + format(get(totals, Counter.BYTES_READ) / elapsed / (1024 * 1024)) + " MB/s.");
+        log.info("Time per stage: read " + format(seconds(get(totals, Stage.READ)))
+                + " s, unmarshal " + format(seconds(get(totals, Stage.UNMARSHAL)))
+                + " s, process " + format(seconds(get(totals, Stage.PROCESS)))
+                + " s, marshal " + format(seconds(get(totals, Stage.MARSHAL)))
+                + " s, write " + format(seconds(get(totals, Stage.WRITE))) + " s.");
+        log.info("Peak heap usage: " + getPeakHeapUsage() / (1024 * 1024) + " MB, GC time: " + format(getGCTime() / 1000.0) + " s.");
+
+        if (metricsFile != null) {
+            log.debug("Writing metrics to '" + metricsFile.toAbsolutePath() + "'.");
+            try {
+                writeJson(metricsFile, totals, elapsed);
+            } catch (IOException e) {
+                log.error("Failed to write metrics file '" + metricsFile.toAbsolutePath() + "'.", e);
+            }
+        }
+
+        if (prometheusFile != null) {
+            log.debug("Writing metrics to '" + prometheusFile.toAbsolutePath() + "'.");
+            try {
+                writePrometheus(prometheusFile, totals, elapsed);
+            } catch (IOException e) {
+                log.error("Failed to write metrics file '" + prometheusFile.toAbsolutePath() + "'.", e);
+            }
+        }
+    }
+
+    @Override
+    public String getCommand() {
+        return command;
+    }
+
+    @Override
+    public long getElapsedTime() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Override
+    public long getFiles() {
+        return get(snapshot(), Counter.FILES);
+    }
+
+    @Override
+    public long getFeatures() {
+        return get(snapshot(), Counter.FEATURES);
+    }
+
+    @Override
+    public long getGeometries() {
+        return get(snapshot(), Counter.GEOMETRIES);
+    }
+
+    @Override
+    public long getVertices() {
+        return get(snapshot(), Counter.VERTICES);
+    }
+
+    @Override
+    public long getTextures() {
+        return get(snapshot(), Counter.TEXTURES);
+    }
+
+    @Override
+    public long getBytesRead() {
+        return get(snapshot(), Counter.BYTES_READ);
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return get(snapshot(), Counter.BYTES_WRITTEN);
+    }
+
+    @Override
+    public long getReadTime() {
+        return TimeUnit.NANOSECONDS.toMillis(get(snapshot(), Stage.READ));
+    }
+
+    @Override
+    public long getUnmarshalTime() {
+        return TimeUnit.NANOSECONDS.toMillis(get(snapshot(), Stage.UNMARSHAL));
+    }
+
+    @Override
+    public long getProcessTime() {
+        return TimeUnit.NANOSECONDS.toMillis(get(snapshot(), Stage.PROCESS));
+    }
+
+    @Override
+    public long getMarshalTime() {
+        return TimeUnit.NANOSECONDS.toMillis(get(snapshot(), Stage.MARSHAL));
+    }
+
+    @Override
+    public long getWriteTime() {
+        return TimeUnit.NANOSECONDS.toMillis(get(snapshot(), Stage.WRITE));
+    }
+
+    @Override
+    public double getFeaturesPerSecond() {
+        return get(snapshot(), Counter.FEATURES) / seconds(System.nanoTime() - start);
+    }
+
+    @Override
+    public double getMegabytesPerSecond() {
+        return get(snapshot(), Counter.BYTES_READ) / seconds(System.nanoTime() - start) / (1024 * 1024);
+    }
+
+    private void record(FileContext context, int index, long value) {
+        localValues.get()[index] += value;
+        if (context != null) {
+            context.values.addAndGet(index, value);
+
+            // stages run by other threads for this file overlap with its wall-clock time
+            if (index < STAGES && !context.closed && context.thread == Thread.currentThread())
+                context.ownStages += value;
+        }
+    }
+
+    private FileContext openFile(Path inputFile) {
+        FileContext context = new FileContext(inputFile, currentFile.get());
+        currentFile.set(context);
+
+        add(Counter.FILES, 1);
+        try {
+            add(Counter.BYTES_READ, Files.size(inputFile));
+        } catch (IOException e) {
+            //
+        }
+
+        return context;
+    }
+
+    private void closeFile(FileContext context) {
+        if (context.closed)
+            return;
+
+        // the time the reading thread did not spend in one of the measured stages is taken as processing time
+        long process = System.nanoTime() - context.start - context.ownStages;
+        if (process > 0)
+            record(context, Stage.PROCESS.ordinal(), process);
+
+        context.closed = true;
+        if (currentFile.get() == context)
+            currentFile.set(context.previous);
+
+        files.add(context);
+    }
+
+    private long[] snapshot() {
+        long[] snapshot = new long[SIZE];
+        for (long[] local : values) {
+            for (int i = 0; i < SIZE; i++)
+                snapshot[i] += local[i];
+        }
+
+        return snapshot;
+    }
+
+    private long get(long[] values, Stage stage) {
+        return values[stage.ordinal()];
+    }
+
+    private long get(long[] values, Counter counter) {
+        return values[STAGES + counter.ordinal()];
+    }
+
+    private long getPeakHeapUsage() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null)
+                peak += pool.getPeakUsage().getUsed();
+        }
+
+        return peak;
+    }
+
+    private long getGCTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+            time += Math.max(0, collector.getCollectionTime());
+
+        return time;
+    }
+
+    private void writeJson(Path file, long[] totals, double elapsed) throws IOException {
+        try (JsonWriter writer = new JsonWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            writer.setIndent("  ");
+            writer.beginObject()
+                    .name("command").value(command)
+                    .name("startTime").value(startTime.toString())
+                    .name("elapsedTime").value(elapsed);
+
+            writeValues(writer, totals, true);
+            writer.name("featuresPerSecond").value(get(totals, Counter.FEATURES) / elapsed)
+                    .name("megabytesPerSecond").value(get(totals, Counter.BYTES_READ) / elapsed / (1024 * 1024))
+                    .name("peakHeapUsage").value(getPeakHeapUsage())
+                    .name("gcTime").value(getGCTime() / 1000.0);
+
+            writer.name("inputFiles").beginArray();
+            synchronized (files) {
+                for (FileContext context : files) {
+                    writer.beginObject().name("file").value(context.file.toAbsolutePath().toString());
+                    writeValues(writer, context.getValues(), false);
+                    writer.endObject();
+                }
+            }
+
+            writer.endArray().endObject();
+        }
+    }
+
+    private void writeValues(JsonWriter writer, long[] values, boolean totals) throws IOException {
+        for (Counter counter : Counter.values()) {
+            if (counter != Counter.FILES || totals)
+                writer.name(toCamelCase(counter.name())).value(get(values, counter));
+        }
+
+        writer.name("stages").beginObject();
+        for (Stage stage : Stage.values())
+            writer.name(toCamelCase(stage.name())).value(seconds(get(values, stage)));
+
+        writer.endObject();
+    }
+
+    private void writePrometheus(Path file, long[] totals, double elapsed) throws IOException {
+        String labels = "{command=\"" + command + "\"}";
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeMetric(writer, "duration_seconds", "gauge", "Total execution time.", labels, elapsed);
+
+            writeHeader(writer, "stage_seconds_total", "counter", "Time spent per processing stage.");
+            for (Stage stage : Stage.values()) {
+                writer.write("citygml_tools_stage_seconds_total{command=\"" + command + "\",stage=\""
+                        + stage.name().toLowerCase(Locale.ROOT) + "\"} " + seconds(get(totals, stage)) + "\n");
+            }
+
+            for (Counter counter : Counter.values()) {
+                String help = counter == Counter.BYTES_READ ? "Number of bytes read from input files." :
+                        counter == Counter.BYTES_WRITTEN ? "Number of bytes written to output files." :
+                                "Number of processed " + counter.name().toLowerCase(Locale.ROOT) + ".";
+                writeMetric(writer, counter.name().toLowerCase(Locale.ROOT) + "_total", "counter", help, labels, get(totals, counter));
+            }
+
+            writeMetric(writer, "features_per_second", "gauge", "Average feature throughput.", labels, get(totals, Counter.FEATURES) / elapsed);
+            writeMetric(writer, "heap_peak_bytes", "gauge", "Peak heap usage.", labels, getPeakHeapUsage());
+            writeMetric(writer, "gc_seconds_total", "counter", "Time spent in garbage collection.", labels, getGCTime() / 1000.0);
+        }
+    }
+
+    private void writeMetric(BufferedWriter writer, String name, String type, String help, String labels, Number value) throws IOException {
+        writeHeader(writer, name, type, help);
+        writer.write("citygml_tools_" + name + labels + " " + value + "\n");
+    }
+
+    private void writeHeader(BufferedWriter writer, String name, String type, String help) throws IOException {
+        writer.write("# HELP citygml_tools_" + name + " " + help + "\n");
+        writer.write("# TYPE citygml_tools_" + name + " " + type + "\n");
+    }
+
+    private String toCamelCase(String name) {
+        StringBuilder builder = new StringBuilder();
+        for (String part : name.toLowerCase(Locale.ROOT).split("_")) {
+            builder.append(builder.length() == 0 ? part : Character.toUpperCase(part.charAt(0)) + part.substring(1));
+        }
+
+        return builder.toString();
+    }
+
+    private double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private void count(CityGML cityGML, FileContext context) {
+        if (!(cityGML instanceof AbstractFeature))
+            return;
+
+        long[] local = new long[SIZE];
+        ((AbstractFeature) cityGML).accept(new GMLWalker() {
+            public void visit(AbstractGeometry geometry) {
+                local[STAGES + Counter.GEOMETRIES.ordinal()]++;
+                super.visit(geometry);
+            }
+
+            public void visit(LinearRing linearRing) {
+                local[STAGES + Counter.VERTICES.ordinal()] += linearRing.isSetPosList() ?
+                        getVertices(linearRing.getPosList()) :
+                        linearRing.toList3d().size() / 3;
+                super.visit(linearRing);
+            }
+
+            public void visit(LineString lineString) {
+                local[STAGES + Counter.VERTICES.ordinal()] += lineString.isSetPosList() ?
+                        getVertices(lineString.getPosList()) :
+                        lineString.toList3d().size() / 3;
+                super.visit(lineString);
+            }
+
+            public void visit(Point point) {
+                local[STAGES + Counter.VERTICES.ordinal()]++;
+                super.visit(point);
+            }
+
+            public void visit(ParameterizedTexture texture) {
+                local[STAGES + Counter.TEXTURES.ordinal()]++;
+                super.visit(texture);
+            }
+
+            public void visit(GeoreferencedTexture texture) {
+                local[STAGES + Counter.TEXTURES.ordinal()]++;
+                super.visit(texture);
+            }
+        });
+
+        for (Counter counter : new Counter[]{Counter.GEOMETRIES, Counter.VERTICES, Counter.TEXTURES})
+            record(context, STAGES + counter.ordinal(), local[STAGES + counter.ordinal()]);
+    }
+
+    private int getVertices(DirectPositionList posList) {
+        int dimension = posList.isSetSrsDimension() ? posList.getSrsDimension() : 3;
+        return posList.isSetValue() && dimension > 0 ? posList.getValue().size() / dimension : 0;
+    }
+
+    private static class FileContext {
+        private final Path file;
+        private final FileContext previous;
+        private final Thread thread = Thread.currentThread();
+        private final AtomicLongArray values = new AtomicLongArray(SIZE);
+        private final long start = System.nanoTime();
+        private long ownStages;
+        private volatile boolean closed;
+
+        FileContext(Path file, FileContext previous) {
+            this.file = file;
+            this.previous = previous;
+        }
+
+        long[] getValues() {
+            long[] values = new long[SIZE];
+            for (int i = 0; i < SIZE; i++)
+                values[i] = this.values.get(i);
+
+            return values;
+        }
+    }
+
+    private class MeasuringReader implements CityGMLReader {
+        private final CityGMLReader reader;
+        private final FileContext context;
+
+        MeasuringReader(CityGMLReader reader, Path inputFile) {
+            this.reader = reader;
+            context = openFile(inputFile);
+        }
+
+        @Override
+        public boolean hasNext() throws CityGMLReadException {
+            long start = start();
+            try {
+                return reader.hasNext();
+            } finally {
+                stop(Stage.READ, start);
+            }
+        }
+
+        // features are parsed and unmarshalled in one step and are counted as read
+        @Override
+        public CityGML nextFeature() throws CityGMLReadException {
+            long start = start();
+            CityGML cityGML;
+            try {
+                cityGML = reader.nextFeature();
+            } finally {
+                stop(Stage.READ, start);
+            }
+
+            add(Counter.FEATURES, 1);
+            count(cityGML, context);
+            return cityGML;
+        }
+
+        @Override
+        public XMLChunk nextChunk() throws CityGMLReadException {
+            long start = start();
+            XMLChunk chunk;
+            try {
+                chunk = reader.nextChunk();
+            } finally {
+                stop(Stage.READ, start);
+            }
+
+            add(Counter.FEATURES, 1);
+            return chunk != null ? new MeasuringChunk(chunk, context) : null;
+        }
+
+        @Override
+        public boolean isSetParentInfo() {
+            return reader.isSetParentInfo();
+        }
+
+        @Override
+        public ParentInfo getParentInfo() {
+            return reader.getParentInfo();
+        }
+
+        @Override
+        public String getBaseURI() {
+            return reader.getBaseURI();
+        }
+
+        @Override
+        public void close() throws CityGMLReadException {
+            try {
+                reader.close();
+            } finally {
+                closeFile(context);
+            }
+        }
+    }
+
+    // chunks may be unmarshalled by worker threads, so values are recorded into the context of their file
+    private class MeasuringChunk implements XMLChunk {
+        private final XMLChunk chunk;
+        private final FileContext context;
+
+        MeasuringChunk(XMLChunk chunk, FileContext context) {
+            this.chunk = chunk;
+            this.context = context;
+        }
+
+        @Override
+        public CityGML unmarshal() throws UnmarshalException, MissingADESchemaException {
+            long start = start();
+            CityGML cityGML;
+            try {
+                cityGML = chunk.unmarshal();
+            } finally {
+                record(context, Stage.UNMARSHAL.ordinal(), System.nanoTime() - start);
+            }
+
+            count(cityGML, context);
+            return cityGML;
+        }
+
+        @Override
+        public QName getTypeName() {
+            return chunk.getTypeName();
+        }
+
+        @Override
+        public CityGMLClass getCityGMLClass() {
+            return chunk.getCityGMLClass();
+        }
+
+        @Override
+        public boolean isSetParentInfo() {
+            return chunk.isSetParentInfo();
+        }
+
+        @Override
+        public ParentInfo getParentInfo() {
+            return chunk.getParentInfo();
+        }
+
+        @Override
+        public boolean hasPassedXMLValidation() {
+            return chunk.hasPassedXMLValidation();
+        }
+
+        @Override
+        public void send(ContentHandler handler, boolean release) throws SAXException {
+            chunk.send(handler, release);
+        }
+    }
+
+    private class MeasuringInputStream extends FilterInputStream {
+        private final FileContext context;
+
+        MeasuringInputStream(InputStream in, Path inputFile) {
+            super(in);
+            context = openFile(inputFile);
+        }
+
+        InputStream getStream() {
+            return in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = start();
+            try {
+                return in.read();
+            } finally {
+                stop(Stage.READ, start);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = start();
+            try {
+                return in.read(b, off, len);
+            } finally {
+                stop(Stage.READ, start);
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long start = start();
+            try {
+                return in.skip(n);
+            } finally {
+                stop(Stage.READ, start);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                in.close();
+            } finally {
+                closeFile(context);
+            }
+        }
+    }
+
+    // the stream is attributed to the file that is read by the thread creating it
+    private class MeasuringOutputStream extends FilterOutputStream {
+        private final FileContext context;
+
+        MeasuringOutputStream(OutputStream out) {
+            super(out);
+            context = currentFile.get();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = start();
+            try {
+                out.write(b);
+            } finally {
+                record(context, Stage.WRITE.ordinal(), System.nanoTime() - start);
+            }
+
+            record(context, STAGES + Counter.BYTES_WRITTEN.ordinal(), 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = start();
+            try {
+                out.write(b, off, len);
+            } finally {
+                record(context, Stage.WRITE.ordinal(), System.nanoTime() - start);
+            }
+
+            record(context, STAGES + Counter.BYTES_WRITTEN.ordinal(), len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long start = start();
+            try {
+                out.flush();
+            } finally {
+                record(context, Stage.WRITE.ordinal(), System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            long start = start();
+            try {
+                out.close();
+            } finally {
+                record(context, Stage.WRITE.ordinal(), System.nanoTime() - start);
+            }
+        }
+    }
+}
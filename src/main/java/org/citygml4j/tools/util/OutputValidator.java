@@ -0,0 +1,286 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.util;
+
+import org.citygml4j.builder.jaxb.CityGMLBuilder;
+import org.citygml4j.builder.jaxb.CityGMLBuilderException;
+import org.citygml4j.tools.common.log.Logger;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// validates output files against the CityGML schemas on a background thread while they are written.
+// the written bytes are passed to the validator in blocks through a bounded queue.
+public class OutputValidator {
+    private static final byte[] EOF = new byte[0];
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int QUEUE_SIZE = 16;
+    private static final int MAX_MESSAGES = 1000;
+
+    private final Schema schema;
+    private final ExecutorService service;
+    private final AtomicInteger invalidFiles = new AtomicInteger();
+
+    private OutputValidator(Schema schema) {
+        this.schema = schema;
+        service = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "output-validator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized OutputValidator getInstance() throws CityGMLBuilderException, SAXException {
+        OutputValidator validator = ObjectRegistry.getInstance().get(OutputValidator.class);
+        if (validator == null) {
+            CityGMLBuilder builder = ObjectRegistry.getInstance().get(CityGMLBuilder.class);
+            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            validator = new OutputValidator(schemaFactory.newSchema(builder.getDefaultSchemaHandler().getSchemaSources()));
+            ObjectRegistry.getInstance().put(validator);
+        }
+
+        return validator;
+    }
+
+    public int getInvalidFiles() {
+        return invalidFiles.get();
+    }
+
+    public OutputStream wrap(OutputStream stream, Path outputFile) {
+        BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        ValidationErrorHandler errorHandler = new ValidationErrorHandler();
+        Future<?> result = service.submit(() -> validate(queue, errorHandler));
+        return new TeeOutputStream(stream, queue, result, errorHandler, outputFile);
+    }
+
+    private Void validate(BlockingQueue<byte[]> queue, ValidationErrorHandler errorHandler) throws IOException {
+        QueueInputStream stream = new QueueInputStream(queue);
+        try {
+            Validator validator = schema.newValidator();
+            validator.setErrorHandler(errorHandler);
+            validator.validate(new StreamSource(stream));
+        } catch (SAXException e) {
+            // fatal errors have already been passed to the error handler
+        } finally {
+            // the writer must never block on a full queue
+            stream.drain();
+        }
+
+        return null;
+    }
+
+    private class TeeOutputStream extends FilterOutputStream {
+        private final BlockingQueue<byte[]> queue;
+        private final Future<?> result;
+        private final ValidationErrorHandler errorHandler;
+        private final Path outputFile;
+        private byte[] block = new byte[BLOCK_SIZE];
+        private int count;
+        private boolean closed;
+
+        TeeOutputStream(OutputStream out, BlockingQueue<byte[]> queue, Future<?> result, ValidationErrorHandler errorHandler, Path outputFile) {
+            super(out);
+            this.queue = queue;
+            this.result = result;
+            this.errorHandler = errorHandler;
+            this.outputFile = outputFile;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            block[count++] = (byte) b;
+            if (count == block.length)
+                pass(block);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            while (len > 0) {
+                int size = Math.min(len, block.length - count);
+                System.arraycopy(b, off, block, count, size);
+                count += size;
+                off += size;
+                len -= size;
+
+                if (count == block.length)
+                    pass(block);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+
+            closed = true;
+            try {
+                if (count > 0)
+                    pass(Arrays.copyOf(block, count));
+
+                put(EOF);
+            } finally {
+                out.close();
+            }
+
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                throw new IOException("Failed to validate output file '" + outputFile.toAbsolutePath() + "'.", e.getCause());
+            }
+
+            report();
+        }
+
+        private void pass(byte[] block) throws IOException {
+            put(block);
+            this.block = new byte[BLOCK_SIZE];
+            count = 0;
+        }
+
+        private void put(byte[] block) throws IOException {
+            try {
+                queue.put(block);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+
+        private void report() {
+            Logger log = Logger.getInstance();
+            errorHandler.messages.forEach(log::error);
+
+            if (errorHandler.errors == 0)
+                log.info("The output file '" + outputFile.toAbsolutePath() + "' is valid.");
+            else {
+                log.warn("The output file '" + outputFile.toAbsolutePath() + "' is invalid. Found " + errorHandler.errors + " error(s).");
+                invalidFiles.incrementAndGet();
+            }
+        }
+    }
+
+    private static class QueueInputStream extends InputStream {
+        private final BlockingQueue<byte[]> queue;
+        private byte[] block = new byte[0];
+        private int position;
+        private boolean eof;
+
+        QueueInputStream(BlockingQueue<byte[]> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return next() ? block[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+
+            if (!next())
+                return -1;
+
+            int size = Math.min(len, block.length - position);
+            System.arraycopy(block, position, b, off, size);
+            position += size;
+            return size;
+        }
+
+        void drain() throws IOException {
+            while (next())
+                position = block.length;
+        }
+
+        private boolean next() throws IOException {
+            try {
+                while (!eof && position == block.length) {
+                    block = queue.take();
+                    position = 0;
+                    eof = block == EOF;
+                }
+
+                return !eof;
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    private static class ValidationErrorHandler implements ErrorHandler {
+        private final List<String> messages = new ArrayList<>();
+        private String location;
+        private int errors;
+
+        @Override
+        public void warning(SAXParseException e) {
+            report(e, "Warning");
+        }
+
+        @Override
+        public void error(SAXParseException e) {
+            report(e, "Invalid content");
+        }
+
+        @Override
+        public void fatalError(SAXParseException e) {
+            report(e, "Invalid content");
+        }
+
+        private void report(SAXParseException e, String type) {
+            String location = e.getLineNumber() + ", " + e.getColumnNumber();
+            if (!location.equals(this.location)) {
+                this.location = location;
+                errors++;
+            }
+
+            if (messages.size() < MAX_MESSAGES)
+                messages.add(type + " at [" + location + "]: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// writes a gzip stream whose blocks are compressed in parallel. every block is primed with the last
+// 32 KB of its predecessor and ends with a sync flush, so the blocks form a single deflate stream.
+public class ParallelGZIPOutputStream extends FilterOutputStream {
+    private static final int BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final ExecutorService service = Executors.newFixedThreadPool(THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "gzip-compressor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // one deflater per level and thread. the level is passed to the constructor since a changed level
+    // only takes effect with the next deflate call, which then returns no data
+    private static final ThreadLocal<Deflater[]> deflaters = ThreadLocal.withInitial(() -> new Deflater[Deflater.BEST_COMPRESSION + 2]);
+
+    private final int level;
+    private final CRC32 crc = new CRC32();
+    private final Deque<Future<byte[]>> blocks = new ArrayDeque<>();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private byte[] dictionary;
+    private int count;
+    private long size;
+    private boolean started;
+    private boolean closed;
+
+    public ParallelGZIPOutputStream(OutputStream out, int level) {
+        super(out);
+        this.level = level;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[count++] = (byte) b;
+        if (count == block.length)
+            submit(false);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, block.length - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+
+            if (count == block.length)
+                submit(false);
+        }
+    }
+
+    // blocks are only written once they are full to keep the compression ratio
+    @Override
+    public void flush() throws IOException {
+        while (!blocks.isEmpty() && blocks.peek().isDone())
+            out.write(take());
+
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            try {
+                submit(true);
+                while (!blocks.isEmpty())
+                    out.write(take());
+
+                writeInt((int) crc.getValue());
+                writeInt((int) size);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private void submit(boolean last) throws IOException {
+        if (!started) {
+            out.write(HEADER);
+            started = true;
+        }
+
+        byte[] data = count < block.length ? Arrays.copyOf(block, count) : block;
+        byte[] previous = dictionary;
+        crc.update(data, 0, data.length);
+        size += data.length;
+
+        blocks.add(service.submit(() -> compress(data, previous, last)));
+        dictionary = Arrays.copyOfRange(data, Math.max(0, data.length - DICTIONARY_SIZE), data.length);
+        block = new byte[BLOCK_SIZE];
+        count = 0;
+
+        while (blocks.size() > THREADS * 2)
+            out.write(take());
+    }
+
+    private byte[] compress(byte[] data, byte[] dictionary, boolean last) {
+        Deflater deflater = getDeflater();
+        deflater.reset();
+        if (dictionary != null && dictionary.length > 0)
+            deflater.setDictionary(dictionary);
+
+        deflater.setInput(data);
+        if (last)
+            deflater.finish();
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 64);
+        byte[] buffer = new byte[16 * 1024];
+        while (true) {
+            int n = deflater.deflate(buffer, 0, buffer.length, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+            compressed.write(buffer, 0, n);
+            if (last ? deflater.finished() : n < buffer.length && deflater.needsInput())
+                break;
+        }
+
+        return compressed.toByteArray();
+    }
+
+    private Deflater getDeflater() {
+        Deflater[] deflaters = ParallelGZIPOutputStream.deflaters.get();
+        int index = level - Deflater.DEFAULT_COMPRESSION;
+        if (deflaters[index] == null)
+            deflaters[index] = new Deflater(level, true);
+
+        return deflaters[index];
+    }
+
+    private byte[] take() throws IOException {
+        try {
+            return blocks.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress output data.", e.getCause());
+        }
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+        out.write((value >> 16) & 0xff);
+        out.write((value >> 24) & 0xff);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.util;
+
+import org.citygml4j.tools.common.log.Logger;
+import org.citygml4j.tools.common.util.Compression;
+import org.citygml4j.tools.common.util.IOMode;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// reports the progress of reading an input file based on the number of bytes consumed.
+// the clock is only checked every few kilobytes and progress is logged at most once per interval.
+public class ProgressReporter {
+    private static final int CHECK_BYTES = 64 * 1024;
+
+    private final long interval;
+
+    public ProgressReporter(long seconds) {
+        interval = TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    public ProgressInputStream newInputStream(Path inputFile, IOMode ioMode) throws IOException {
+        return new ProgressInputStream(inputFile, Files.size(inputFile), ioMode);
+    }
+
+    public class ProgressInputStream extends FilterInputStream {
+        private final Path inputFile;
+        private final long size;
+        private final long start = System.nanoTime();
+        private long lastReport = start;
+        private long lastCheck;
+        private long bytes;
+        private volatile long features;
+
+        // progress is based on the bytes read from the file, which may be decompressed on another thread
+        private ProgressInputStream(Path inputFile, long size, IOMode ioMode) throws IOException {
+            super(null);
+            this.inputFile = inputFile;
+            this.size = size;
+            in = Compression.decompress(new CountingInputStream(ioMode.newInputStream(inputFile)));
+        }
+
+        public void addFeatures(int features) {
+            this.features += features;
+        }
+
+        // counts the top-level features of a CityGML file while it is parsed
+        public XMLStreamReader countFeatures(XMLStreamReader reader) {
+            return new StreamReaderDelegate(reader) {
+                private int depth;
+                private boolean members;
+
+                @Override
+                public int next() throws XMLStreamException {
+                    return update(super.next());
+                }
+
+                @Override
+                public int nextTag() throws XMLStreamException {
+                    return update(super.nextTag());
+                }
+
+                @Override
+                public String getElementText() throws XMLStreamException {
+                    String text = super.getElementText();
+                    depth--;
+                    return text;
+                }
+
+                private int update(int event) {
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        if (depth == 2) {
+                            String localName = getLocalName();
+                            members = localName.endsWith("Members");
+                            if (localName.endsWith("Member"))
+                                features++;
+                        } else if (depth == 3 && members)
+                            features++;
+                    } else if (event == XMLStreamConstants.END_ELEMENT)
+                        depth--;
+
+                    return event;
+                }
+            };
+        }
+
+        private void update(long n) {
+            bytes += n;
+            if (bytes - lastCheck >= CHECK_BYTES) {
+                lastCheck = bytes;
+                long now = System.nanoTime();
+                if (now - lastReport >= interval) {
+                    lastReport = now;
+                    report(now);
+                }
+            }
+        }
+
+        private void report(long now) {
+            double seconds = (now - start) / 1e9;
+            double bytesPerSecond = bytes / seconds;
+            long remaining = bytesPerSecond > 0 ? (long) ((size - bytes) / bytesPerSecond * 1000) : 0;
+
+            StringBuilder msg = new StringBuilder("Read ")
+                    .append(format(size > 0 ? bytes * 100.0 / size : 100)).append("% of file '").append(inputFile.getFileName())
+                    .append("' at ").append(format(bytesPerSecond / (1024 * 1024))).append(" MB/s");
+
+            if (features > 0)
+                msg.append(" and ").append(format(features / seconds)).append(" features/s");
+
+            msg.append(". Estimated time remaining: ").append(Util.formatElapsedTime(Math.max(0, remaining))).append(".");
+            Logger.getInstance().info(msg.toString());
+        }
+
+        private String format(double value) {
+            return String.format(Locale.ROOT, "%.1f", value);
+        }
+
+        private class CountingInputStream extends FilterInputStream {
+            private long mark;
+
+            CountingInputStream(InputStream in) {
+                super(in);
+            }
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1)
+                    update(1);
+
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0)
+                    update(n);
+
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                if (skipped > 0)
+                    update(skipped);
+
+                return skipped;
+            }
+
+            @Override
+            public synchronized void mark(int readLimit) {
+                super.mark(readLimit);
+                mark = bytes;
+            }
+
+            @Override
+            public synchronized void reset() throws IOException {
+                super.reset();
+                bytes = mark;
+            }
+        }
+    }
+}
@@ -21,65 +21,90 @@
 
 package org.citygml4j.tools.util;
 
-import org.citygml4j.tools.common.log.Logger;
+import org.citygml4j.tools.common.util.Compression;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.LinkedList;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class Util {
+    private static final Pattern ARCHIVE = Pattern.compile("(.+?\\.(?i:zip))!(.*)");
+
+    public static InputFiles listFiles(String file, String defaultGlob, String skipSuffix) throws IOException {
+        Matcher matcher = ARCHIVE.matcher(file);
+        if (matcher.matches()) {
+            // entries of ZIP archives are read through a zip file system
+            Path archive = Constants.WORKING_DIR.resolve(matcher.group(1)).normalize();
+            if (!Files.isRegularFile(archive))
+                throw new NoSuchFileException(archive.toString());
+
+            FileSystem fileSystem = FileSystems.newFileSystem(archive, (ClassLoader) null);
+            try {
+                String entry = matcher.group(2);
+                Path path = fileSystem.getPath(entry.isEmpty() ? "/" : entry).toAbsolutePath();
+                return listFiles(file, path, new LinkedList<>(), defaultGlob, skipSuffix);
+            } catch (IOException | RuntimeException e) {
+                fileSystem.close();
+                throw e;
+            }
+        }
 
-    public static Path getRootDirectory(String file) {
         LinkedList<String> elements = parseInputFile(file);
-        Path path = Paths.get(elements.pop());
-        if (!Files.isDirectory(path))
-            path = path.getParent();
+        return listFiles(file, Paths.get(elements.pop()), elements, defaultGlob, skipSuffix);
+    }
 
-        return path;
+    public static InputFiles listFiles(String file, String defaultGlob) throws IOException {
+        return listFiles(file, defaultGlob, null);
     }
 
-    public static List<Path> listFiles(String file, String defaultGlob, String skipSuffix) throws IOException {
-        LinkedList<String> elements = parseInputFile(file);
-        Path path = Paths.get(elements.pop());
+    private static InputFiles listFiles(String file, Path path, LinkedList<String> elements, String defaultGlob, String skipSuffix) throws IOException {
+        Path root = path;
 
-        // construct a glob pattern from the path and the truncated elements
-        StringBuilder glob = new StringBuilder("glob:").append(path.toAbsolutePath().normalize());
-        if (!elements.isEmpty())
-            glob.append(File.separator).append(String.join(File.separator, elements));
-        else if (Files.isDirectory(path) && defaultGlob != null && !defaultGlob.isEmpty())
-            glob.append(File.separator).append(defaultGlob);
-
-        // find files matching the glob pattern
-        List<Path> files = new ArrayList<>();
-        PathMatcher matcher = FileSystems.getDefault().getPathMatcher(glob.toString().replace("\\", "\\\\"));
-        Files.walk(path).forEach((p) -> {
-            if (matcher.matches(p.toAbsolutePath().normalize())) {
-                if (skipSuffix != null && !skipSuffix.isEmpty()) {
-                    String fileName = p.getFileName().toString();
-                    int index = fileName.lastIndexOf(".");
-                    if (index > 0 && fileName.substring(0, index).endsWith(skipSuffix)) {
-                        Logger.getInstance().debug("Skipping file '" + p.toAbsolutePath() + "'.");
-                        return;
-                    }
-                }
-
-                files.add(p);
+        // start the walk at the longest path prefix without glob patterns
+        if (!Files.exists(path)) {
+            root = path.getRoot();
+            int index = 0;
+            for (Path element : path) {
+                if (isGlob(element.toString()))
+                    break;
+
+                root = root.resolve(element);
+                index++;
             }
-        });
 
-        return files;
-    }
+            if (index == path.getNameCount() || !Files.isDirectory(root))
+                throw new NoSuchFileException(path.toString());
 
-    public static List<Path> listFiles(String file, String defaultGlob) throws IOException {
-        return listFiles(file, defaultGlob, null);
+            for (int i = path.getNameCount() - 1; i >= index; i--)
+                elements.addFirst(path.getName(i).toString());
+
+            path = root;
+        }
+
+        // construct a glob pattern from the path and the truncated elements
+        String separator = path.getFileSystem().getSeparator();
+        StringBuilder glob = new StringBuilder(path.toAbsolutePath().normalize().toString());
+        if (elements.isEmpty() && Files.isDirectory(path) && defaultGlob != null && !defaultGlob.isEmpty())
+            elements.add(defaultGlob);
+
+        if (!elements.isEmpty()) {
+            if (glob.length() == 0 || !glob.toString().endsWith(separator))
+                glob.append(separator);
+
+            glob.append(String.join(separator, elements));
+        }
+
+        return new InputFiles(file, root, glob.toString(), elements, skipSuffix);
     }
 
     public static Path replaceFileExtension(Path file, String extension) {
@@ -89,21 +114,21 @@ public class Util {
         if (!extension.startsWith("."))
             extension = "." + extension;
 
-        String fileName = file.getFileName().toString();
+        String fileName = Compression.removeExtension(file.getFileName().toString());
         int index = fileName.lastIndexOf(".");
         if (index >= 0)
             fileName = fileName.substring(0, index) + extension;
         else
             fileName += extension;
 
-        return file.resolveSibling(fileName);
+        return toDefaultFileSystem(file).resolveSibling(fileName);
     }
 
     public static Path addFileNameSuffix(Path file, String suffix) {
         if (!Files.isRegularFile(file ))
             throw new IllegalArgumentException(file.toAbsolutePath() + " is not a file.");
 
-        String fileName = file.getFileName().toString();
+        String fileName = Compression.removeExtension(file.getFileName().toString());
         int index = fileName.lastIndexOf(".");
         if (index >= 0) {
             String extension = fileName.substring(index);
@@ -112,7 +137,12 @@ public class Util {
         } else
             fileName += suffix;
 
-        return file.resolveSibling(fileName);
+        return toDefaultFileSystem(file).resolveSibling(fileName);
+    }
+
+    // the name of an input file without the extension of its compression format
+    public static Path removeCompressionExtension(Path file) {
+        return file.resolveSibling(Compression.removeExtension(file.getFileName().toString()));
     }
 
     public static String formatElapsedTime(long millis) {
@@ -131,6 +161,27 @@ public class Util {
         return String.format("%02d s", s);
     }
 
+    // files in ZIP archives are mapped to the directory of the archive as if they were extracted there
+    private static Path toDefaultFileSystem(Path file) {
+        if (file.getFileSystem() == FileSystems.getDefault())
+            return file;
+
+        String uri = file.toUri().getRawSchemeSpecificPart();
+        int index = uri.indexOf("!/");
+        Path archive = Paths.get(URI.create(uri.substring(0, index)));
+        Path entry = file.toAbsolutePath().normalize();
+        return archive.resolveSibling(entry.getRoot().relativize(entry).toString());
+    }
+
+    private static boolean isGlob(String element) {
+        for (char c : new char[]{'*', '?', '[', '{'}) {
+            if (element.indexOf(c) != -1)
+                return true;
+        }
+
+        return false;
+    }
+
     private static LinkedList<String> parseInputFile(String file) {
         LinkedList<String> elements = new LinkedList<>();
         Path path = null;
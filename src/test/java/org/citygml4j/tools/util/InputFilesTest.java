@@ -0,0 +1,78 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InputFilesTest {
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("input-files");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testMoreFilesThanQueueSize() throws Exception {
+        // one file more than fits into the queue so that the walk ends while the queue is full
+        int files = 1025;
+        for (int i = 0; i < files; i++)
+            Files.createFile(directory.resolve(String.format("file_%04d.gml", i)));
+
+        try (InputFiles inputFiles = Util.listFiles(directory.toString(), Constants.CITYGML_FILES)) {
+            Iterator<Path> iterator = inputFiles.iterator();
+            assertTrue(iterator.hasNext());
+            iterator.next();
+
+            // a slow consumer lets the walker fill the queue again before it finishes
+            Thread.sleep(1000);
+
+            int count = 1;
+            while (iterator.hasNext()) {
+                iterator.next();
+                count++;
+            }
+
+            assertEquals(files, count);
+            assertEquals(files - 1, inputFiles.getIndex());
+        }
+    }
+}
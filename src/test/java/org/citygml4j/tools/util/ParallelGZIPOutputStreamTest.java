@@ -0,0 +1,91 @@
+/*
+ * citygml-tools - Collection of tools for processing CityGML files
+ * https://github.com/citygml4j/citygml-tools
+ *
+ * citygml-tools is part of the citygml4j project
+ *
+ * Copyright 2018-2020 Claus Nagel <claus.nagel@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.citygml4j.tools.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class ParallelGZIPOutputStreamTest {
+
+    @Test
+    public void testRoundTripDefaultLevel() throws IOException {
+        roundTrip(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    @Test
+    public void testRoundTripExplicitLevels() throws IOException {
+        for (int level = Deflater.BEST_SPEED; level <= Deflater.BEST_COMPRESSION; level++)
+            roundTrip(level);
+    }
+
+    @Test
+    public void testRoundTripEmpty() throws IOException {
+        assertArrayEquals(new byte[0], decompress(compress(new byte[0], 6)));
+    }
+
+    private void roundTrip(int level) throws IOException {
+        // several blocks of compressible text followed by a partial block
+        Random random = new Random(level);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 1024 * 1024 + 12345) {
+            text.append("<gml:pos>").append(random.nextInt(1000)).append(' ')
+                    .append(random.nextInt(1000)).append("</gml:pos>\n");
+        }
+
+        byte[] data = text.toString().getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals("level " + level, data, decompress(compress(data, level)));
+    }
+
+    private byte[] compress(byte[] data, int level) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new ParallelGZIPOutputStream(bytes, level)) {
+            // odd write sizes so that writes span block borders
+            for (int off = 0; off < data.length; off += 1000)
+                out.write(data, off, Math.min(1000, data.length - off));
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private byte[] decompress(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1)
+                bytes.write(buffer, 0, n);
+        }
+
+        return bytes.toByteArray();
+    }
+}
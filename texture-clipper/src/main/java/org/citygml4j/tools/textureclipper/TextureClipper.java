@@ -47,6 +47,7 @@ import org.citygml4j.model.module.citygml.CityGMLModuleType;
 import org.citygml4j.model.module.citygml.CityGMLVersion;
 import org.citygml4j.tools.common.helper.CityModelInfoHelper;
 import org.citygml4j.tools.common.log.Logger;
+import org.citygml4j.tools.common.util.Compression;
 import org.citygml4j.util.gmlid.DefaultGMLIdManager;
 import org.citygml4j.util.walker.FeatureWalker;
 import org.citygml4j.xml.io.CityGMLInputFactory;
@@ -63,7 +64,9 @@ import javax.imageio.ImageIO;
 import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.nio.file.Files;
@@ -77,6 +80,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -95,6 +99,7 @@ public class TextureClipper {
     private CityGMLVersion targetVersion;
     private String inputEncoding;
     private String outputEncoding = "UTF-8";
+    private BiFunction<OutputStream, Path, OutputStream> outputStreamFilter;
 
     private TextureClipper(CityGMLBuilder builder) {
         this.builder = builder;
@@ -175,6 +180,11 @@ public class TextureClipper {
         return this;
     }
 
+    public TextureClipper withOutputStreamFilter(BiFunction<OutputStream, Path, OutputStream> outputStreamFilter) {
+        this.outputStreamFilter = outputStreamFilter;
+        return this;
+    }
+
     public void clipTextures(Path inputFile, Path outputFile) throws TextureClippingException {
         try {
             appearanceDir = createAppearanceDir(outputFile.getParent(), appearanceDir);
@@ -250,7 +260,7 @@ public class TextureClipper {
             try {
                 textureFile = inputDir.resolve(texture.getImageURI().replaceAll("\\\\", "/"));
             } catch (InvalidPathException e) {
-                log.debug("Parameterized texture '" + texture.getId() + "': Failed to create a valid path for image URI '" + texture.getImageURI() + "'. Keeping image URI as is.");
+                log.debug(() -> "Parameterized texture '" + texture.getId() + "': Failed to create a valid path for image URI '" + texture.getImageURI() + "'. Keeping image URI as is.");
                 return;
             }
 
@@ -261,10 +271,10 @@ public class TextureClipper {
             // check whether we have texture coordinates
             for (TextureAssociation target : texture.getTarget()) {
                 if (target.isSetHref()) {
-                    log.debug("Parameterized texture '" + texture.getId() + "': Found unsupported xlink:href target. Copying texture image without change.");
+                    log.debug(() -> "Parameterized texture '" + texture.getId() + "': Found unsupported xlink:href target. Copying texture image without change.");
                     copyTextureImage = true;
                 } else if (!(target.getTextureParameterization() instanceof TexCoordList)) {
-                    log.debug("Parameterized texture '" + texture.getId() + "': Found unsupported TexCoordGen target. Copying texture image without change.");
+                    log.debug(() -> "Parameterized texture '" + texture.getId() + "': Found unsupported TexCoordGen target. Copying texture image without change.");
                     copyTextureImage = true;
                 }
             }
@@ -272,15 +282,17 @@ public class TextureClipper {
             if (!copyTextureImage) {
                 // try and read texture image
                 try {
+                    // the image is read once since the texture file may be an entry of a ZIP archive
+                    byte[] data = Files.readAllBytes(textureFile);
                     try {
-                        image = Imaging.getBufferedImage(textureFile.toFile());
+                        image = Imaging.getBufferedImage(data);
                     } catch (ImageReadException | IOException e) {
                         // use ImageIO as fallback
-                        image = ImageIO.read(textureFile.toFile());
+                        image = ImageIO.read(new ByteArrayInputStream(data));
                     }
 
                     if (image != null)
-                        imageInfo = Imaging.getImageInfo(textureFile.toFile());
+                        imageInfo = Imaging.getImageInfo(data);
                     else
                         throw new IOException("Parameterized texture '" + texture.getId() + "': Unsupported texture file format '" + texture.getImageURI() + "'.");
 
@@ -306,7 +318,7 @@ public class TextureClipper {
             Set<String> targets = new HashSet<>();
             for (TextureAssociation target : texture.getTarget()) {
                 if (!targets.add(target.getUri())) {
-                    log.debug("Parameterized texture '" + texture.getId() + "': Found duplicate target '" + target.getUri() + "'. Skipping target.");
+                    log.debug(() -> "Parameterized texture '" + texture.getId() + "': Found duplicate target '" + target.getUri() + "'. Skipping target.");
                     continue;
                 }
 
@@ -339,11 +351,11 @@ public class TextureClipper {
                                 if (t > 1) t = 1;
 
                                 if (!reported) {
-                                    log.debug("Parameterized texture '" + texture.getId() + "': Fixed texture coordinates outside [0,1] for target '" + target.getUri() + "'.");
+                                    log.debug(() -> "Parameterized texture '" + texture.getId() + "': Fixed texture coordinates outside [0,1] for target '" + target.getUri() + "'.");
                                     reported = true;
                                 }
                             } else {
-                                log.debug("Parameterized texture '" + texture.getId() + "': Found texture coordinates outside [0,1] " +
+                                log.debug(() -> "Parameterized texture '" + texture.getId() + "': Found texture coordinates outside [0,1] " +
                                         "for target '" + target.getUri() + "'. Copying texture image without change.");
                                 copyTextureImage = true;
                                 break;
@@ -506,7 +518,7 @@ public class TextureClipper {
                         copyWorldFile(textureFile, copy);
 
                 } catch (InvalidPathException e) {
-                    log.debug("Failed to create a valid path for image URI '" + imageURI + "'. Keeping image URI as is.");
+                    log.debug(() -> "Failed to create a valid path for image URI '" + imageURI + "'. Keeping image URI as is.");
                     copy = imageURI;
                 }
             }
@@ -564,16 +576,30 @@ public class TextureClipper {
         in.setProperty(CityGMLInputFactory.FEATURE_READ_MODE, FeatureReadMode.SPLIT_PER_COLLECTION_MEMBER);
         in.setProperty(CityGMLInputFactory.SKIP_GENERIC_ADE_CONTENT, true);
 
-        CityGMLReader reader = inputEncoding == null ?
-                in.createCityGMLReader(inputFile.toFile()) :
-                in.createCityGMLReader(inputFile.toFile(), inputEncoding);
+        // compressed input files are decompressed while reading
+        CityGMLReader reader;
+        try {
+            String systemId = inputFile.toAbsolutePath().toUri().toString();
+            reader = inputEncoding == null ?
+                    in.createCityGMLReader(systemId, Compression.newInputStream(inputFile)) :
+                    in.createCityGMLReader(systemId, Compression.newInputStream(inputFile), inputEncoding);
+        } catch (IOException e) {
+            throw new CityGMLReadException("Caused by: ", e);
+        }
 
         return in.createFilteredCityGMLReader(reader, filter);
     }
 
     private CityModelWriter createCityModelWriter(Path outputFile) throws CityGMLWriteException {
         CityGMLOutputFactory out = builder.createCityGMLOutputFactory(targetVersion);
-        return out.createCityModelWriter(outputFile.toFile(), outputEncoding);
+        if (outputStreamFilter == null)
+            return out.createCityModelWriter(outputFile.toFile(), outputEncoding);
+
+        try {
+            return out.createCityModelWriter(outputStreamFilter.apply(Files.newOutputStream(outputFile), outputFile), outputEncoding);
+        } catch (IOException e) {
+            throw new CityGMLWriteException("Caused by: ", e);
+        }
     }
 
     private synchronized String createAppearanceDir(Path outputDir, String appearanceDir) throws IOException {